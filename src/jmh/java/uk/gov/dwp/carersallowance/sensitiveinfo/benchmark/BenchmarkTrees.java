@@ -0,0 +1,73 @@
+package uk.gov.dwp.carersallowance.sensitiveinfo.benchmark;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Random;
+
+import org.apache.commons.io.FileUtils;
+
+/**
+ * Builds the (repeatable, the random numbers are seeded) trees and files the benchmarks run on
+ */
+public class BenchmarkTrees {
+    public static final byte[] KEYSTORE = {(byte)0xfe, (byte)0xed, (byte)0xfe, (byte)0xed, 0, 0, 0, 2};
+
+    private static final String[] EXTENSIONS = {".java", ".xml", ".properties", ".md", ".txt", ".json"};
+
+    private BenchmarkTrees() {
+        // all methods are static
+    }
+
+    public static File createTempDir(String prefix) throws IOException {
+        return Files.createTempDirectory(prefix).toFile();
+    }
+
+    public static void delete(File dir) throws IOException {
+        if(dir != null) {
+            FileUtils.deleteDirectory(dir);
+        }
+    }
+
+    /**
+     * Source like files spread over directories of at most filesPerDir files, every keyStoreEvery'th
+     * file is a java keystore
+     */
+    public static void createSourceTree(File root, int files, int filesPerDir, int keyStoreEvery) throws IOException {
+        Random random = new Random(files);
+        byte[] text = new byte[4096];
+        for(int index = 0; index < files; index++) {
+            File dir = new File(root, "module" + (index / (filesPerDir * 10)) + "/src/package" + (index / filesPerDir));
+            if(index % keyStoreEvery == keyStoreEvery - 1) {
+                FileUtils.writeByteArrayToFile(new File(dir, "keystore" + index + ".jks"), KEYSTORE);
+                continue;
+            }
+
+            int length = 200 + random.nextInt(text.length - 200);
+            for(int offset = 0; offset < length; offset++) {
+                text[offset] = (byte)(' ' + random.nextInt(95));
+            }
+            File file = new File(dir, "File" + index + EXTENSIONS[index % EXTENSIONS.length]);
+            Files.createDirectories(dir.toPath());
+            Files.write(file.toPath(), Arrays.copyOf(text, length));
+        }
+    }
+
+    /**
+     * @return a directory depth deep below root (which is created), e.g. root/level1/level2/...
+     */
+    public static File createDeepDir(File root, int depth) throws IOException {
+        File dir = root;
+        for(int level = 1; level <= depth; level++) {
+            dir = new File(dir, "level" + level);
+        }
+        Files.createDirectories(dir.toPath());
+        return dir;
+    }
+
+    public static void write(File file, String content) throws IOException {
+        FileUtils.writeStringToFile(file, content, StandardCharsets.UTF_8);
+    }
+}
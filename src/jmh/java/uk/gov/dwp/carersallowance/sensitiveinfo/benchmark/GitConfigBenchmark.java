@@ -0,0 +1,64 @@
+package uk.gov.dwp.carersallowance.sensitiveinfo.benchmark;
+
+import java.io.IOException;
+import java.text.ParseException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import uk.gov.dwp.carersallowance.sensitiveinfo.git.GitConfig;
+
+/**
+ * Parsing a git config of sections (with and without subsections), comments and quoted values,
+ * from the size of a typical ~/.gitconfig up.
+ */
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(1)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@State(Scope.Benchmark)
+public class GitConfigBenchmark {
+    @Param({"10", "100"})
+    public int sections;
+
+    private String config;
+
+    @Setup
+    public void setUp() {
+        StringBuilder buffer = new StringBuilder("# generated config\n");
+        for(int index = 0; index < sections; index++) {
+            switch(index % 4) {
+                case 0:
+                    buffer.append("[core]\n\texcludesFile = ~/.gitignore_global\n\tautocrlf = input ; comment\n");
+                    break;
+                case 1:
+                    buffer.append("[remote \"origin").append(index).append("\"]\n\turl = https://example.com/repo").append(index)
+                          .append(".git\n\tfetch = +refs/heads/*:refs/remotes/origin/*\n");
+                    break;
+                case 2:
+                    buffer.append("[alias]\n\tlg = \"log --graph --oneline # not a comment\"\n\tst = status\n");
+                    break;
+                default:
+                    buffer.append("[http \"https://host").append(index).append(".example.com\"]\n\tsslVerify = false\n\n");
+                    break;
+            }
+        }
+        config = buffer.toString();
+    }
+
+    @Benchmark
+    public GitConfig parse() throws IOException, ParseException {
+        return new GitConfig(config);
+    }
+}
@@ -0,0 +1,105 @@
+package uk.gov.dwp.carersallowance.sensitiveinfo.benchmark;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import uk.gov.dwp.carersallowance.sensitiveinfo.git.GitExcludeContext;
+
+/**
+ * A single .gitignore of rules (a realistic mix of globs, directories, anchored paths and
+ * negations) checked against paths that mostly don't match, as most files aren't ignored.
+ * matchesGitIgnore also checks the parent directories, matchesGitIgnoreFile adds canonicalizing
+ * the parent directory and checking whether the path is a directory.
+ */
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(1)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@State(Scope.Benchmark)
+public class GitExcludeContextBenchmark {
+    private static final String[] RULE_TEMPLATES = {
+        "*.log%d", "build%d/", "/target%d", "**/generated%d", "docs/*.tmp%d", "!keep%d.log", "cache%d/**", "secret%d.txt"
+    };
+
+    @Param({"10", "100", "1000"})
+    public int rules;
+
+    private File              root;
+    private GitExcludeContext context;
+    private File[]            paths;
+    private String[]          relativePaths;
+    private boolean[]         directories;
+    private int               next;
+
+    @Setup
+    public void setUp() throws IOException {
+        root = BenchmarkTrees.createTempDir("exclude-benchmark");
+        List<String> lines = new ArrayList<>();
+        lines.add("# generated rules");
+        for(int index = 0; index < rules; index++) {
+            lines.add(String.format(RULE_TEMPLATES[index % RULE_TEMPLATES.length], index / RULE_TEMPLATES.length));
+        }
+        context = new GitExcludeContext(lines, root, root);
+
+        File deep = BenchmarkTrees.createDeepDir(root, 6);
+        paths = new File[] {
+            new File(root, "README.md"),
+            new File(root, "src/main/java/App.java"),
+            new File(deep, "Deep.java"),
+            new File(root, "app.log0"),                 // matches
+            new File(root, "build0/classes/App.class"), // in an ignored directory
+            new File(deep, "keep0.log"),
+            new File(root, "docs/notes.tmp0"),
+            new File(root, "secret0.txt")               // matches
+        };
+        relativePaths = new String[paths.length];
+        directories = new boolean[paths.length];
+        for(int index = 0; index < paths.length; index++) {
+            BenchmarkTrees.write(paths[index], "content");
+            relativePaths[index] = root.toPath().relativize(paths[index].toPath()).toString().replace(File.separatorChar, '/');
+        }
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        BenchmarkTrees.delete(root);
+    }
+
+    @Benchmark
+    public boolean matchesGitIgnore() {
+        next = (next + 1) % relativePaths.length;
+        return context.matchesGitIgnore(relativePaths[next], directories[next]);
+    }
+
+    @Benchmark
+    public boolean matchesGitIgnoreFile() throws IOException {
+        next = (next + 1) % paths.length;
+        return context.matchesGitIgnore(paths[next]);
+    }
+
+    /**
+     * The compiled patterns alone, on a path already relative to the git root
+     */
+    @Benchmark
+    public GitExcludeContext.Match match() {
+        next = (next + 1) % relativePaths.length;
+        return context.match(relativePaths[next], directories[next]);
+    }
+}
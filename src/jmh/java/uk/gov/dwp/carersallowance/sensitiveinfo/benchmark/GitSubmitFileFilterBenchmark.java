@@ -0,0 +1,79 @@
+package uk.gov.dwp.carersallowance.sensitiveinfo.benchmark;
+
+import java.io.File;
+import java.io.IOException;
+import java.text.ParseException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import uk.gov.dwp.carersallowance.sensitiveinfo.git.GitSubmitFileFilter;
+
+/**
+ * GitSubmitFileFilter.accept on a file deep in a repository with a .gitignore every other
+ * level, both with the filter's .gitignore cache warm (the steady state of a walk) and for a
+ * new filter (the first file of a scan).
+ *
+ * The files are not ignored, as the filter reports every ignored file on stdout.
+ */
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(1)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@State(Scope.Benchmark)
+public class GitSubmitFileFilterBenchmark {
+    @Param({"4", "16"})
+    public int depth;
+
+    private File                root;
+    private File                file;
+    private GitSubmitFileFilter warmFilter;
+
+    @Setup
+    public void setUp() throws IOException, ParseException {
+        root = BenchmarkTrees.createTempDir("filter-benchmark");
+        new File(root, ".git/info").mkdirs();
+        BenchmarkTrees.write(new File(root, ".git/info/exclude"), "*.swp\n");
+        BenchmarkTrees.write(new File(root, ".gitignore"), "*.log\nbuild/\n/target\n**/generated\n");
+
+        File dir = root;
+        for(int level = 1; level <= depth; level++) {
+            dir = new File(dir, "level" + level);
+            if(level % 2 == 0) {
+                BenchmarkTrees.write(new File(dir, ".gitignore"), "*.tmp\nout" + level + "/\n");
+            }
+        }
+        file = new File(dir, "Deep.java");
+        BenchmarkTrees.write(file, "class Deep {}");
+
+        warmFilter = new GitSubmitFileFilter(root);
+        warmFilter.accept(file);
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        BenchmarkTrees.delete(root);
+    }
+
+    @Benchmark
+    public boolean acceptWarm() {
+        return warmFilter.accept(file);
+    }
+
+    @Benchmark
+    public boolean acceptNewFilter() throws IOException, ParseException {
+        return new GitSubmitFileFilter(root).accept(file);
+    }
+}
@@ -0,0 +1,109 @@
+package uk.gov.dwp.carersallowance.sensitiveinfo.benchmark;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import uk.gov.dwp.carersallowance.sensitiveinfo.KeyStoreScanner;
+import uk.gov.dwp.carersallowance.sensitiveinfo.SensitiveInformation;
+import uk.gov.dwp.carersallowance.sensitiveinfo.signature.FileSignature;
+import uk.gov.dwp.carersallowance.sensitiveinfo.signature.SignatureTable;
+
+/**
+ * KeyStoreScanner over a tree of source like files (1 in 100 a keystore), and the header
+ * detection (signature table lookup) it does for every file.
+ */
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@Fork(1)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+public class KeyStoreScannerBenchmark {
+
+    @State(Scope.Benchmark)
+    public static class Tree {
+        @Param({"100", "1000", "10000"})
+        public int files;
+
+        public File            root;
+        public KeyStoreScanner scanner;
+
+        @Setup
+        public void setUp() throws IOException {
+            root = BenchmarkTrees.createTempDir("keystore-benchmark");
+            BenchmarkTrees.createSourceTree(root, files, 50, 100);
+            scanner = new KeyStoreScanner();
+        }
+
+        @TearDown
+        public void tearDown() throws IOException {
+            BenchmarkTrees.delete(root);
+        }
+    }
+
+    /**
+     * The starts of 1024 files, mostly text with some of each of the signatures in the table (the
+     * java keystores, the gpg, gnome keyring and pgp entries of the bundled magic files and the
+     * RSA private key PEM header)
+     */
+    @State(Scope.Thread)
+    public static class Headers {
+        public SignatureTable signatureTable;
+        public ByteBuffer[]   headers;
+        public int           next;
+
+        @Setup
+        public void setUp() throws IOException {
+            signatureTable = new KeyStoreScanner().getSignatureTable();
+            List<FileSignature> signatures = signatureTable.getSignatures();
+            Random random = new Random(1);
+            headers = new ByteBuffer[1024];
+            for(int index = 0; index < headers.length; index++) {
+                byte[] header = new byte[signatureTable.getHeaderLength()];
+                for(int offset = 0; offset < header.length; offset++) {
+                    header[offset] = (byte)(' ' + random.nextInt(95));
+                }
+                // 1 in 8 starts with one of the signatures, taking each in turn
+                if(index % 8 == 0) {
+                    FileSignature signature = signatures.get((index / 8) % signatures.size());
+                    byte[] magic = signature.getMagicSignature();
+                    System.arraycopy(magic, 0, header, signature.getOffset(), magic.length);
+                }
+                headers[index] = ByteBuffer.wrap(header);
+            }
+        }
+
+        public ByteBuffer nextHeader() {
+            next = (next + 1) & (headers.length - 1);
+            return headers[next];
+        }
+    }
+
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.SECONDS)
+    public List<SensitiveInformation> scanTree(Tree tree) throws IOException {
+        return tree.scanner.scan(tree.root);
+    }
+
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    public FileSignature matchHeader(Headers headers) {
+        ByteBuffer header = headers.nextHeader();
+        return headers.signatureTable.match(header, header.limit());
+    }
+}
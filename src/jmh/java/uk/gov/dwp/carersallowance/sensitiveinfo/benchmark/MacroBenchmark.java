@@ -0,0 +1,426 @@
+package uk.gov.dwp.carersallowance.sensitiveinfo.benchmark;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.PrintStream;
+import java.io.Writer;
+import java.lang.management.ManagementFactory;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.io.output.NullOutputStream;
+
+import uk.gov.dwp.carersallowance.sensitiveinfo.CompositeScanner;
+import uk.gov.dwp.carersallowance.sensitiveinfo.FileScan;
+import uk.gov.dwp.carersallowance.sensitiveinfo.FileScanner;
+import uk.gov.dwp.carersallowance.sensitiveinfo.ScannerFactory;
+import uk.gov.dwp.carersallowance.sensitiveinfo.SensitiveInfoScanner;
+import uk.gov.dwp.carersallowance.sensitiveinfo.SensitiveInformation;
+import uk.gov.dwp.carersallowance.sensitiveinfo.SharedTreeScan;
+
+/**
+ * Runs ScannerFactory end to end against a SyntheticRepository, the way a git hook does, each run
+ * in a new JVM (with the repository's home as user.home, so its global excludes are used).
+ *
+ *     MacroBenchmark <dir> [runs=3] [results=<file>] [SyntheticRepository parameters ...]
+ *
+ * The repository in dir is generated unless it already has the same parameters.  Each run is
+ * done with a warm page cache (after a run to warm it) and a cold one, the page cache is dropped
+ * before each cold run, which needs root (/proc/sys/vm/drop_caches), without it cold.available is
+ * false and there are no cold results.
+ *
+ * Each run is two JVMs, one times ScannerFactory.run and reports its peak RSS, the other times
+ * every file (from being offered to the FileScanners to the end of visiting it, including reading
+ * its header) which would slow the first down.  The median of the runs of each figure is written
+ * to the results file (build/reports/macro/results.properties by default) as sorted name = value
+ * lines, so the results of two versions can be diffed:
+ *
+ *     <state>.filesPerSecond, <state>.mbPerSecond    files and bytes in the tree / ScannerFactory.run time
+ *     <state>.scanMillis                             ScannerFactory.run time
+ *     <state>.peakRssKb                              the scanning JVM's peak resident set (VmHWM)
+ *     <state>.fileMicros.p50, <state>.fileMicros.p99 time per file
+ *     repository.*                                   what was scanned (see SyntheticRepository)
+ */
+public class MacroBenchmark {
+    private static final String CHILD_OPTION   = "--child";
+    private static final String SCAN_MODE      = "scan";
+    private static final String FILES_MODE     = "files";
+    private static final String RESULT_PREFIX  = "macro.";
+    private static final String DROP_CACHES    = "/proc/sys/vm/drop_caches";
+    private static final String WARM           = "warm";
+    private static final String COLD           = "cold";
+
+    public static void main(String[] args) throws Exception {
+        if(args.length > 0 && args[0].equals(CHILD_OPTION)) {
+            child(args);
+            return;
+        }
+
+        SyntheticRepository repository = new SyntheticRepository();
+        List<String> others = repository.configure(args);
+        if(others.isEmpty()) {
+            System.err.println("Usage: MacroBenchmark <dir> [runs=3] [results=<file>] [SyntheticRepository parameters ...]");
+            System.exit(2);
+        }
+
+        File dir = new File(others.get(0)).getAbsoluteFile();
+        int runs = 3;
+        File resultsFile = new File("build/reports/macro/results.properties");
+        for(String other: others.subList(1, others.size())) {
+            if(other.startsWith("runs=")) {
+                runs = Integer.parseInt(other.substring("runs=".length()));
+            } else if(other.startsWith("results=")) {
+                resultsFile = new File(other.substring("results=".length()));
+            } else {
+                throw new IllegalArgumentException("Unknown argument: " + other);
+            }
+        }
+        if(runs < 1) {
+            throw new IllegalArgumentException("runs must be 1 or more, not: " + runs);
+        }
+
+        if(repository.isGenerated(dir) == false) {
+            System.out.println("Generating: " + dir);
+            repository.generate(dir);
+        }
+
+        Map<String, String> manifest = SyntheticRepository.readManifest(dir);
+        long files = Long.parseLong(manifest.get("files"));
+        long bytes = Long.parseLong(manifest.get("generated.bytes"));
+
+        Map<String, String> results = new TreeMap<>();
+        for(Map.Entry<String, String> entry: manifest.entrySet()) {
+            results.put("repository." + entry.getKey(), entry.getValue());
+        }
+        results.put("java.version", System.getProperty("java.version"));
+        results.put("runs", String.valueOf(runs));
+
+        runChild(dir, SCAN_MODE);    // warm the page cache (and check it runs)
+        results.putAll(measure(WARM, dir, runs, files, bytes));
+
+        boolean cold = dropCaches();
+        results.put("cold.available", String.valueOf(cold));
+        if(cold) {
+            results.putAll(measure(COLD, dir, runs, files, bytes));
+        }
+
+        writeResults(resultsFile, results);
+        for(Map.Entry<String, String> entry: results.entrySet()) {
+            System.out.println(entry.getKey() + " = " + entry.getValue());
+        }
+        System.out.println("Results: " + resultsFile.getAbsolutePath());
+    }
+
+    /**
+     * @return the median of each figure over the runs, prefixed with state
+     */
+    private static Map<String, String> measure(String state, File dir, int runs, long files, long bytes) throws IOException, InterruptedException {
+        Map<String, List<Double>> figures = new TreeMap<>();
+        for(int run = 1; run <= runs; run++) {
+            System.out.println(state + " run " + run + " of " + runs);
+
+            if(COLD.equals(state)) {
+                dropCaches();
+            }
+            Map<String, String> scan = runChild(dir, SCAN_MODE);
+            double seconds = Double.parseDouble(scan.get("nanos")) / TimeUnit.SECONDS.toNanos(1);
+            add(figures, "scanMillis", seconds * 1000);
+            add(figures, "filesPerSecond", files / seconds);
+            add(figures, "mbPerSecond", bytes / (1024.0 * 1024.0) / seconds);
+            add(figures, "peakRssKb", Double.parseDouble(scan.get("peakRssKb")));
+
+            if(COLD.equals(state)) {
+                dropCaches();
+            }
+            Map<String, String> perFile = runChild(dir, FILES_MODE);
+            add(figures, "fileMicros.p50", Double.parseDouble(perFile.get("p50")));
+            add(figures, "fileMicros.p99", Double.parseDouble(perFile.get("p99")));
+            add(figures, "filesTimed", Double.parseDouble(perFile.get("count")));
+        }
+
+        Map<String, String> results = new TreeMap<>();
+        for(Map.Entry<String, List<Double>> figure: figures.entrySet()) {
+            List<Double> values = figure.getValue();
+            Collections.sort(values);
+            results.put(state + "." + figure.getKey(), String.format("%.1f", values.get(values.size() / 2)));
+        }
+        return results;
+    }
+
+    private static void add(Map<String, List<Double>> figures, String name, double value) {
+        List<Double> values = figures.get(name);
+        if(values == null) {
+            values = new ArrayList<>();
+            figures.put(name, values);
+        }
+        values.add(value);
+    }
+
+    /**
+     * @return true if the page cache was dropped
+     */
+    private static boolean dropCaches() throws IOException, InterruptedException {
+        File dropCaches = new File(DROP_CACHES);
+        if(dropCaches.canWrite() == false) {
+            return false;
+        }
+
+        new ProcessBuilder("sync").inheritIO().start().waitFor();
+        try(Writer writer = new OutputStreamWriter(new FileOutputStream(dropCaches), StandardCharsets.US_ASCII)) {
+            writer.write("3\n");
+            return true;
+        } catch(IOException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Run a child JVM with the same classpath, the repository's home as user.home and the
+     * repository as its working directory
+     *
+     * @return the macro.* lines it printed, without the prefix
+     */
+    private static Map<String, String> runChild(File dir, String mode) throws IOException, InterruptedException {
+        File java = new File(System.getProperty("java.home"), "bin/java");
+        List<String> command = new ArrayList<>();
+        command.add(java.getAbsolutePath());
+        command.addAll(ManagementFactory.getRuntimeMXBean().getInputArguments());
+        command.add("-Duser.home=" + new File(dir, SyntheticRepository.HOME).getAbsolutePath());
+        command.add("-cp");
+        command.add(System.getProperty("java.class.path"));
+        command.add(MacroBenchmark.class.getName());
+        command.add(CHILD_OPTION);
+        command.add(mode);
+        command.add(new File(dir, SyntheticRepository.REPO + "/" + SyntheticRepository.CONFIG).getAbsolutePath());
+
+        ProcessBuilder builder = new ProcessBuilder(command);
+        builder.directory(new File(dir, SyntheticRepository.REPO));
+        builder.redirectError(ProcessBuilder.Redirect.INHERIT);
+        Process process = builder.start();
+
+        Map<String, String> results = new HashMap<>();
+        try(BufferedReader reader = new BufferedReader(new InputStreamReader(process.getInputStream(), StandardCharsets.UTF_8))) {
+            String line;
+            while((line = reader.readLine()) != null) {
+                int equals = line.indexOf('=');
+                if(line.startsWith(RESULT_PREFIX) && equals > 0) {
+                    results.put(line.substring(RESULT_PREFIX.length(), equals), line.substring(equals + 1));
+                }
+            }
+        }
+
+        int exitCode = process.waitFor();
+        if(exitCode != 0) {
+            throw new IOException("The " + mode + " run failed with exit code: " + exitCode);
+        }
+        return results;
+    }
+
+    private static void writeResults(File resultsFile, Map<String, String> results) throws IOException {
+        File parent = resultsFile.getAbsoluteFile().getParentFile();
+        Files.createDirectories(parent.toPath());
+        try(Writer writer = new OutputStreamWriter(new FileOutputStream(resultsFile), StandardCharsets.UTF_8)) {
+            writer.write("# " + MacroBenchmark.class.getName() + "\n");
+            for(Map.Entry<String, String> entry: results.entrySet()) {
+                writer.write(entry.getKey() + " = " + entry.getValue() + "\n");
+            }
+        }
+    }
+
+    /**
+     * --child scan|files <config file>, prints its results as macro.name=value lines
+     */
+    private static void child(String[] args) throws Exception {
+        String mode = args[1];
+        File configFile = new File(args[2]);
+
+        if(SCAN_MODE.equals(mode)) {
+            // the findings aren't of interest, just the time (ScannerFactory.run writes them to out)
+            PrintStream stdout = System.out;
+            PrintStream quiet = new PrintStream(new NullOutputStream());
+            System.setOut(quiet);
+
+            long start = System.nanoTime();
+            int exitCode = ScannerFactory.run(new String[] {configFile.getAbsolutePath()}, quiet, System.err);
+            long nanos = System.nanoTime() - start;
+
+            System.setOut(stdout);
+            if(exitCode != 0 && exitCode != 1) {
+                System.err.println("ScannerFactory exit code: " + exitCode);
+                System.exit(exitCode);
+            }
+            System.out.println(RESULT_PREFIX + "nanos=" + nanos);
+            System.out.println(RESULT_PREFIX + "exitCode=" + exitCode);
+            System.out.println(RESULT_PREFIX + "peakRssKb=" + getPeakRssKb());
+        } else if(FILES_MODE.equals(mode)) {
+            List<TimedFileScanner> scanners = new ArrayList<>();
+            for(SensitiveInfoScanner scanner: getScanners(configFile)) {
+                if(scanner instanceof FileScanner) {
+                    scanners.add(new TimedFileScanner((FileScanner)scanner));
+                }
+            }
+
+            PrintStream stdout = System.out;
+            System.setOut(new PrintStream(new NullOutputStream()));
+            SharedTreeScan.scan(configFile.getAbsoluteFile().getParentFile(), scanners);
+            System.setOut(stdout);
+
+            long[] nanos = new long[0];
+            for(TimedFileScanner scanner: scanners) {
+                nanos = concat(nanos, scanner.getFileNanos());
+            }
+            Arrays.sort(nanos);
+            System.out.println(RESULT_PREFIX + "count=" + nanos.length);
+            System.out.println(RESULT_PREFIX + "p50=" + percentile(nanos, 50) / 1000.0);
+            System.out.println(RESULT_PREFIX + "p99=" + percentile(nanos, 99) / 1000.0);
+        } else {
+            throw new IllegalArgumentException("Unknown mode: " + mode);
+        }
+    }
+
+    private static List<SensitiveInfoScanner> getScanners(File configFile) throws IOException {
+        SensitiveInfoScanner scanner = ScannerFactory.createScanner(configFile);
+        if(scanner instanceof CompositeScanner) {
+            return ((CompositeScanner)scanner).getScanners();
+        }
+        return scanner == null ? Collections.<SensitiveInfoScanner>emptyList() : Collections.singletonList(scanner);
+    }
+
+    /**
+     * @return nearest rank, 0 if there are none
+     */
+    private static long percentile(long[] sorted, int percent) {
+        if(sorted.length == 0) {
+            return 0;
+        }
+        int rank = (int)Math.ceil(percent / 100.0 * sorted.length);
+        return sorted[Math.max(0, rank - 1)];
+    }
+
+    private static long[] concat(long[] first, long[] second) {
+        long[] result = Arrays.copyOf(first, first.length + second.length);
+        System.arraycopy(second, 0, result, first.length, second.length);
+        return result;
+    }
+
+    /**
+     * @return the peak resident set of this process, -1 where /proc isn't available
+     */
+    private static long getPeakRssKb() throws IOException {
+        Path status = Paths.get("/proc/self/status");
+        if(Files.isReadable(status) == false) {
+            return -1;
+        }
+        for(String line: Files.readAllLines(status, StandardCharsets.US_ASCII)) {
+            if(line.startsWith("VmHWM:")) {
+                return Long.parseLong(line.substring("VmHWM:".length()).replace("kB", "").trim());
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Times each file, from acceptFile to the end of visitFile (the shared walk reads the header in
+     * between) or just acceptFile if the file isn't visited.  The start is kept per thread, as a
+     * file is accepted and visited on the same thread.
+     */
+    private static class TimedFileScanner implements FileScanner {
+        private FileScanner         scanner;
+        private ThreadLocal<long[]> start;      // of the file being scanned on each thread
+        private long[]              fileNanos;
+        private int                 count;
+
+        public TimedFileScanner(FileScanner scanner) {
+            this.scanner = scanner;
+            this.start = new ThreadLocal<long[]>() {
+                @Override
+                protected long[] initialValue() {
+                    return new long[1];
+                }
+            };
+            this.fileNanos = new long[1024];
+        }
+
+        @Override
+        public int getHeaderLength()    { return scanner.getHeaderLength(); }
+
+        @Override
+        public int getParallelism()     { return scanner.getParallelism(); }
+
+        @Override
+        public List<SensitiveInformation> scan(File baseDir) throws IOException {
+            return SharedTreeScan.scan(baseDir, Collections.singletonList(this)).get(0);
+        }
+
+        public synchronized long[] getFileNanos() {
+            return Arrays.copyOf(fileNanos, count);
+        }
+
+        private synchronized void record(long nanos) {
+            if(count == fileNanos.length) {
+                fileNanos = Arrays.copyOf(fileNanos, count * 2);
+            }
+            fileNanos[count++] = nanos;
+        }
+
+        @Override
+        public FileScan startScan(File baseDir) throws IOException {
+            final FileScan scan = scanner.startScan(baseDir);
+            return new FileScan() {
+                @Override
+                public boolean preVisitDirectory(Path dir, BasicFileAttributes attrs) {
+                    return scan.preVisitDirectory(dir, attrs);
+                }
+
+                @Override
+                public void postVisitDirectory(Path dir) {
+                    scan.postVisitDirectory(dir);
+                }
+
+                @Override
+                public boolean acceptFile(Path file, BasicFileAttributes attrs, List<SensitiveInformation> results) {
+                    long started = System.nanoTime();
+                    boolean accepted = scan.acceptFile(file, attrs, results);
+                    if(accepted) {
+                        start.get()[0] = started;
+                    } else {
+                        record(System.nanoTime() - started);
+                    }
+                    return accepted;
+                }
+
+                @Override
+                public void visitFile(Path file, BasicFileAttributes attrs, ByteBuffer header, List<SensitiveInformation> results) {
+                    scan.visitFile(file, attrs, header, results);
+                    record(System.nanoTime() - start.get()[0]);
+                }
+
+                @Override
+                public void visitFileFailed(Path path, IOException exception, List<SensitiveInformation> results) {
+                    scan.visitFileFailed(path, exception, results);
+                }
+
+                @Override
+                public void finish() throws IOException {
+                    scan.finish();
+                }
+            };
+        }
+    }
+}
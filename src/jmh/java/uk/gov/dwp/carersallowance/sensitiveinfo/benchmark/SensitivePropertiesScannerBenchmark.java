@@ -0,0 +1,66 @@
+package uk.gov.dwp.carersallowance.sensitiveinfo.benchmark;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import uk.gov.dwp.carersallowance.sensitiveinfo.SensitiveInformation;
+import uk.gov.dwp.carersallowance.sensitiveinfo.SensitivePropertiesScanner;
+
+/**
+ * SensitivePropertiesScanner checking four keys (two of them set) in a properties file
+ */
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(1)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@State(Scope.Benchmark)
+public class SensitivePropertiesScannerBenchmark {
+    private static final String PATH = "src/main/resources/config/application.properties";
+
+    @Param({"20", "2000"})
+    public int properties;
+
+    private File                       root;
+    private SensitivePropertiesScanner scanner;
+
+    @Setup
+    public void setUp() throws IOException {
+        root = BenchmarkTrees.createTempDir("properties-benchmark");
+        StringBuilder buffer = new StringBuilder("# generated properties\n");
+        for(int index = 0; index < properties; index++) {
+            buffer.append("app.setting").append(index).append(" = value ").append(index).append('\n');
+        }
+        buffer.append("spring.datasource.username = user\n");
+        buffer.append("spring.datasource.password = secret\n");
+        BenchmarkTrees.write(new File(root, PATH), buffer.toString());
+
+        scanner = new SensitivePropertiesScanner(PATH, "spring.datasource.username", "spring.datasource.password",
+                                                 "spring.mail.password", "security.oauth2.client.client-secret");
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        BenchmarkTrees.delete(root);
+    }
+
+    @Benchmark
+    public List<SensitiveInformation> scan() throws IOException {
+        return scanner.scan(root);
+    }
+}
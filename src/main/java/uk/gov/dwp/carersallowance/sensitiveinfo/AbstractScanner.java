@@ -6,12 +6,136 @@ import java.util.List;
 
 import com.fasterxml.jackson.databind.JsonNode;
 
-public abstract class AbstractScanner implements SensitiveInfoScanner {
+import uk.gov.dwp.carersallowance.sensitiveinfo.cache.ScanCache;
+import uk.gov.dwp.carersallowance.sensitiveinfo.git.GitFileSource;
+import uk.gov.dwp.carersallowance.utils.Parameters;
+
+/**
+ * Common config for all scanners (all optional):
+ *
+ * {"cache": true,
+ *  "cacheFile": "build/keystore.cache"
+ * }
+ *
+ * cache keeps the results for each file between runs and re-uses them for files that have
+ * not changed.  The cache is kept in the .git directory of the scanned repository, or in
+ * cacheFile (relative to the base directory) if it is given.  The cache is discarded whenever
+ * the scanner config changes.
+ */
+public abstract class AbstractScanner implements StreamingScanner {
+    private static final String CACHE_DIR = "secureinfo";
+
+    private boolean cacheEnabled;
+    private String  cacheFile;      // null = default location
+    private String  configJson;     // used to fingerprint the cache
+    private boolean configured;     // created from config
+
     public AbstractScanner() {
+        configJson = "";
     }
 
     public AbstractScanner(JsonNode configNode) {
+        this();
+
+        if(configNode != null && configNode.isMissingNode() == false) {
+            configJson = configNode.toString();
+            configured = true;
+
+            JsonNode cacheFileNode = configNode.at("/cacheFile");
+            if(cacheFileNode.isMissingNode() == false) {
+                cacheFile = cacheFileNode.asText();
+            }
+            cacheEnabled = configNode.at("/cache").asBoolean(cacheFile != null);
+        }
     }
 
     public abstract List<SensitiveInformation> scan(File baseDir) throws IOException;
-}
\ No newline at end of file
+
+    /**
+     * Scanners that can report findings as they go override this, by default the findings are
+     * passed on once the scan is complete.
+     */
+    @Override
+    public void scan(File baseDir, FindingSink sink) throws IOException {
+        Parameters.validateMandatoryArgs(sink, "sink");
+        if(sink.isCancelled()) {
+            return;
+        }
+
+        for(SensitiveInformation finding: scan(baseDir)) {
+            sink.found(this, finding);
+        }
+    }
+
+    public boolean isCacheEnabled() {
+        return cacheEnabled;
+    }
+
+    /**
+     * @return the same value for any two scanners that find the same things in the same tree, null
+     *         if the scanner wasn't created from config (so its state isn't known)
+     */
+    public String getFingerprint() {
+        return configured ? getCacheFingerprint() : null;
+    }
+
+    /**
+     * Anything that changes the results of a scan must be part of the fingerprint,
+     * subclasses with state that isn't in their config should add to it.
+     */
+    protected String getCacheFingerprint() {
+        return ScanCache.fingerprint(getClass().getName(), configJson);
+    }
+
+    /**
+     * @return the cache for baseDir, or null if caching is not enabled (or there is nowhere to keep it)
+     */
+    protected ScanCache openCache(File baseDir) throws IOException {
+        if(cacheEnabled == false || baseDir == null) {
+            return null;
+        }
+
+        String fingerprint = getCacheFingerprint();
+        File file;
+        if(cacheFile != null) {
+            file = new File(cacheFile);
+            if(file.isAbsolute() == false) {
+                file = new File(baseDir, cacheFile);
+            }
+        } else {
+            File gitDir = findGitDir(baseDir.getAbsoluteFile());
+            if(gitDir == null) {
+                return null;
+            }
+            file = new File(gitDir, CACHE_DIR + "/" + getClass().getSimpleName() + "-" + fingerprint.substring(0, 12) + ".cache");
+        }
+
+        return ScanCache.open(file, fingerprint);
+    }
+
+    protected void saveCache(ScanCache cache) {
+        if(cache == null) {
+            return;
+        }
+
+        try {
+            cache.save();
+        } catch(IOException e) {
+            // the scan itself is fine, the next one will just be slower
+            System.err.println("Unable to save scan cache: " + cache.getCacheFile().getAbsolutePath());
+        }
+    }
+
+    /**
+     * The .git directory of the repository dir is in, or null if it isn't in one
+     */
+    private static File findGitDir(File dir) throws IOException {
+        for(File current = dir; current != null; current = current.getParentFile()) {
+            File gitDir = GitFileSource.findGitDir(current);
+            if(gitDir != null) {
+                return gitDir;
+            }
+        }
+        return null;
+    }
+}
@@ -0,0 +1,363 @@
+package uk.gov.dwp.carersallowance.sensitiveinfo;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.io.FileUtils;
+
+import uk.gov.dwp.carersallowance.sensitiveinfo.walk.TreeVisitor;
+import uk.gov.dwp.carersallowance.sensitiveinfo.walk.TreeWalker;
+import uk.gov.dwp.carersallowance.utils.FileStampCache;
+import uk.gov.dwp.carersallowance.utils.Parameters;
+
+/**
+ * Scans a fleet of repositories (e.g. every service cloned side by side before a release) in one
+ * process, rather than starting a JVM for each of them.  The scanners are created once, from a
+ * single config file, and shared by every repository, as are the parsed git config and exclude
+ * files (see LayeredGitConfig and GitSubmitFileFilter), so the global ones are read once.
+ *
+ * Each repository is a task on a single work-stealing ForkJoinPool.  A parallel walk of a
+ * repository (a KeyStoreScanner parallelism greater than 1) forks its directories into the same
+ * pool (see TreeWalker), so the threads that have finished the small repositories help with the
+ * large ones.
+ *
+ * The results are kept per repository, in the order the repositories were given (or found).
+ */
+public class BatchScan {
+    private static final String RESULTS_OPTION = "--results";
+    private static final String THREADS_OPTION = "--threads";
+    private static final String USAGE = "Usage: --batch <config file> [--results <dir>] [--threads <n>] <root directory or repository list>...";
+
+    /**
+     * The outcome of scanning one repository
+     */
+    public static class Result {
+        private String                     name;
+        private File                       repository;
+        private List<SensitiveInformation> findings;    // empty if the scan failed
+        private IOException                failure;     // null unless the scan failed
+        private long                       millis;
+
+        private Result(String name, File repository) {
+            this.name = name;
+            this.repository = repository;
+            this.findings = Collections.emptyList();
+        }
+
+        public String getName()                         { return name; }
+        public File getRepository()                     { return repository; }
+        public List<SensitiveInformation> getFindings() { return findings; }
+        public IOException getFailure()                 { return failure; }
+        public long getMillis()                         { return millis; }
+    }
+
+    private List<SensitiveInfoScanner> scanners;
+    private int                        threads;
+
+    /**
+     * @param scanners shared by every repository, so they must be safe to run on more than one
+     *                 tree at a time (as the scan daemon already needs them to be)
+     * @param threads  the size of the pool
+     */
+    public BatchScan(List<SensitiveInfoScanner> scanners, int threads) {
+        Parameters.validateMandatoryArgs(scanners, "scanners");
+        if(threads < 1) {
+            throw new IllegalArgumentException("threads must be 1 or more, not: " + threads);
+        }
+        this.scanners = new ArrayList<>(scanners);
+        this.threads = threads;
+    }
+
+    /**
+     * @param repositories name (e.g. the path relative to the batch root) vs the repository's directory
+     * @return the result of each repository, in the same order
+     */
+    public List<Result> scan(Map<String, File> repositories) {
+        Parameters.validateMandatoryArgs(repositories, "repositories");
+
+        final List<RepositoryTask> tasks = new ArrayList<>();
+        for(Map.Entry<String, File> repository: repositories.entrySet()) {
+            tasks.add(new RepositoryTask(new Result(repository.getKey(), repository.getValue())));
+        }
+
+        ForkJoinPool pool = new ForkJoinPool(threads);
+        try {
+            pool.invoke(new RecursiveAction() {
+                private static final long serialVersionUID = 1L;
+
+                @Override
+                protected void compute() {
+                    invokeAll(tasks);
+                }
+            });
+        } finally {
+            pool.shutdown();
+        }
+
+        List<Result> results = new ArrayList<>();
+        for(RepositoryTask task: tasks) {
+            results.add(task.result);
+        }
+        return results;
+    }
+
+    private class RepositoryTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private Result result;
+
+        public RepositoryTask(Result result) {
+            this.result = result;
+        }
+
+        @Override
+        protected void compute() {
+            long start = System.nanoTime();
+            try {
+                result.findings = new CompositeScanner(scanners).scan(result.repository);
+            } catch(IOException e) {
+                result.failure = e;
+            }
+            result.millis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+        }
+    }
+
+    /**
+     * @return every git repository at or below root (a directory with a .git directory or file),
+     *         by path relative to root ("." for root itself), in path order.  The inside of a
+     *         repository isn't searched any further.
+     */
+    public static Map<String, File> findRepositories(File root) throws IOException {
+        Parameters.validateMandatoryArgs(root, "root");
+
+        final Path rootPath = root.toPath();
+        final Map<String, File> repositories = Collections.synchronizedMap(new LinkedHashMap<String, File>());
+        new TreeWalker().walk(rootPath, new TreeVisitor<Void>() {
+            @Override
+            public boolean preVisitDirectory(Path dir, BasicFileAttributes attrs, List<Void> results) {
+                if(Files.exists(dir.resolve(".git")) == false) {
+                    return true;
+                }
+
+                String name = rootPath.relativize(dir).toString().replace(File.separatorChar, '/');
+                repositories.put(name.isEmpty() ? "." : name, dir.toFile());
+                return false;
+            }
+
+            @Override
+            public void postVisitDirectory(Path dir, List<Void> results) {
+            }
+
+            @Override
+            public void visitFile(Path file, BasicFileAttributes attrs, List<Void> results) {
+            }
+
+            @Override
+            public void visitFileFailed(Path path, IOException exception, List<Void> results) {
+                // an unreadable directory can't be scanned anyway
+            }
+        });
+
+        List<String> names = new ArrayList<>(repositories.keySet());
+        Collections.sort(names);
+        Map<String, File> sorted = new LinkedHashMap<>();
+        for(String name: names) {
+            sorted.put(name, repositories.get(name));
+        }
+        return sorted;
+    }
+
+    /**
+     * @param listFile a repository directory per line, relative to the list file's directory,
+     *                 blank lines and lines starting with # are skipped
+     * @return the repositories by their path as listed, in list order
+     */
+    public static Map<String, File> readRepositoryList(File listFile) throws IOException {
+        Parameters.validateMandatoryArgs(listFile, "listFile");
+
+        File listDir = listFile.getAbsoluteFile().getParentFile();
+        Map<String, File> repositories = new LinkedHashMap<>();
+        for(String line: FileUtils.readLines(listFile, Charset.defaultCharset())) {
+            String path = line.trim();
+            if(path.isEmpty() || path.startsWith("#")) {
+                continue;
+            }
+
+            File repository = new File(path);
+            repositories.put(path, repository.isAbsolute() ? repository : new File(listDir, path));
+        }
+        return repositories;
+    }
+
+    /**
+     * Write the findings of result to <resultsDir>/<name>.txt, a line per finding
+     */
+    public static File writeResult(File resultsDir, Result result) throws IOException {
+        String name = result.getName().equals(".") ? result.getRepository().getAbsoluteFile().getName() : result.getName();
+        File resultFile = new File(resultsDir, name + ".txt");
+
+        List<String> lines = new ArrayList<>();
+        if(result.getFailure() != null) {
+            lines.add("Problems scanning: " + result.getFailure());
+        } else if(result.getFindings().isEmpty()) {
+            lines.add("No sensitive information found");
+        }
+        for(SensitiveInformation finding: result.getFindings()) {
+            lines.add(finding.getMessage());
+        }
+
+        Files.createDirectories(resultFile.getAbsoluteFile().getParentFile().toPath());
+        Files.write(resultFile.toPath(), lines, StandardCharsets.UTF_8);
+        return resultFile;
+    }
+
+    /**
+     * ScannerFactory --batch <config file> [--results <dir>] [--threads <n>] <root directory or repository list>...
+     *
+     * Each argument after the config file is either a directory, which is searched for git
+     * repositories, or a file listing the repositories (see readRepositoryList).  The findings are
+     * printed per repository, and written to the results directory if there is one.
+     *
+     * @param workingDir  relative paths are relative to this, null for the current directory
+     * @param configCache if not null the scanners are reused if the config file hasn't changed
+     * @return the exit code, as ScannerFactory.run
+     */
+    public static int run(String[] args, File workingDir, FileStampCache<List<SensitiveInfoScanner>> configCache, PrintStream out, PrintStream err) {
+        File configFile = null;
+        File resultsDir = null;
+        int threads = Runtime.getRuntime().availableProcessors();
+        List<File> sources = new ArrayList<>();
+        for(int index = 0; index < args.length; index++) {
+            String arg = args[index];
+            if((RESULTS_OPTION.equals(arg) || THREADS_OPTION.equals(arg)) && index + 1 >= args.length) {
+                err.println(USAGE);
+                return 5;
+            }
+
+            if(RESULTS_OPTION.equals(arg)) {
+                resultsDir = resolve(workingDir, args[++index]);
+            } else if(THREADS_OPTION.equals(arg)) {
+                try {
+                    threads = Integer.parseInt(args[++index]);
+                } catch(NumberFormatException e) {
+                    threads = 0;
+                }
+                if(threads < 1) {
+                    err.println("threads must be 1 or more, not: " + args[index]);
+                    return 5;
+                }
+            } else if(configFile == null) {
+                configFile = resolve(workingDir, arg);
+            } else {
+                sources.add(resolve(workingDir, arg));
+            }
+        }
+
+        if(configFile == null || sources.isEmpty()) {
+            err.println(USAGE);
+            return 5;
+        }
+        if(configFile.exists() == false) {
+            err.println("Unable to locate configuration file: " + configFile.getAbsolutePath());
+            return 2;
+        }
+        if(configFile.canRead() == false) {
+            err.println("Unable to read file: " + configFile.getAbsolutePath());
+            return 3;
+        }
+
+        List<SensitiveInfoScanner> scanners;
+        Map<String, File> repositories = new LinkedHashMap<>();
+        try {
+            scanners = ScannerFactory.loadScanners(configFile, configCache);
+
+            for(File source: sources) {
+                if(source.exists() == false) {
+                    err.println("Unable to locate: " + source.getAbsolutePath());
+                    return 2;
+                }
+
+                Map<String, File> found = source.isDirectory() ? findRepositories(source) : readRepositoryList(source);
+                String prefix = sources.size() > 1 && source.isDirectory() ? source.getName() + "/" : "";
+                for(Map.Entry<String, File> repository: found.entrySet()) {
+                    String name = repository.getKey().equals(".") ? source.getName() : prefix + repository.getKey();
+                    if(repositories.containsKey(name)) {
+                        name = repository.getValue().getAbsolutePath();
+                    }
+                    repositories.put(name, repository.getValue());
+                }
+            }
+        } catch(IOException e) {
+            err.println("Problems executing configuration: " + configFile);
+            e.printStackTrace(err);
+            return 4;
+        }
+
+        out.println("Searching for sensitive information in " + repositories.size() + " repositories");
+        long start = System.nanoTime();
+        List<Result> results;
+        try {
+            results = new BatchScan(scanners, threads).scan(repositories);
+        } catch(RuntimeException e) {
+            err.println("Unexpected problem executing");
+            e.printStackTrace(err);
+            return 5;
+        }
+
+        boolean sensitiveInfoPresent = false;
+        boolean problemExecuting = false;
+        for(Result result: results) {
+            if(result.getFailure() != null) {
+                err.println("Problems scanning repository: " + result.getName());
+                result.getFailure().printStackTrace(err);
+                problemExecuting = true;
+            } else if(result.getFindings().isEmpty() == false) {
+                sensitiveInfoPresent = true;
+                out.println("Repository: " + result.getName());
+                for(SensitiveInformation finding: result.getFindings()) {
+                    out.println("\t" + finding.getMessage());
+                }
+            }
+
+            if(resultsDir != null) {
+                try {
+                    writeResult(resultsDir, result);
+                } catch(IOException e) {
+                    err.println("Unable to write the results of: " + result.getName());
+                    e.printStackTrace(err);
+                    problemExecuting = true;
+                }
+            }
+        }
+        out.println("Scanned " + results.size() + " repositories in " + TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) + "ms");
+
+        if(sensitiveInfoPresent) {
+            return 1;
+        }
+        if(problemExecuting) {
+            return 4;
+        }
+
+        out.println("No sensitive information found");
+        return 0;
+    }
+
+    private static File resolve(File workingDir, String path) {
+        File file = new File(path);
+        return workingDir == null || file.isAbsolute() ? file : new File(workingDir, path);
+    }
+}
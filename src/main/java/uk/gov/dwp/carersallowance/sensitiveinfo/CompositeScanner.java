@@ -4,33 +4,353 @@ import java.io.File;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import com.fasterxml.jackson.databind.JsonNode;
 
+import uk.gov.dwp.carersallowance.utils.Parameters;
+
+/**
+ * Runs a number of scanners over the same tree, the scanners that look at the files one at a
+ * time (FileScanners) share a single walk of the tree rather than each walking it in turn.
+ * The results are in the same order as if each scanner had been run on its own.
+ *
+ * With more than one thread the other scanners (and the shared walk) run at the same time on
+ * a fixed size pool, the first IOException stops the scan without waiting for the rest.  The
+ * parts still running are cancelled too: the shared walk lists no more directories and opens no
+ * more files, nested CompositeScanners and streaming scanners stop in the same way, and
+ * scanners that haven't started yet aren't run.
+ *
+ * The wall clock time each scanner took is kept (see getTimings), scanners sharing a walk are
+ * all given the time of the walk.
+ *
+ * When streaming (scan(File, FindingSink)) the findings of every scanner go straight to the sink,
+ * so a fail-fast sink stops all of them.
+ */
 public class CompositeScanner extends AbstractScanner {
     private List<SensitiveInfoScanner> list;
+    private int                        threads;     // 1 = run one after the other on the calling thread
+    private Map<String, Long>          timings;     // of the last scan, milliseconds
 
     public CompositeScanner(Collection<SensitiveInfoScanner> collection) {
+        this(collection, 1);
+    }
+
+    public CompositeScanner(Collection<SensitiveInfoScanner> collection, int threads) {
         if(collection == null) {
             list = new ArrayList<>();
         } else {
             list = new ArrayList<>(collection);
         }
+
+        if(threads < 1) {
+            throw new IllegalArgumentException("threads must be 1 or more, not: " + threads);
+        }
+        this.threads = threads;
+        timings = Collections.emptyMap();
+    }
+
+    /**
+     * expects:
+     *
+     * {"threads": 2,
+     *  "scanners": {
+     *     "SensitivePropertiesScanner": {...},
+     *     "KeyStoreScanner": {...}
+     *  }
+     * }
+     *
+     * scanners is configured in the same way as the root of a config file, threads (default 1)
+     * is the number of scanners run at the same time.
+     */
+    public CompositeScanner(JsonNode configNode) throws IOException {
+        this(configNode, null);
+    }
+
+    /**
+     * @param configDir relative files named in the config are resolved against this, null for the working directory
+     */
+    public CompositeScanner(JsonNode configNode, File configDir) throws IOException {
+        this(ScannerFactory.createScanners(configNode == null ? null : configNode.at("/scanners"), configDir),
+             configNode == null ? 1 : configNode.at("/threads").asInt(1));
     }
 
-    public CompositeScanner(JsonNode configNode) {
-        throw new UnsupportedOperationException("AbstractScanner(JsonNode configNode)");
+    public List<SensitiveInfoScanner> getScanners() { return Collections.unmodifiableList(list); }
+    public int getThreads() { return threads; }
+
+    /**
+     * @return how long (in milliseconds) each scanner took in the last scan, in scanner order
+     */
+    public Map<String, Long> getTimings() {
+        return timings;
     }
 
     @Override
     public List<SensitiveInformation> scan(File baseDir) throws IOException {
         List<SensitiveInformation> results = new ArrayList<>();
-
-        for(SensitiveInfoScanner check: list) {
-            List<SensitiveInformation> subResults = check.scan(baseDir);
-            results.addAll(subResults);
+        for(List<SensitiveInformation> childResults: scanEach(baseDir)) {
+            results.addAll(childResults);
         }
         return results;
     }
-}
\ No newline at end of file
+
+    /**
+     * @return the results of each scanner, in scanner order
+     */
+    public List<List<SensitiveInformation>> scanEach(File baseDir) throws IOException {
+        return run(baseDir, null, null);
+    }
+
+    /**
+     * Every scanner streams its findings to sink (those that can't stream pass them on when they
+     * are done), the scanners not yet started when sink is cancelled aren't run at all.
+     */
+    @Override
+    public void scan(File baseDir, FindingSink sink) throws IOException {
+        Parameters.validateMandatoryArgs(sink, "sink");
+        run(baseDir, sink, sink);
+    }
+
+    /**
+     * @param sink  null to collect the results
+     * @param outer cancels this scan when it is cancelled, may be null
+     */
+    private List<List<SensitiveInformation>> run(File baseDir, FindingSink sink, FindingSink outer) throws IOException {
+        List<List<SensitiveInformation>> childResults = new ArrayList<>(Collections.<List<SensitiveInformation>>nCopies(list.size(), null));
+        long[] childNanos = new long[list.size()];
+
+        Cancellation cancellation = new Cancellation(outer);
+        List<Callable<Void>> parts = createParts(baseDir, sink == null ? null : cancellation, cancellation, childResults, childNanos);
+        if(threads == 1 || parts.size() == 1) {
+            for(Callable<Void> part: parts) {
+                call(part);
+            }
+        } else {
+            runConcurrently(parts, cancellation);
+        }
+
+        Map<String, Long> childTimings = new LinkedHashMap<>();
+        for(int index = 0; index < list.size(); index++) {
+            childTimings.put(getLabel(index, list.get(index)), TimeUnit.NANOSECONDS.toMillis(childNanos[index]));
+        }
+        timings = Collections.unmodifiableMap(childTimings);
+        return childResults;
+    }
+
+    /**
+     * @return how a scanner is described in the timings, index is its position in the composite
+     */
+    public static String getLabel(int index, SensitiveInfoScanner scanner) {
+        String label = (index + 1) + ": " + scanner.getClass().getSimpleName();
+        if(scanner instanceof FileScanner) {
+            label += " (shared walk)";
+        }
+        return label;
+    }
+
+    /**
+     * One part for all the FileScanners (which share a walk) and one for each of the others,
+     * each part puts its results (and time taken) in the slots of its scanners.  When streaming
+     * to a sink the results are always empty.
+     *
+     * @param sink null to collect the results
+     */
+    private List<Callable<Void>> createParts(final File baseDir, final FindingSink sink, final Cancellation cancellation,
+                                             final List<List<SensitiveInformation>> childResults, final long[] childNanos) {
+        final List<FileScanner> fileScanners = new ArrayList<>();
+        final List<Integer> fileScannerIndexes = new ArrayList<>();
+        List<Callable<Void>> parts = new ArrayList<>();
+        for(int index = 0; index < list.size(); index++) {
+            final int childIndex = index;
+            final SensitiveInfoScanner check = list.get(index);
+            if(check instanceof FileScanner) {
+                fileScanners.add((FileScanner)check);
+                fileScannerIndexes.add(index);
+                continue;
+            }
+
+            parts.add(new Callable<Void>() {
+                @Override
+                public Void call() throws IOException {
+                    long start = System.nanoTime();
+                    List<SensitiveInformation> subResults;
+                    if(sink == null) {
+                        subResults = collect(check, baseDir, cancellation);
+                    } else {
+                        stream(check, baseDir, sink);
+                        subResults = new ArrayList<>();
+                    }
+                    childNanos[childIndex] = System.nanoTime() - start;
+                    childResults.set(childIndex, subResults);
+                    return null;
+                }
+            });
+        }
+
+        if(fileScanners.isEmpty() == false) {
+            parts.add(0, new Callable<Void>() {
+                @Override
+                public Void call() throws IOException {
+                    long start = System.nanoTime();
+                    List<List<SensitiveInformation>> subResults;
+                    if(sink == null) {
+                        subResults = SharedTreeScan.scan(baseDir, fileScanners, cancellation);
+                    } else {
+                        SharedTreeScan.stream(baseDir, fileScanners, sink);
+                        subResults = new ArrayList<>(Collections.nCopies(fileScanners.size(), new ArrayList<SensitiveInformation>()));
+                    }
+                    long elapsed = System.nanoTime() - start;
+                    for(int index = 0; index < fileScannerIndexes.size(); index++) {
+                        int childIndex = fileScannerIndexes.get(index);
+                        childNanos[childIndex] = elapsed;
+                        childResults.set(childIndex, subResults.get(index));
+                    }
+                    return null;
+                }
+            });
+        }
+        return parts;
+    }
+
+    /**
+     * Scanners other than CompositeScanners can't be stopped part way through while collecting,
+     * they are only skipped if the scan has already been cancelled
+     */
+    private static List<SensitiveInformation> collect(SensitiveInfoScanner scanner, File baseDir, Cancellation cancellation) throws IOException {
+        if(cancellation.isCancelled()) {
+            return new ArrayList<>();
+        }
+
+        if(scanner instanceof CompositeScanner) {
+            List<SensitiveInformation> results = new ArrayList<>();
+            for(List<SensitiveInformation> childResults: ((CompositeScanner)scanner).run(baseDir, null, cancellation)) {
+                results.addAll(childResults);
+            }
+            return results;
+        }
+        return scanner.scan(baseDir);
+    }
+
+    private static void stream(SensitiveInfoScanner scanner, File baseDir, FindingSink sink) throws IOException {
+        if(sink.isCancelled()) {
+            return;
+        }
+
+        if(scanner instanceof StreamingScanner) {
+            ((StreamingScanner)scanner).scan(baseDir, sink);
+            return;
+        }
+
+        for(SensitiveInformation finding: scanner.scan(baseDir)) {
+            sink.found(scanner, finding);
+        }
+    }
+
+    private void runConcurrently(List<Callable<Void>> parts, Cancellation cancellation) throws IOException {
+        ExecutorService executor = Executors.newFixedThreadPool(Math.min(threads, parts.size()), new ScannerThreadFactory());
+        try {
+            CompletionService<Void> completionService = new ExecutorCompletionService<>(executor);
+            for(Callable<Void> part: parts) {
+                completionService.submit(part);
+            }
+
+            for(int index = 0; index < parts.size(); index++) {
+                try {
+                    completionService.take().get();
+                } catch(ExecutionException e) {
+                    throw unwrap(e.getCause());
+                }
+            }
+        } catch(InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted waiting for scanners", e);
+        } finally {
+            // the results of the remaining parts aren't wanted once one has failed, the walks
+            // (which may be on other pools) don't check for interrupts so they are cancelled
+            cancellation.cancel();
+            executor.shutdownNow();
+        }
+    }
+
+    private static void call(Callable<Void> part) throws IOException {
+        try {
+            part.call();
+        } catch(IOException | RuntimeException e) {
+            throw e;
+        } catch(Exception e) {
+            throw new IOException(e);
+        }
+    }
+
+    private static IOException unwrap(Throwable cause) {
+        if(cause instanceof IOException) {
+            return (IOException)cause;
+        }
+        if(cause instanceof RuntimeException) {
+            throw (RuntimeException)cause;
+        }
+        if(cause instanceof Error) {
+            throw (Error)cause;
+        }
+        return new IOException(cause);
+    }
+
+    /**
+     * Passes the findings on to the caller's sink (if there is one) and is cancelled with it, or
+     * once the scan has been abandoned, so every part of the scan checks the one flag
+     */
+    private static class Cancellation implements FindingSink {
+        private FindingSink      outer;         // may be null
+        private volatile boolean cancelled;
+
+        public Cancellation(FindingSink outer) {
+            this.outer = outer;
+        }
+
+        public void cancel() {
+            cancelled = true;
+        }
+
+        @Override
+        public void found(SensitiveInfoScanner scanner, SensitiveInformation finding) {
+            if(outer != null && cancelled == false) {
+                outer.found(scanner, finding);
+            }
+        }
+
+        @Override
+        public boolean isCancelled() {
+            return cancelled || (outer != null && outer.isCancelled());
+        }
+    }
+
+    /**
+     * Daemon threads, so a scanner still running after the scan has been abandoned doesn't keep
+     * the JVM alive
+     */
+    private static class ScannerThreadFactory implements ThreadFactory {
+        private static final AtomicInteger POOL_NUMBER = new AtomicInteger();
+
+        private int           poolNumber = POOL_NUMBER.incrementAndGet();
+        private AtomicInteger threadNumber = new AtomicInteger();
+
+        @Override
+        public Thread newThread(Runnable runnable) {
+            Thread thread = new Thread(runnable, "scanner-" + poolNumber + "-" + threadNumber.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+}
@@ -0,0 +1,43 @@
+package uk.gov.dwp.carersallowance.sensitiveinfo;
+
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Keeps the first finding and cancels the scan, for when one finding is enough to know the
+ * answer.  Can be shared by any number of scans (which are all cancelled by the first finding
+ * in any of them).
+ */
+public class FailFastSink implements FindingSink {
+    private AtomicReference<SensitiveInformation> firstFinding;
+    private volatile SensitiveInfoScanner         firstScanner;
+
+    public FailFastSink() {
+        firstFinding = new AtomicReference<>();
+    }
+
+    @Override
+    public void found(SensitiveInfoScanner scanner, SensitiveInformation finding) {
+        if(firstFinding.compareAndSet(null, finding)) {
+            firstScanner = scanner;
+        }
+    }
+
+    @Override
+    public boolean isCancelled() {
+        return firstFinding.get() != null;
+    }
+
+    /**
+     * @return the first finding, or null if nothing has been found
+     */
+    public SensitiveInformation getFirstFinding() {
+        return firstFinding.get();
+    }
+
+    /**
+     * @return the scanner that made the first finding
+     */
+    public SensitiveInfoScanner getFirstScanner() {
+        return firstScanner;
+    }
+}
@@ -0,0 +1,45 @@
+package uk.gov.dwp.carersallowance.sensitiveinfo;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.List;
+
+/**
+ * The file events of a single FileScanner scan.  As with TreeVisitor the methods can be called
+ * from several threads at once when the tree is walked in parallel, each call adds its own
+ * findings to the results passed in.
+ */
+public interface FileScan {
+    /**
+     * @return false if this scan isn't interested in anything in dir, it won't be told about
+     *         anything below it
+     */
+    public boolean preVisitDirectory(Path dir, BasicFileAttributes attrs);
+
+    /**
+     * Called once everything below dir (a directory this scan wanted) has been visited
+     */
+    public void postVisitDirectory(Path dir);
+
+    /**
+     * @return true to have visitFile called with the start of the file, false if the file is of no
+     *         interest or has already been dealt with (e.g. its results were cached)
+     */
+    public boolean acceptFile(Path file, BasicFileAttributes attrs, List<SensitiveInformation> results);
+
+    /**
+     * @param header at least getHeaderLength() bytes from the start of the file (fewer if the file
+     *        is shorter) between position 0 and the limit, only valid during the call and not to be
+     *        modified.  null if the file could not be read.
+     */
+    public void visitFile(Path file, BasicFileAttributes attrs, ByteBuffer header, List<SensitiveInformation> results);
+
+    public void visitFileFailed(Path path, IOException exception, List<SensitiveInformation> results);
+
+    /**
+     * Called once the walk is complete
+     */
+    public void finish() throws IOException;
+}
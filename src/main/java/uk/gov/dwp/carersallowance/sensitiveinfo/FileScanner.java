@@ -0,0 +1,27 @@
+package uk.gov.dwp.carersallowance.sensitiveinfo;
+
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * A scanner that looks at the files in the tree one at a time.  Rather than walking the tree
+ * itself it registers for file events, so that any number of them can share a single walk
+ * (see SharedTreeScan) with each file opened once and the start of it read once.
+ */
+public interface FileScanner extends SensitiveInfoScanner {
+    /**
+     * @return the number of bytes from the start of each file this scanner needs, 0 if it doesn't
+     *         need to read the files
+     */
+    public int getHeaderLength();
+
+    /**
+     * @return the number of threads this scanner would like the tree walked with
+     */
+    public int getParallelism();
+
+    /**
+     * Called once per scan, before the walk starts
+     */
+    public FileScan startScan(File baseDir) throws IOException;
+}
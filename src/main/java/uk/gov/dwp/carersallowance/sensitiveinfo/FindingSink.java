@@ -0,0 +1,18 @@
+package uk.gov.dwp.carersallowance.sensitiveinfo;
+
+/**
+ * Receives findings as soon as they are made, rather than all at once at the end of the scan.
+ * Scanners may call found from several threads at once.
+ */
+public interface FindingSink {
+    /**
+     * @param scanner the scanner that made the finding
+     */
+    public void found(SensitiveInfoScanner scanner, SensitiveInformation finding);
+
+    /**
+     * Checked by the scanners for every directory and file, once it returns true they stop as soon
+     * as they can without reading anything else (findings already being made may still be reported).
+     */
+    public boolean isCancelled();
+}
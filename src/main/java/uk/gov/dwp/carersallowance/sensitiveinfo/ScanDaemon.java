@@ -0,0 +1,336 @@
+package uk.gov.dwp.carersallowance.sensitiveinfo;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import uk.gov.dwp.carersallowance.utils.FileStampCache;
+import uk.gov.dwp.carersallowance.utils.Parameters;
+
+/**
+ * A long running ScannerFactory, so git hooks don't pay for starting a JVM (and loading the
+ * scanners) on every commit.  The scanners created from each config file are kept until the
+ * file changes, as are the parsed .gitignore and git config files (see GitSubmitFileFilter),
+ * and the scanning code stays compiled.
+ *
+ * The daemon listens on a loopback port (Java 8 has no unix domain sockets), the port and a
+ * random token are written to the state file (~/.secureinfo/daemon by default, readable by the
+ * owner only) and a request without the token is refused.  bin/secureinfo-client is a client
+ * that falls back to running the jar when there is no daemon.
+ *
+ * Requests are queued in the order they arrive and up to "requests" of them (the number of
+ * processors by default) are run at a time, so one large scan doesn't hold up the others.
+ *
+ * The protocol is lines of UTF-8 text, a request is:
+ *
+ *     SECUREINFO 1 <token>
+ *     <the client's working directory>
+ *     <each of the ScannerFactory arguments>
+ *     <a blank line>
+ *
+ * the response is ScannerFactory's output, each line of stdout prefixed with "1 " and each line of
+ * stderr with "2 ", followed by "exit <exit code>".
+ *
+ * --watch is refused (exit code 5), a watch runs until it is stopped so it would take a request
+ * thread for good.
+ */
+public class ScanDaemon implements Closeable {
+    public static final String PROTOCOL        = "SECUREINFO 1";
+    public static final String OUT_PREFIX      = "1 ";
+    public static final String ERR_PREFIX      = "2 ";
+    public static final String EXIT_PREFIX     = "exit ";
+
+    private static final int    READ_TIMEOUT   = (int)TimeUnit.SECONDS.toMillis(30);   // of the request, not the scan
+    private static final int    TOKEN_BYTES    = 16;
+    private static final int    MAX_CONFIGS    = 1000;
+    private static final int    REFUSED        = 5;
+
+    private ServerSocket                               serverSocket;
+    private File                                       stateFile;
+    private String                                     token;
+    private ExecutorService                            executor;
+    private FileStampCache<List<SensitiveInfoScanner>> configCache;
+
+    /**
+     * @param port      0 for any free port
+     * @param stateFile where the port and token are written, null not to write them
+     * @param requests  the number of requests run at the same time
+     */
+    public ScanDaemon(int port, File stateFile, int requests) throws IOException {
+        if(requests < 1) {
+            throw new IllegalArgumentException("requests must be 1 or more, not: " + requests);
+        }
+
+        this.stateFile = stateFile;
+        token = newToken();
+        configCache = new FileStampCache<>(MAX_CONFIGS);
+        executor = new ThreadPoolExecutor(requests, requests, 0L, TimeUnit.MILLISECONDS,
+                                          new LinkedBlockingQueue<Runnable>(), new RequestThreadFactory());
+        serverSocket = new ServerSocket(port, 50, InetAddress.getLoopbackAddress());
+        if(stateFile != null) {
+            writeStateFile(stateFile, serverSocket.getLocalPort() + " " + token);
+        }
+    }
+
+    public int getPort()        { return serverSocket.getLocalPort(); }
+    public String getToken()    { return token; }
+
+    /**
+     * Accept requests until closed
+     */
+    public void serve() throws IOException {
+        while(serverSocket.isClosed() == false) {
+            final Socket socket;
+            try {
+                socket = serverSocket.accept();
+            } catch(SocketException e) {
+                if(serverSocket.isClosed()) {
+                    return;
+                }
+                throw e;
+            }
+
+            executor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    handle(socket);
+                }
+            });
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        serverSocket.close();
+        executor.shutdownNow();
+        if(stateFile != null) {
+            Files.deleteIfExists(stateFile.toPath());
+        }
+    }
+
+    private void handle(Socket socket) {
+        try(Socket client = socket) {
+            client.setSoTimeout(READ_TIMEOUT);
+            BufferedReader reader = new BufferedReader(new InputStreamReader(client.getInputStream(), StandardCharsets.UTF_8));
+            OutputStream output = client.getOutputStream();
+
+            Request request = readRequest(reader);
+            int exitCode;
+            try(PrintStream out = new PrintStream(new PrefixOutputStream(output, OUT_PREFIX), true, "UTF-8");
+                PrintStream err = new PrintStream(new PrefixOutputStream(output, ERR_PREFIX), true, "UTF-8")) {
+
+                if(request == null) {
+                    err.println("Invalid request to the scan daemon");
+                    exitCode = REFUSED;
+                } else if(Arrays.asList(request.args).contains(ScannerFactory.WATCH_OPTION)) {
+                    // a watch never returns, it would hold one of the request threads for good
+                    err.println(ScannerFactory.WATCH_OPTION + " is not supported by the scan daemon, run the jar instead");
+                    exitCode = REFUSED;
+                } else {
+                    client.setSoTimeout(0);
+                    exitCode = ScannerFactory.run(request.args, request.workingDir, configCache, out, err);
+                }
+            }
+
+            synchronized(output) {
+                output.write((EXIT_PREFIX + exitCode + "\n").getBytes(StandardCharsets.UTF_8));
+                output.flush();
+            }
+        } catch(IOException e) {
+            // the client has gone, there is nobody to tell
+        }
+    }
+
+    private static class Request {
+        public File     workingDir;
+        public String[] args;
+
+        public Request(File workingDir, String[] args) {
+            this.workingDir = workingDir;
+            this.args = args;
+        }
+    }
+
+    /**
+     * @return the request, or null if it is not valid (including the wrong token)
+     */
+    private Request readRequest(BufferedReader reader) throws IOException {
+        String header = reader.readLine();
+        if(header == null || header.startsWith(PROTOCOL + " ") == false) {
+            return null;
+        }
+
+        byte[] expected = token.getBytes(StandardCharsets.UTF_8);
+        byte[] actual = header.substring(PROTOCOL.length() + 1).getBytes(StandardCharsets.UTF_8);
+        if(MessageDigest.isEqual(expected, actual) == false) {
+            return null;
+        }
+
+        String workingDir = reader.readLine();
+        if(workingDir == null || new File(workingDir).isAbsolute() == false) {
+            return null;
+        }
+
+        List<String> args = new ArrayList<>();
+        String line;
+        while((line = reader.readLine()) != null && line.isEmpty() == false) {
+            if(args.size() == MAX_CONFIGS) {
+                return null;
+            }
+            args.add(line);
+        }
+        if(line == null) {
+            return null;    // incomplete
+        }
+        return new Request(new File(workingDir), args.toArray(new String[args.size()]));
+    }
+
+    /**
+     * Writes each complete line to the socket with a prefix, the lines of the different streams
+     * of a request are interleaved (a whole line at a time) in the order they are written.
+     */
+    private static class PrefixOutputStream extends OutputStream {
+        private OutputStream          output;       // shared, and locked while writing
+        private byte[]                prefix;
+        private ByteArrayOutputStream line;
+
+        public PrefixOutputStream(OutputStream output, String prefix) {
+            this.output = output;
+            this.prefix = prefix.getBytes(StandardCharsets.UTF_8);
+            this.line = new ByteArrayOutputStream();
+        }
+
+        @Override
+        public void write(int value) throws IOException {
+            if(value == '\n') {
+                writeLine();
+            } else if(value != '\r') {
+                line.write(value);
+            }
+        }
+
+        private void writeLine() throws IOException {
+            synchronized(output) {
+                output.write(prefix);
+                line.writeTo(output);
+                output.write('\n');
+            }
+            line.reset();
+        }
+
+        @Override
+        public void flush() throws IOException {
+            synchronized(output) {
+                output.flush();
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            if(line.size() > 0) {
+                writeLine();
+            }
+            flush();
+        }
+    }
+
+    private static String newToken() {
+        byte[] bytes = new byte[TOKEN_BYTES];
+        new SecureRandom().nextBytes(bytes);
+        StringBuilder buffer = new StringBuilder();
+        for(byte value: bytes) {
+            buffer.append(String.format("%02x", value & 0xff));
+        }
+        return buffer.toString();
+    }
+
+    /**
+     * Written to a temporary file (only readable by the owner where supported) which then replaces
+     * stateFile, so a client never sees half of it
+     */
+    private static void writeStateFile(File stateFile, String content) throws IOException {
+        File dir = stateFile.getAbsoluteFile().getParentFile();
+        Files.createDirectories(dir.toPath());
+
+        File tmpFile = new File(dir, stateFile.getName() + ".tmp");
+        Files.deleteIfExists(tmpFile.toPath());
+        try {
+            Files.createFile(tmpFile.toPath(), PosixFilePermissions.asFileAttribute(PosixFilePermissions.fromString("rw-------")));
+        } catch(UnsupportedOperationException e) {
+            Files.createFile(tmpFile.toPath());
+        }
+        Files.write(tmpFile.toPath(), (content + "\n").getBytes(StandardCharsets.UTF_8));
+
+        try {
+            Files.move(tmpFile.toPath(), stateFile.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch(AtomicMoveNotSupportedException e) {
+            Files.move(tmpFile.toPath(), stateFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    public static File getDefaultStateFile() {
+        return new File(System.getProperty("user.home"), ".secureinfo/daemon");
+    }
+
+    private static class RequestThreadFactory implements ThreadFactory {
+        private AtomicInteger threadNumber = new AtomicInteger();
+
+        @Override
+        public Thread newThread(Runnable runnable) {
+            Thread thread = new Thread(runnable, "scan-request-" + threadNumber.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+
+    /**
+     * ScannerFactory --daemon [port [stateFile]]
+     */
+    public static void main(String[] args) throws IOException {
+        Parameters.validateMandatoryArgs(args, "args");
+
+        int port = args.length > 0 ? Integer.parseInt(args[0]) : 0;
+        File stateFile = args.length > 1 ? new File(args[1]) : getDefaultStateFile();
+        int requests = Runtime.getRuntime().availableProcessors();
+
+        final ScanDaemon daemon = new ScanDaemon(port, stateFile, requests);
+        Runtime.getRuntime().addShutdownHook(new Thread() {
+            @Override
+            public void run() {
+                try {
+                    daemon.close();
+                } catch(IOException e) {
+                    // exiting anyway
+                }
+            }
+        });
+
+        System.out.println("Scan daemon listening on " + InetAddress.getLoopbackAddress().getHostAddress() + ":" + daemon.getPort());
+        daemon.serve();
+    }
+}
@@ -0,0 +1,313 @@
+package uk.gov.dwp.carersallowance.sensitiveinfo;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+import uk.gov.dwp.carersallowance.utils.Parameters;
+
+/**
+ * Keeps the findings of a set of scanners up to date as the tree changes, rather than scanning
+ * it again from scratch.
+ *
+ * Every directory the scans walk is registered with a WatchService, and only the files created
+ * or modified since are scanned again (with SharedTreeScan.rescan), a new directory is walked in
+ * full.  When a .gitignore changes (which can change what is included anywhere below it) its
+ * directory is walked again, the changed file is picked up as the git ignore rules are cached by
+ * their size and modification time (see GitSubmitFileFilter).
+ *
+ * Events are gathered into batches, a batch ends once no event has arrived for quietMillis (or
+ * has been gathering for maxBatchMillis) so a storm of events (e.g. a git checkout) is one
+ * rescan of the distinct paths.  If the WatchService overflows (events have been lost) the whole
+ * tree is scanned again.
+ *
+ * Scanners that aren't FileScanners are run in full after each batch.  Only full scans finish
+ * the scans, so a scan cache is only saved with the whole tree in it.  Changes to .git (e.g.
+ * what is in the index) aren't watched.
+ */
+public class ScanWatcher implements Closeable {
+    private static final long   DEFAULT_QUIET_MILLIS     = 200;
+    private static final long   DEFAULT_MAX_BATCH_MILLIS = 2000;
+    private static final String GIT_IGNORE               = ".gitignore";
+
+    /**
+     * Told what has changed after each scan, from the watcher's thread
+     */
+    public interface Listener {
+        public void findingsChanged(List<SensitiveInformation> found, List<SensitiveInformation> fixed);
+    }
+
+    private File                                  baseDir;
+    private List<FileScanner>                     fileScanners;
+    private List<SensitiveInfoScanner>            otherScanners;
+    private Listener                              listener;
+    private long                                  quietMillis;
+    private long                                  maxBatchMillis;
+
+    private WatchService                          watchService;
+    private Map<WatchKey, Path>                   watchedDirs;
+    private Map<Path, List<SensitiveInformation>> fileFindings;     // by the file they are in
+    private List<SensitiveInformation>            otherFindings;
+
+    public ScanWatcher(File baseDir, List<SensitiveInfoScanner> scanners, Listener listener) {
+        this(baseDir, scanners, listener, DEFAULT_QUIET_MILLIS, DEFAULT_MAX_BATCH_MILLIS);
+    }
+
+    public ScanWatcher(File baseDir, List<SensitiveInfoScanner> scanners, Listener listener, long quietMillis, long maxBatchMillis) {
+        Parameters.validateMandatoryArgs(baseDir, "baseDir");
+        Parameters.validateMandatoryArgs(scanners, "scanners");
+        Parameters.validateMandatoryArgs(listener, "listener");
+        if(quietMillis < 1 || maxBatchMillis < quietMillis) {
+            throw new IllegalArgumentException("quietMillis must be 1 or more and no more than maxBatchMillis, not: " + quietMillis + ", " + maxBatchMillis);
+        }
+
+        this.baseDir = baseDir.getAbsoluteFile();
+        this.listener = listener;
+        this.quietMillis = quietMillis;
+        this.maxBatchMillis = maxBatchMillis;
+
+        fileScanners = new ArrayList<>();
+        otherScanners = new ArrayList<>();
+        for(SensitiveInfoScanner scanner: scanners) {
+            if(scanner instanceof FileScanner) {
+                fileScanners.add((FileScanner)scanner);
+            } else {
+                otherScanners.add(scanner);
+            }
+        }
+
+        watchedDirs = new ConcurrentHashMap<>();
+        fileFindings = new TreeMap<>();
+        otherFindings = new ArrayList<>();
+    }
+
+    /**
+     * @return the current findings, those in files in path order
+     */
+    public synchronized List<SensitiveInformation> getFindings() {
+        List<SensitiveInformation> findings = new ArrayList<>();
+        for(List<SensitiveInformation> pathFindings: fileFindings.values()) {
+            findings.addAll(pathFindings);
+        }
+        findings.addAll(otherFindings);
+        return findings;
+    }
+
+    /**
+     * Scan the whole tree and then keep rescanning as it changes, until closed (or interrupted)
+     */
+    public void watch() throws IOException {
+        synchronized(this) {
+            if(watchService != null) {
+                throw new IllegalStateException("Already watching");
+            }
+            watchService = FileSystems.getDefault().newWatchService();
+        }
+
+        try {
+            scanAll();
+            Batch batch;
+            while((batch = nextBatch()) != null) {
+                if(batch.overflow) {
+                    scanAll();
+                } else {
+                    rescan(batch);
+                }
+            }
+        } catch(ClosedWatchServiceException e) {
+            // closed
+        } catch(InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            close();
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        WatchService closing;
+        synchronized(this) {
+            closing = watchService;
+        }
+        if(closing != null) {
+            closing.close();
+        }
+    }
+
+    /**
+     * The distinct paths changed in a batch of events
+     */
+    private static class Batch {
+        public Set<Path> changed = new LinkedHashSet<>();   // created or modified, files or directories
+        public Set<Path> deleted = new HashSet<>();
+        public boolean   overflow;
+    }
+
+    /**
+     * @return the next batch of events, waiting for the first of them
+     */
+    private Batch nextBatch() throws InterruptedException {
+        WatchKey key = watchService.take();
+        Batch batch = new Batch();
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(maxBatchMillis);
+        while(key != null) {
+            addEvents(key, batch);
+            if(System.nanoTime() >= deadline) {
+                break;
+            }
+            key = watchService.poll(quietMillis, TimeUnit.MILLISECONDS);
+        }
+        return batch;
+    }
+
+    private void addEvents(WatchKey key, Batch batch) {
+        Path dir = watchedDirs.get(key);
+        for(WatchEvent<?> event: key.pollEvents()) {
+            if(event.kind() == StandardWatchEventKinds.OVERFLOW) {
+                batch.overflow = true;
+                continue;
+            }
+            if(dir == null) {
+                continue;
+            }
+
+            Path path = dir.resolve((Path)event.context());
+            if(GIT_IGNORE.equals(path.getFileName().toString())) {
+                // the ignore rules of everything below dir may have changed
+                batch.changed.add(dir);
+            } else if(event.kind() == StandardWatchEventKinds.ENTRY_DELETE) {
+                batch.deleted.add(path);
+            } else {
+                batch.changed.add(path);
+            }
+        }
+
+        if(key.reset() == false) {
+            watchedDirs.remove(key);    // deleted
+        }
+    }
+
+    private void scanAll() throws IOException {
+        for(WatchKey key: watchedDirs.keySet()) {
+            key.cancel();
+        }
+        watchedDirs.clear();
+
+        Map<Path, List<SensitiveInformation>> findings = SharedTreeScan.rescan(baseDir, fileScanners, Collections.singletonList(baseDir.toPath()), new Registrar());
+        update(Collections.singleton(baseDir.toPath()), findings);
+    }
+
+    private void rescan(Batch batch) throws IOException {
+        // there is nothing to scan below a deleted path, or again below a changed directory
+        Set<Path> removed = new HashSet<>(batch.deleted);
+        removed.addAll(batch.changed);
+        List<Path> paths = new ArrayList<>();
+        for(Path path: batch.changed) {
+            if(hasAncestorIn(path.getParent(), batch.changed) == false) {
+                paths.add(path);
+            }
+        }
+
+        Map<Path, List<SensitiveInformation>> findings = SharedTreeScan.rescan(baseDir, fileScanners, paths, new Registrar());
+        update(removed, findings);
+    }
+
+    /**
+     * Replace the findings in and below the removed paths with findings, then run the other
+     * scanners and tell the listener what has changed
+     */
+    private void update(Set<Path> removed, Map<Path, List<SensitiveInformation>> findings) throws IOException {
+        List<SensitiveInformation> newOtherFindings = new ArrayList<>();
+        for(SensitiveInfoScanner scanner: otherScanners) {
+            newOtherFindings.addAll(scanner.scan(baseDir));
+        }
+
+        List<SensitiveInformation> before = new ArrayList<>();
+        List<SensitiveInformation> after = new ArrayList<>();
+        synchronized(this) {
+            Iterator<Map.Entry<Path, List<SensitiveInformation>>> entries = fileFindings.entrySet().iterator();
+            while(entries.hasNext()) {
+                Map.Entry<Path, List<SensitiveInformation>> entry = entries.next();
+                if(hasAncestorIn(entry.getKey(), removed)) {
+                    before.addAll(entry.getValue());
+                    entries.remove();
+                }
+            }
+            for(Map.Entry<Path, List<SensitiveInformation>> entry: findings.entrySet()) {
+                after.addAll(entry.getValue());
+                fileFindings.put(entry.getKey(), entry.getValue());
+            }
+
+            before.addAll(otherFindings);
+            after.addAll(newOtherFindings);
+            otherFindings = newOtherFindings;
+        }
+
+        List<SensitiveInformation> found = difference(after, before);
+        List<SensitiveInformation> fixed = difference(before, after);
+        if(found.isEmpty() == false || fixed.isEmpty() == false) {
+            listener.findingsChanged(found, fixed);
+        }
+    }
+
+    /**
+     * @return path or one of its ancestors is in paths
+     */
+    private static boolean hasAncestorIn(Path path, Set<Path> paths) {
+        for(Path ancestor = path; ancestor != null; ancestor = ancestor.getParent()) {
+            if(paths.contains(ancestor)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @return the findings in list whose messages aren't in other
+     */
+    private static List<SensitiveInformation> difference(List<SensitiveInformation> list, List<SensitiveInformation> other) {
+        Set<String> otherMessages = new HashSet<>();
+        for(SensitiveInformation information: other) {
+            otherMessages.add(information.getMessage());
+        }
+
+        List<SensitiveInformation> result = new ArrayList<>();
+        for(SensitiveInformation information: list) {
+            if(otherMessages.contains(information.getMessage()) == false) {
+                result.add(information);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Watches each directory as it is walked (before it is listed, so nothing created in it
+     * while it is being walked is missed).  Registering a directory again returns the same key.
+     */
+    private class Registrar implements SharedTreeScan.DirectoryListener {
+        @Override
+        public void directoryAccepted(Path dir) throws IOException {
+            WatchKey key = dir.register(watchService, StandardWatchEventKinds.ENTRY_CREATE,
+                                        StandardWatchEventKinds.ENTRY_DELETE, StandardWatchEventKinds.ENTRY_MODIFY);
+            watchedDirs.put(key, dir);
+        }
+    }
+}
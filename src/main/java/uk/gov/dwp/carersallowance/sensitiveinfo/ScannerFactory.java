@@ -2,9 +2,20 @@ package uk.gov.dwp.carersallowance.sensitiveinfo;
 
 import java.io.File;
 import java.io.IOException;
+import java.io.PrintStream;
+import java.text.ParseException;
+import java.util.Arrays;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import com.fasterxml.jackson.core.JsonFactory;
 import com.fasterxml.jackson.core.JsonParseException;
@@ -13,22 +24,69 @@ import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
 
+import uk.gov.dwp.carersallowance.utils.FileStampCache;
+
 public class ScannerFactory {
+    private static final String FAIL_FAST_OPTION = "--fail-fast";
+    private static final String DAEMON_OPTION    = "--daemon";
+    static final String         WATCH_OPTION     = "--watch";
+    private static final String BATCH_OPTION     = "--batch";
+
+    private static final FileStampCache.Loader<List<SensitiveInfoScanner>> SCANNER_LOADER = new FileStampCache.Loader<List<SensitiveInfoScanner>>() {
+        @Override
+        public List<SensitiveInfoScanner> load(File configFile) throws IOException {
+            return createScanners(readConfig(configFile), configFile.getAbsoluteFile().getParentFile());
+        }
+    };
 
     public static SensitiveInfoScanner createScanner(File configFile) throws JsonProcessingException, IOException {
         if(configFile == null) {
             return null;
         }
 
+        List<SensitiveInfoScanner> scannerList = createScanners(readConfig(configFile), configFile.getAbsoluteFile().getParentFile());
+
+        if(scannerList.isEmpty()) {
+            return null;
+        }
+
+        if(scannerList.size() == 1) {
+            return scannerList.get(0);
+        }
+
+        SensitiveInfoScanner scanner = new CompositeScanner(scannerList);
+        return scanner;
+    }
+
+    private static JsonNode readConfig(File configFile) throws JsonProcessingException, IOException {
         // create a json factory to write the treenode as json. for the example
         JsonFactory jsonFactory = new JsonFactory();
-        JsonParser parser = jsonFactory.createParser(configFile); // stream parser
+        try(JsonParser parser = jsonFactory.createParser(configFile)) { // stream parser
+            // general method, same as with data binding
+            ObjectMapper mapper = new ObjectMapper();
+            return mapper.readTree(parser);
+        }
+    }
 
+    /**
+     * @param rootNode each field is a scanner name and its config
+     * @return the scanners, in config order
+     */
+    public static List<SensitiveInfoScanner> createScanners(JsonNode rootNode) throws JsonProcessingException, IOException {
+        return createScanners(rootNode, null);
+    }
+
+    /**
+     * @param rootNode each field is a scanner name and its config
+     * @param configDir relative files named in the config are resolved against this, null for the working directory
+     * @return the scanners, in config order
+     */
+    public static List<SensitiveInfoScanner> createScanners(JsonNode rootNode, File configDir) throws JsonProcessingException, IOException {
         List<SensitiveInfoScanner> scannerList = new ArrayList<>();
+        if(rootNode == null) {
+            return scannerList;
+        }
 
-        // general method, same as with data binding
-        ObjectMapper mapper = new ObjectMapper();
-        JsonNode rootNode = mapper.readTree(parser);
         Iterator<String> scannerNames = rootNode.fieldNames();
         while(scannerNames.hasNext()) {
             String scannerName = scannerNames.next();
@@ -36,7 +94,7 @@ public class ScannerFactory {
 
             switch(scannerName) {
                 case "CompositeScanner": {
-                    SensitiveInfoScanner scanner = new CompositeScanner(configNode);
+                    SensitiveInfoScanner scanner = new CompositeScanner(configNode, configDir);
                     scannerList.add(scanner);
                     break;
                 }
@@ -46,7 +104,7 @@ public class ScannerFactory {
                     break;
                 }
                 case "KeyStoreScanner": {
-                    KeyStoreScanner scanner = new KeyStoreScanner();
+                    KeyStoreScanner scanner = new KeyStoreScanner(configNode, configDir);
                     scannerList.add(scanner);
                     break;
                 }
@@ -54,73 +112,489 @@ public class ScannerFactory {
                     throw new JsonParseException(null, "Unknown scanner: " + scannerName);
             }
         }
+        return scannerList;
+    }
 
-        if(scannerList.isEmpty()) {
+    public static SensitivePropertiesScanner fromJson(String json) {
+        if(json == null) {
             return null;
         }
+        return null;
+    }
 
-        if(scannerList.size() == 1) {
-            return scannerList.get(0);
+    /**
+     * Composite scanners (at any level) report how long each of their scanners took
+     */
+    private static void printTimings(PrintStream out, SensitiveInfoScanner scanner) {
+        if(scanner instanceof CompositeScanner == false) {
+            return;
         }
 
-        SensitiveInfoScanner scanner = new CompositeScanner(scannerList);
-        return scanner;
+        CompositeScanner compositeScanner = (CompositeScanner)scanner;
+        out.println("Timings:");
+        for(Map.Entry<String, Long> timing: compositeScanner.getTimings().entrySet()) {
+            out.println("\t" + timing.getKey() + " " + timing.getValue() + "ms");
+        }
+        for(SensitiveInfoScanner child: compositeScanner.getScanners()) {
+            printTimings(out, child);
+        }
     }
 
-    public static SensitivePropertiesScanner fromJson(String json) {
-        if(json == null) {
-            return null;
+    /**
+     * A config file with more than one scanner reports how long each took (as a composite would)
+     */
+    private static void printTimings(PrintStream out, ConfigRun config) {
+        if(config.scanners.size() <= 1) {
+            for(SensitiveInfoScanner scanner: config.scanners) {
+                printTimings(out, scanner);
+            }
+            return;
+        }
+
+        out.println("Timings:");
+        for(int index = 0; index < config.scanners.size(); index++) {
+            String label = CompositeScanner.getLabel(index, config.scanners.get(index));
+            out.println("\t" + label + " " + config.group.timings.get(config.scannerIndexes[index]) + "ms");
+        }
+        for(SensitiveInfoScanner scanner: config.scanners) {
+            printTimings(out, scanner);
+        }
+    }
+
+    /**
+     * A config file, and once it has been scanned, its results
+     */
+    private static class ConfigRun {
+        public String                     filename;
+        public File                       configFile;
+        public File                       baseDir;
+        public List<SensitiveInfoScanner> scanners;
+        public ScanGroup                  group;
+        public int[]                      scannerIndexes;   // of each scanner in the group
+        public IOException                failure;
+
+        public ConfigRun(String filename, File configFile) {
+            this.filename = filename;
+            this.configFile = configFile;
+            this.baseDir = configFile.getAbsoluteFile().getParentFile();
+        }
+
+        public List<SensitiveInformation> getResults() {
+            List<SensitiveInformation> results = new ArrayList<>();
+            for(int scannerIndex: scannerIndexes) {
+                results.addAll(group.results.get(scannerIndex));
+            }
+            return results;
+        }
+    }
+
+    /**
+     * The configs that scan the same base directory, a scanner that more than one of them asks for
+     * (i.e. with the same fingerprint) is only run once and all of the scanners are run as one
+     * composite, so every KeyStoreScanner shares a single walk of the tree.
+     *
+     * If the composite fails the scanners are run again one at a time, so only the configs using
+     * a scanner that fails are reported as failed, as if each config had been run on its own.
+     */
+    private static class ScanGroup {
+        public File                             baseDir;
+        public List<SensitiveInfoScanner>       scanners;
+        public Map<String, Integer>             fingerprints;   // fingerprint vs index in scanners
+        public List<ConfigRun>                  configs;
+        public List<List<SensitiveInformation>> results;        // of each scanner
+        public List<Long>                       timings;        // of each scanner, milliseconds
+
+        public ScanGroup(File baseDir) {
+            this.baseDir = baseDir;
+            scanners = new ArrayList<>();
+            fingerprints = new HashMap<>();
+            configs = new ArrayList<>();
+        }
+
+        public void add(ConfigRun config) {
+            config.group = this;
+            config.scannerIndexes = new int[config.scanners.size()];
+            for(int index = 0; index < config.scannerIndexes.length; index++) {
+                SensitiveInfoScanner scanner = config.scanners.get(index);
+                String fingerprint = null;
+                if(scanner instanceof AbstractScanner) {
+                    fingerprint = ((AbstractScanner)scanner).getFingerprint();
+                }
+
+                Integer scannerIndex = fingerprint == null ? null : fingerprints.get(fingerprint);
+                if(scannerIndex == null) {
+                    scannerIndex = scanners.size();
+                    scanners.add(scanner);
+                    if(fingerprint != null) {
+                        fingerprints.put(fingerprint, scannerIndex);
+                    }
+                }
+                config.scannerIndexes[index] = scannerIndex;
+            }
+            configs.add(config);
+        }
+
+        /**
+         * @param sink if not null the findings are streamed to it (and the results are empty)
+         */
+        public void scan(FindingSink sink) {
+            CompositeScanner composite = new CompositeScanner(scanners);
+            try {
+                results = scan(composite, sink);
+                timings = new ArrayList<>(composite.getTimings().values());
+            } catch(IOException e) {
+                scanEach(sink);
+            }
+        }
+
+        private void scanEach(FindingSink sink) {
+            results = new ArrayList<>();
+            timings = new ArrayList<>();
+            IOException[] failures = new IOException[scanners.size()];
+            for(int index = 0; index < scanners.size(); index++) {
+                CompositeScanner composite = new CompositeScanner(Collections.singletonList(scanners.get(index)));
+                try {
+                    results.add(scan(composite, sink).get(0));
+                } catch(IOException e) {
+                    failures[index] = e;
+                    results.add(new ArrayList<SensitiveInformation>());
+                }
+                timings.add(composite.getTimings().isEmpty() ? 0L : composite.getTimings().values().iterator().next());
+            }
+
+            for(ConfigRun config: configs) {
+                for(int scannerIndex: config.scannerIndexes) {
+                    if(failures[scannerIndex] != null && config.failure == null) {
+                        config.failure = failures[scannerIndex];
+                    }
+                }
+            }
+        }
+
+        /**
+         * @return the results of each of composite's scanners, empty when streaming to sink
+         */
+        private List<List<SensitiveInformation>> scan(CompositeScanner composite, FindingSink sink) throws IOException {
+            if(sink == null) {
+                return composite.scanEach(baseDir);
+            }
+
+            composite.scan(baseDir, sink);
+            List<List<SensitiveInformation>> empty = new ArrayList<>();
+            for(int index = 0; index < composite.getScanners().size(); index++) {
+                empty.add(new ArrayList<SensitiveInformation>());
+            }
+            return empty;
+        }
+    }
+
+    /**
+     * @return the base directories are the same
+     */
+    private static String getGroupKey(File baseDir) {
+        try {
+            return baseDir.getCanonicalPath();
+        } catch(IOException e) {
+            return baseDir.getAbsolutePath();
         }
-        return null;
+    }
+
+    /**
+     * The groups scan different trees, so they are run at the same time
+     */
+    private static void scanGroups(List<ScanGroup> groups, final FindingSink sink) throws InterruptedException {
+        if(groups.size() <= 1) {
+            for(ScanGroup group: groups) {
+                group.scan(sink);
+            }
+            return;
+        }
+
+        int threads = Math.min(groups.size(), Runtime.getRuntime().availableProcessors());
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for(final ScanGroup group: groups) {
+                futures.add(executor.submit(new Runnable() {
+                    @Override
+                    public void run() {
+                        group.scan(sink);
+                    }
+                }));
+            }
+
+            for(Future<?> future: futures) {
+                try {
+                    future.get();
+                } catch(ExecutionException e) {
+                    if(e.getCause() instanceof Error) {
+                        throw (Error)e.getCause();
+                    }
+                    throw (RuntimeException)e.getCause();
+                }
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * @param configCache if not null the scanners of config files that haven't changed since they
+     *                    were last read are reused
+     */
+    static List<SensitiveInfoScanner> loadScanners(File configFile, FileStampCache<List<SensitiveInfoScanner>> configCache) throws IOException {
+        if(configCache == null) {
+            return createScanners(readConfig(configFile), configFile.getAbsoluteFile().getParentFile());
+        }
+
+        try {
+            return configCache.get(configFile.getCanonicalFile(), SCANNER_LOADER);
+        } catch(ParseException e) {
+            throw new IOException(e);   // not thrown by SCANNER_LOADER
+        }
+    }
+
+    /**
+     * Watch the tree of each group until interrupted, printing findings as they are found and fixed
+     *
+     * @return the exit code
+     */
+    private static int watchGroups(List<ScanGroup> groups, final PrintStream out, final PrintStream err) throws InterruptedException {
+        final List<IOException> failures = new ArrayList<>();
+        List<Thread> threads = new ArrayList<>();
+        for(ScanGroup group: groups) {
+            final ScanWatcher watcher = new ScanWatcher(group.baseDir, group.scanners, new ScanWatcher.Listener() {
+                @Override
+                public void findingsChanged(List<SensitiveInformation> found, List<SensitiveInformation> fixed) {
+                    synchronized(out) {
+                        for(SensitiveInformation information: fixed) {
+                            out.println("Fixed: " + information.getMessage());
+                        }
+                        for(SensitiveInformation information: found) {
+                            out.println("Found: " + information.getMessage());
+                        }
+                    }
+                }
+            });
+
+            out.println("Watching: " + group.baseDir);
+            Thread thread = new Thread("watch-" + group.baseDir.getName()) {
+                @Override
+                public void run() {
+                    try {
+                        watcher.watch();
+                    } catch(IOException e) {
+                        synchronized(failures) {
+                            failures.add(e);
+                        }
+                    }
+                }
+            };
+            thread.start();
+            threads.add(thread);
+        }
+
+        for(Thread thread: threads) {
+            thread.join();
+        }
+
+        for(IOException failure: failures) {
+            err.println("Problems watching");
+            failure.printStackTrace(err);
+        }
+        return failures.isEmpty() ? 0 : 4;
     }
 
     public static void main(String[] args) throws JsonProcessingException, IOException {
-        System.out.println("Searching for sensitive information");
+        if(args.length > 0 && DAEMON_OPTION.equals(args[0])) {
+            ScanDaemon.main(Arrays.copyOfRange(args, 1, args.length));
+            return;
+        }
+
+        int exitCode = run(args, System.out, System.err);
+        if(exitCode != 0) {
+            System.exit(exitCode);
+        }
+    }
+
+    /**
+     * @return the config the scanner (which may be inside a composite) came from, the first config
+     *         when it can't be found
+     */
+    private static ConfigRun findConfig(List<ConfigRun> configs, SensitiveInfoScanner scanner) {
+        for(ConfigRun config: configs) {
+            if(config.failure != null) {
+                continue;
+            }
+            for(int scannerIndex: config.scannerIndexes) {
+                if(contains(config.group.scanners.get(scannerIndex), scanner)) {
+                    return config;
+                }
+            }
+        }
+        return configs.get(0);
+    }
+
+    private static boolean contains(SensitiveInfoScanner parent, SensitiveInfoScanner scanner) {
+        if(parent == scanner) {
+            return true;
+        }
+
+        if(parent instanceof CompositeScanner) {
+            for(SensitiveInfoScanner child: ((CompositeScanner)parent).getScanners()) {
+                if(contains(child, scanner)) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Scan with each of the config files in args, the base directory of each being the directory the
+     * config file is in.  All the scanners are created first and grouped by base directory, so each
+     * tree is only walked once however many configs scan it, then the groups are scanned in parallel.
+     * The results are reported per config file, in args order.
+     *
+     * With the --fail-fast option every scan is stopped as soon as anything is found, and only
+     * that first finding is reported.
+     *
+     * With the --watch option each tree is scanned and then watched, the findings are printed as
+     * they are found and fixed until the process is stopped (see ScanWatcher).
+     *
+     * With --batch as the first argument the rest are a config file and the repositories to scan
+     * with it, all in this process (see BatchScan).
+     *
+     * @return the exit code
+     *     0: Success
+     *     1: Sensitive Information found
+     *     2: Unable to locate configuration file
+     *     3: Unable to read configuration file
+     *     4: Problem executing configuration
+     *     5: Unexpected problem
+     */
+    public static int run(String[] args, PrintStream out, PrintStream err) {
+        return run(args, null, null, out, err);
+    }
+
+    /**
+     * As run(String[], PrintStream, PrintStream), for a long running process (see ScanDaemon)
+     *
+     * @param workingDir  relative config file names are relative to this, null for the current directory
+     * @param configCache if not null the scanners of config files that haven't changed are reused
+     *                    rather than created again (so they are shared by concurrent runs)
+     */
+    public static int run(String[] args, File workingDir, FileStampCache<List<SensitiveInfoScanner>> configCache, PrintStream out, PrintStream err) {
+        if(args.length > 0 && BATCH_OPTION.equals(args[0])) {
+            return BatchScan.run(Arrays.copyOfRange(args, 1, args.length), workingDir, configCache, out, err);
+        }
+
+        out.println("Searching for sensitive information");
         boolean sensitiveInfoPresent = false;
         boolean problemExecuting = false;
         try {
+            FailFastSink failFastSink = null;
+            boolean watch = false;
+            List<ConfigRun> configs = new ArrayList<>();
             for(String filename: args) {
+                if(FAIL_FAST_OPTION.equals(filename)) {
+                    failFastSink = new FailFastSink();
+                    continue;
+                }
+                if(WATCH_OPTION.equals(filename)) {
+                    watch = true;
+                    continue;
+                }
+
                 File configFile = new File(filename);
+                if(workingDir != null && configFile.isAbsolute() == false) {
+                    configFile = new File(workingDir, filename);
+                }
                 if(configFile.exists() == false) {
-                    System.err.println("Unable to locate configuration file: " + configFile.getAbsolutePath());
-                    System.exit(2);
+                    err.println("Unable to locate configuration file: " + configFile.getAbsolutePath());
+                    return 2;
                 }
 
                 if(configFile.canRead() == false) {
-                    System.err.println("Unable to read file: " + configFile.getAbsolutePath());
-                    System.exit(3);
+                    err.println("Unable to read file: " + configFile.getAbsolutePath());
+                    return 3;
                 }
+                configs.add(new ConfigRun(filename, configFile));
+            }
 
+            Map<String, ScanGroup> groups = new LinkedHashMap<>();
+            for(ConfigRun config: configs) {
                 try {
-                    File baseDir = configFile.getParentFile();
-                    SensitiveInfoScanner scanner = ScannerFactory.createScanner(configFile);
-                    List<SensitiveInformation> problems = scanner.scan(baseDir);
-                    if(problems.isEmpty() == false) {
-                        sensitiveInfoPresent = true;
-                        System.out.println("Config: " + filename);
-                        for(SensitiveInformation problem: problems) {
-                            System.out.println("\t" + problem.getMessage());
-                        }
-                    }
+                    config.scanners = loadScanners(config.configFile, configCache);
                 } catch(IOException e) {
-                    System.err.println("Problems executing configuration: " + configFile);
-                    e.printStackTrace();
+                    config.failure = e;
+                    continue;
+                }
+
+                String groupKey = getGroupKey(config.baseDir);
+                ScanGroup group = groups.get(groupKey);
+                if(group == null) {
+                    group = new ScanGroup(config.baseDir);
+                    groups.put(groupKey, group);
+                }
+                group.add(config);
+            }
+
+            if(watch) {
+                for(ConfigRun config: configs) {
+                    if(config.failure != null) {
+                        err.println("Problems executing configuration: " + config.filename);
+                        config.failure.printStackTrace(err);
+                        return 4;
+                    }
+                }
+                return watchGroups(new ArrayList<>(groups.values()), out, err);
+            }
+
+            scanGroups(new ArrayList<>(groups.values()), failFastSink);
+
+            for(ConfigRun config: configs) {
+                if(config.failure != null) {
+                    err.println("Problems executing configuration: " + config.filename);
+                    config.failure.printStackTrace(err);
                     problemExecuting = true;
+                    continue;
+                }
+
+                if(failFastSink != null) {
+                    continue;
                 }
+
+                List<SensitiveInformation> problems = config.getResults();
+                if(problems.isEmpty() == false) {
+                    sensitiveInfoPresent = true;
+                    out.println("Config: " + config.filename);
+                    for(SensitiveInformation problem: problems) {
+                        out.println("\t" + problem.getMessage());
+                    }
+                }
+                printTimings(out, config);
+            }
+
+            if(failFastSink != null && failFastSink.getFirstFinding() != null) {
+                sensitiveInfoPresent = true;
+                out.println("Config: " + findConfig(configs, failFastSink.getFirstScanner()).filename);
+                out.println("\t" + failFastSink.getFirstFinding().getMessage());
             }
-        } catch(RuntimeException e) {
-            System.err.println("Unexpected problem executing");
-            e.printStackTrace();
-            System.exit(5);
+        } catch(RuntimeException | InterruptedException e) {
+            err.println("Unexpected problem executing");
+            e.printStackTrace(err);
+            return 5;
         }
 
         if(sensitiveInfoPresent) {
-            System.exit(1);
+            return 1;
         }
         if(problemExecuting) {
-            System.exit(4);
+            return 4;
         }
 
-        System.out.println("No sensitive information found");
+        out.println("No sensitive information found");
+        return 0;
     }
-}
\ No newline at end of file
+}
@@ -4,6 +4,8 @@ import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.attribute.BasicFileAttributes;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
@@ -22,6 +24,8 @@ import com.fasterxml.jackson.databind.node.JsonNodeFactory;
 import com.fasterxml.jackson.databind.node.MissingNode;
 import com.fasterxml.jackson.databind.node.ObjectNode;
 
+import uk.gov.dwp.carersallowance.sensitiveinfo.cache.ScanCache;
+
 /**
  * Properties that should not be populated
  * @author David Hutchinson (drh@elegantsolutions.co.uk) on 16 Feb 2017.
@@ -54,9 +58,12 @@ public class SensitivePropertiesScanner extends AbstractScanner {
      *     ]
      * }
      *
+     * See AbstractScanner for the common (cache) config.
+     *
      * @param json
      */
     public SensitivePropertiesScanner(JsonNode rootConfigNode) {
+        super(rootConfigNode);
         if(rootConfigNode == null || rootConfigNode instanceof MissingNode) {
             throw new IllegalArgumentException("rootConfigNode cannot be null or empty");
         }
@@ -175,6 +182,19 @@ public class SensitivePropertiesScanner extends AbstractScanner {
             return problems;
         }
 
+        ScanCache cache = openCache(baseDir);
+        BasicFileAttributes attrs = null;
+        if(cache != null) {
+            attrs = Files.readAttributes(propertiesFile.toPath(), BasicFileAttributes.class);
+            List<String> cached = cache.lookup(propertiesFile.getAbsolutePath(), attrs);
+            if(cached != null) {
+                for(String message: cached) {
+                    problems.add(new SensitiveInformation(message));
+                }
+                return problems;
+            }
+        }
+
         Properties properties = new Properties();
         FileInputStream inputStream = null;
         try {
@@ -190,6 +210,15 @@ public class SensitivePropertiesScanner extends AbstractScanner {
         } finally {
             IOUtils.closeQuietly(inputStream);
         }
+
+        if(cache != null) {
+            List<String> messages = new ArrayList<>();
+            for(SensitiveInformation problem: problems) {
+                messages.add(problem.getMessage());
+            }
+            cache.record(propertiesFile.getAbsolutePath(), attrs, messages);
+            saveCache(cache);
+        }
         return problems;
     }
 
@@ -0,0 +1,424 @@
+package uk.gov.dwp.carersallowance.sensitiveinfo;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import uk.gov.dwp.carersallowance.sensitiveinfo.signature.HeaderReader;
+import uk.gov.dwp.carersallowance.sensitiveinfo.walk.TreeVisitor;
+import uk.gov.dwp.carersallowance.sensitiveinfo.walk.TreeWalker;
+import uk.gov.dwp.carersallowance.utils.Parameters;
+
+/**
+ * Runs any number of FileScanners over a tree with a single walk.
+ *
+ * Each file is offered to every scanner that is interested in its directory, if any of them want
+ * to see its contents the file is opened once and the largest header any of them need is read
+ * into a buffer owned by the walking thread, which is then handed to each of them in turn.
+ *
+ * The tree is walked with the largest parallelism any of the scanners ask for, the results of
+ * each scanner are kept apart and in walk order, i.e. the same as if it had walked the tree itself.
+ *
+ * Alternatively the findings can be streamed to a FindingSink as they are made, once the sink is
+ * cancelled no more directories are listed and no more files are opened.  A walk collecting its
+ * results can be stopped in the same way with a sink that is only checked for cancellation.
+ *
+ * Part of a tree can be scanned again (rescan) when only some of the files have changed.
+ */
+public class SharedTreeScan {
+    private static final int MAX_SCANNERS = 64;     // one bit each in a long
+
+    private static final ThreadLocal<ByteBuffer> HEADER_BUFFER = new ThreadLocal<ByteBuffer>() {
+        @Override
+        protected ByteBuffer initialValue() {
+            return ByteBuffer.allocate(256);
+        }
+    };
+
+    private static final ThreadLocal<List<SensitiveInformation>> SCAN_RESULTS = new ThreadLocal<List<SensitiveInformation>>() {
+        @Override
+        protected List<SensitiveInformation> initialValue() {
+            return new ArrayList<>();
+        }
+    };
+
+    /**
+     * Told about each directory the scans are interested in, before it is listed
+     */
+    public interface DirectoryListener {
+        public void directoryAccepted(Path dir) throws IOException;
+    }
+
+    private SharedTreeScan() {
+        // all methods are static
+    }
+
+    /**
+     * @return the results of each scanner, in the same order as scanners
+     */
+    public static List<List<SensitiveInformation>> scan(File baseDir, List<? extends FileScanner> scanners) throws IOException {
+        return walk(baseDir, scanners, null, null);
+    }
+
+    /**
+     * As scan(File, List) but the walk stops as soon as cancellation is cancelled (nothing is passed
+     * to it), the results are then incomplete and the scans aren't finished.
+     */
+    public static List<List<SensitiveInformation>> scan(File baseDir, List<? extends FileScanner> scanners, FindingSink cancellation) throws IOException {
+        Parameters.validateMandatoryArgs(cancellation, "cancellation");
+        return walk(baseDir, scanners, null, cancellation);
+    }
+
+    /**
+     * Pass each finding to sink as soon as it is made.  The scans are only finished (FileScan.finish)
+     * if the walk wasn't cancelled.
+     */
+    public static void stream(File baseDir, List<? extends FileScanner> scanners, FindingSink sink) throws IOException {
+        Parameters.validateMandatoryArgs(sink, "sink");
+        walk(baseDir, scanners, sink, sink);
+    }
+
+    /**
+     * @param sink         null to collect the findings
+     * @param cancellation null if the walk can't be cancelled
+     */
+    private static List<List<SensitiveInformation>> walk(File baseDir, List<? extends FileScanner> scanners,
+                                                         FindingSink sink, FindingSink cancellation) throws IOException {
+        Parameters.validateMandatoryArgs(scanners, "scanners");
+        if(scanners.size() > MAX_SCANNERS) {
+            throw new IllegalArgumentException("At most " + MAX_SCANNERS + " scanners can share a scan, not: " + scanners.size());
+        }
+
+        List<List<SensitiveInformation>> results = new ArrayList<>();
+        for(int index = 0; index < scanners.size(); index++) {
+            results.add(new ArrayList<SensitiveInformation>());
+        }
+        if(baseDir == null || scanners.isEmpty() || (cancellation != null && cancellation.isCancelled())) {
+            return results;
+        }
+
+        FileScan[] scans = new FileScan[scanners.size()];
+        int[] headerLengths = new int[scans.length];
+        int parallelism = 1;
+        for(int index = 0; index < scans.length; index++) {
+            FileScanner scanner = scanners.get(index);
+            scans[index] = scanner.startScan(baseDir);
+            headerLengths[index] = scanner.getHeaderLength();
+            parallelism = Math.max(parallelism, scanner.getParallelism());
+        }
+
+        TreeWalker walker = new TreeWalker(parallelism);
+        SharedVisitor visitor = new SharedVisitor(scanners.toArray(new FileScanner[scans.length]), scans, headerLengths, sink, cancellation, null);
+        List<Finding> findings = walker.walk(baseDir.toPath(), visitor);
+        if(visitor.isCancelled()) {
+            return results;
+        }
+
+        for(FileScan scan: scans) {
+            scan.finish();
+        }
+
+        for(Finding finding: findings) {
+            results.get(finding.scanner).add(finding.information);
+        }
+        return results;
+    }
+
+    /**
+     * Scan just paths (files, or directories which are walked in full) of the tree at baseDir, each
+     * as it would be in a full scan, i.e. after every directory above it has been offered to the
+     * scans.  Paths that no longer exist, or are below a directory none of the scans want, are
+     * skipped.  The scans are only finished if baseDir itself is one of the paths, otherwise they
+     * have only seen part of the tree.
+     *
+     * @param listener if not null told about every directory walked (not those above paths)
+     * @return the findings of all the scanners by the file they were found in, in scan order
+     */
+    public static Map<Path, List<SensitiveInformation>> rescan(File baseDir, List<? extends FileScanner> scanners, Collection<Path> paths,
+                                                               DirectoryListener listener) throws IOException {
+        Parameters.validateMandatoryArgs(baseDir, "baseDir");
+        Parameters.validateMandatoryArgs(scanners, "scanners");
+        Parameters.validateMandatoryArgs(paths, "paths");
+        if(scanners.size() > MAX_SCANNERS) {
+            throw new IllegalArgumentException("At most " + MAX_SCANNERS + " scanners can share a scan, not: " + scanners.size());
+        }
+
+        Map<Path, List<SensitiveInformation>> results = new LinkedHashMap<>();
+        if(scanners.isEmpty() || paths.isEmpty()) {
+            return results;
+        }
+
+        FileScan[] scans = new FileScan[scanners.size()];
+        int[] headerLengths = new int[scans.length];
+        int parallelism = 1;
+        for(int index = 0; index < scans.length; index++) {
+            FileScanner scanner = scanners.get(index);
+            scans[index] = scanner.startScan(baseDir);
+            headerLengths[index] = scanner.getHeaderLength();
+            parallelism = Math.max(parallelism, scanner.getParallelism());
+        }
+
+        Path root = baseDir.toPath();
+        TreeWalker walker = new TreeWalker(parallelism);
+        SharedVisitor visitor = new SharedVisitor(scanners.toArray(new FileScanner[scans.length]), scans, headerLengths, null, null, listener);
+        Map<Path, Boolean> offered = new HashMap<>();    // directory vs whether any scan wants it
+        List<Finding> findings = new ArrayList<>();
+        boolean wholeTree = false;
+        for(Path path: paths) {
+            if(path.startsWith(root) == false) {
+                throw new IllegalArgumentException(path + " is not in " + root);
+            }
+
+            if(path.equals(root)) {
+                wholeTree = true;
+                findings.addAll(walker.walk(path, visitor));
+            } else if(offerDirectory(visitor, root, path.getParent(), offered, findings)) {
+                findings.addAll(walker.walk(path, visitor));
+            }
+        }
+
+        if(wholeTree) {
+            for(FileScan scan: scans) {
+                scan.finish();
+            }
+        }
+
+        for(Finding finding: findings) {
+            List<SensitiveInformation> pathResults = results.get(finding.path);
+            if(pathResults == null) {
+                pathResults = new ArrayList<>();
+                results.put(finding.path, pathResults);
+            }
+            pathResults.add(finding.information);
+        }
+        return results;
+    }
+
+    /**
+     * Offer dir, and every directory above it (down from root), to the scans
+     *
+     * @return true if any scan wants dir
+     */
+    private static boolean offerDirectory(SharedVisitor visitor, Path root, Path dir, Map<Path, Boolean> offered, List<Finding> results) throws IOException {
+        Boolean accepted = offered.get(dir);
+        if(accepted != null) {
+            return accepted;
+        }
+
+        accepted = false;
+        if(dir.equals(root) || offerDirectory(visitor, root, dir.getParent(), offered, results)) {
+            try {
+                BasicFileAttributes attrs = Files.readAttributes(dir, BasicFileAttributes.class, LinkOption.NOFOLLOW_LINKS);
+                accepted = attrs.isDirectory() && visitor.offerDirectory(dir, attrs, results);
+            } catch(NoSuchFileException e) {
+                accepted = false;
+            }
+        }
+        offered.put(dir, accepted);
+        return accepted;
+    }
+
+    private static class Finding {
+        public int                  scanner;
+        public Path                 path;       // the file it was found in
+        public SensitiveInformation information;
+
+        public Finding(int scanner, Path path, SensitiveInformation information) {
+            this.scanner = scanner;
+            this.path = path;
+            this.information = information;
+        }
+    }
+
+    /**
+     * Which scans are interested in which directory is a bit mask, only directories where some
+     * scan has dropped out are recorded, so usually there is nothing to look up.
+     */
+    private static class SharedVisitor implements TreeVisitor<Finding> {
+        private FileScanner[]   scanners;
+        private FileScan[]      scans;
+        private int[]           headerLengths;
+        private FindingSink       sink;           // null to collect the findings
+        private FindingSink       cancellation;   // may be null
+        private DirectoryListener listener;       // may be null
+        private long              allScans;
+        private Map<Path, Long>   partialMasks;
+
+        public SharedVisitor(FileScanner[] scanners, FileScan[] scans, int[] headerLengths, FindingSink sink,
+                             FindingSink cancellation, DirectoryListener listener) {
+            this.scanners = scanners;
+            this.scans = scans;
+            this.headerLengths = headerLengths;
+            this.sink = sink;
+            this.cancellation = cancellation;
+            this.listener = listener;
+            this.allScans = scans.length == MAX_SCANNERS ? -1L : (1L << scans.length) - 1;
+            this.partialMasks = new ConcurrentHashMap<>();
+        }
+
+        public boolean isCancelled() {
+            return cancellation != null && cancellation.isCancelled();
+        }
+
+        private long getMask(Path dir) {
+            if(partialMasks.isEmpty() || dir == null) {
+                return allScans;
+            }
+            Long mask = partialMasks.get(dir);
+            return mask == null ? allScans : mask;
+        }
+
+        @Override
+        public boolean preVisitDirectory(Path dir, BasicFileAttributes attrs, List<Finding> results) throws IOException {
+            if(offerDirectory(dir, attrs, results) == false) {
+                return false;
+            }
+
+            if(listener != null) {
+                listener.directoryAccepted(dir);
+            }
+            return true;
+        }
+
+        /**
+         * @return true if any scan wants dir
+         */
+        public boolean offerDirectory(Path dir, BasicFileAttributes attrs, List<Finding> results) {
+            if(isCancelled()) {
+                return false;
+            }
+
+            long parentMask = getMask(dir.getParent());
+            long mask = 0;
+            for(int index = 0; index < scans.length; index++) {
+                if((parentMask & (1L << index)) != 0 && scans[index].preVisitDirectory(dir, attrs)) {
+                    mask |= 1L << index;
+                }
+            }
+
+            if(mask == 0) {
+                return false;
+            }
+            if(mask != allScans) {
+                partialMasks.put(dir, mask);
+            }
+            return true;
+        }
+
+        @Override
+        public void postVisitDirectory(Path dir, List<Finding> results) {
+            long mask = getMask(dir);
+            for(int index = 0; index < scans.length; index++) {
+                if((mask & (1L << index)) != 0) {
+                    scans[index].postVisitDirectory(dir);
+                }
+            }
+
+            if(partialMasks.isEmpty() == false) {
+                partialMasks.remove(dir);
+            }
+        }
+
+        @Override
+        public void visitFile(Path file, BasicFileAttributes attrs, List<Finding> results) {
+            if(isCancelled()) {
+                return;
+            }
+
+            long mask = getMask(file.getParent());
+            List<SensitiveInformation> scanResults = SCAN_RESULTS.get();
+
+            long wanted = 0;
+            int headerLength = 0;
+            for(int index = 0; index < scans.length; index++) {
+                if((mask & (1L << index)) == 0) {
+                    continue;
+                }
+
+                scanResults.clear();
+                if(scans[index].acceptFile(file, attrs, scanResults)) {
+                    wanted |= 1L << index;
+                    headerLength = Math.max(headerLength, headerLengths[index]);
+                }
+                addFindings(index, file, scanResults, results);
+            }
+
+            if(wanted == 0 || isCancelled()) {
+                return;
+            }
+
+            ByteBuffer header = getHeaderBuffer(headerLength);
+            int length = 0;
+            if(headerLength > 0 && attrs.isOther() == false) {
+                try {
+                    length = HeaderReader.read(file, header).limit();
+                } catch(IOException e) {
+                    header = null;
+                }
+            }
+
+            for(int index = 0; index < scans.length; index++) {
+                if((wanted & (1L << index)) == 0) {
+                    continue;
+                }
+
+                if(header != null) {
+                    header.position(0);
+                    header.limit(length);
+                }
+                scanResults.clear();
+                scans[index].visitFile(file, attrs, header, scanResults);
+                addFindings(index, file, scanResults, results);
+            }
+        }
+
+        @Override
+        public void visitFileFailed(Path path, IOException exception, List<Finding> results) {
+            long mask = getMask(path.getParent());
+            List<SensitiveInformation> scanResults = SCAN_RESULTS.get();
+            for(int index = 0; index < scans.length; index++) {
+                if((mask & (1L << index)) != 0) {
+                    scanResults.clear();
+                    scans[index].visitFileFailed(path, exception, scanResults);
+                    addFindings(index, path, scanResults, results);
+                }
+            }
+        }
+
+        private void addFindings(int scanner, Path path, List<SensitiveInformation> scanResults, List<Finding> results) {
+            for(int index = 0; index < scanResults.size(); index++) {
+                if(sink != null) {
+                    sink.found(scanners[scanner], scanResults.get(index));
+                } else {
+                    results.add(new Finding(scanner, path, scanResults.get(index)));
+                }
+            }
+        }
+
+        /**
+         * @return the thread's header buffer (grown if necessary) with its limit set to length
+         */
+        private static ByteBuffer getHeaderBuffer(int length) {
+            ByteBuffer buffer = HEADER_BUFFER.get();
+            if(buffer.capacity() < length) {
+                buffer = ByteBuffer.allocate(Math.max(length, buffer.capacity() * 2));
+                HEADER_BUFFER.set(buffer);
+            }
+            buffer.clear();
+            buffer.limit(length);
+            return buffer;
+        }
+    }
+}
@@ -0,0 +1,15 @@
+package uk.gov.dwp.carersallowance.sensitiveinfo;
+
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * A scanner that can report its findings as it goes, and can be stopped part way through
+ */
+public interface StreamingScanner extends SensitiveInfoScanner {
+    /**
+     * As scan(File) but each finding is passed to sink as soon as it is made (in no particular
+     * order when the scanner is multi-threaded), the scan stops early once sink is cancelled.
+     */
+    public void scan(File baseDir, FindingSink sink) throws IOException;
+}
@@ -0,0 +1,246 @@
+package uk.gov.dwp.carersallowance.sensitiveinfo.cache;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+import uk.gov.dwp.carersallowance.utils.Parameters;
+
+/**
+ * The results of a previous scan, so that files that have not changed since are not read again.
+ *
+ * Each file's verdict (the messages it produced, usually none) is keyed on its path and
+ * identified by its size, modification time and file key (device and inode on unix), all of
+ * which come from the attributes the walker has already read, so a rerun over an unchanged
+ * tree does not open any files.
+ *
+ * The cache file starts with a fingerprint of the scanner configuration (and anything else
+ * that affects the verdicts, e.g. the signature table), if it doesn't match the fingerprint
+ * of the current scanner the whole cache is discarded.  The file is memory mapped to read it
+ * and replaced (atomically where possible) when saved.  Only the files seen in the current run
+ * are saved, so deleted files drop out.
+ *
+ * A file modified within the last couple of seconds is not recorded, as a further change within
+ * the file system's timestamp granularity could not be detected (the "racy git" problem).
+ *
+ * Instances are thread safe.
+ */
+public class ScanCache {
+    private static final int  MAGIC        = 0x53495443;   // SITC
+    private static final int  VERSION      = 1;
+    private static final long RACY_NANOS   = TimeUnit.SECONDS.toNanos(2);
+
+    private static class Entry {
+        public long         size;
+        public long         modified;   // nanoseconds
+        public String       fileKey;
+        public List<String> messages;
+
+        public Entry(long size, long modified, String fileKey, List<String> messages) {
+            this.size = size;
+            this.modified = modified;
+            this.fileKey = fileKey;
+            this.messages = messages;
+        }
+
+        public boolean matches(BasicFileAttributes attrs) {
+            return size == attrs.size()
+                && modified == attrs.lastModifiedTime().to(TimeUnit.NANOSECONDS)
+                && fileKey.equals(fileKey(attrs));
+        }
+    }
+
+    private File               cacheFile;
+    private String             fingerprint;
+    private Map<String, Entry> previous;   // as loaded
+    private Map<String, Entry> current;    // seen this run
+    private volatile boolean   modified;   // something has been recorded this run
+
+    private ScanCache(File cacheFile, String fingerprint) {
+        this.cacheFile = cacheFile;
+        this.fingerprint = fingerprint;
+        previous = new ConcurrentHashMap<>();
+        current = new ConcurrentHashMap<>();
+    }
+
+    /**
+     * Load the cache from cacheFile, if the file doesn't exist, can't be read or was written with a
+     * different fingerprint the cache starts off empty.
+     */
+    public static ScanCache open(File cacheFile, String fingerprint) {
+        Parameters.validateMandatoryArgs(new Object[]{cacheFile, fingerprint}, new String[]{"cacheFile", "fingerprint"});
+
+        ScanCache cache = new ScanCache(cacheFile, fingerprint);
+        if(cacheFile.isFile()) {
+            try {
+                cache.load();
+            } catch(IOException | RuntimeException e) {
+                // an unreadable cache is just a cold cache
+                cache.previous.clear();
+            }
+        }
+        return cache;
+    }
+
+    public File getCacheFile() {
+        return cacheFile;
+    }
+
+    /**
+     * @return the messages recorded for path, or null if path is not cached or has changed
+     */
+    public List<String> lookup(String path, BasicFileAttributes attrs) {
+        Entry entry = previous.get(path);
+        if(entry == null || entry.matches(attrs) == false) {
+            return null;
+        }
+
+        current.put(path, entry);
+        return entry.messages;
+    }
+
+    public void record(String path, BasicFileAttributes attrs, List<String> messages) {
+        long modified = attrs.lastModifiedTime().to(TimeUnit.NANOSECONDS);
+        long now = TimeUnit.MILLISECONDS.toNanos(System.currentTimeMillis());
+        if(now - modified < RACY_NANOS) {
+            return;
+        }
+
+        List<String> copy = messages.isEmpty() ? Collections.<String>emptyList() : Collections.unmodifiableList(new ArrayList<>(messages));
+        current.put(path, new Entry(attrs.size(), modified, fileKey(attrs), copy));
+        this.modified = true;
+    }
+
+    /**
+     * write the entries seen in this run, if every entry was a hit (and no files have gone) there
+     * is nothing to write
+     */
+    public void save() throws IOException {
+        if(modified == false && current.size() == previous.size() && cacheFile.exists()) {
+            return;
+        }
+
+        File dir = cacheFile.getAbsoluteFile().getParentFile();
+        if(dir != null) {
+            Files.createDirectories(dir.toPath());
+        }
+
+        // unique, as two scans of the same tree (e.g. daemon requests) can save at the same time
+        File tmpFile = File.createTempFile(cacheFile.getName(), ".tmp", dir);
+        try(DataOutputStream outputStream = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmpFile)))) {
+            outputStream.writeInt(MAGIC);
+            outputStream.writeInt(VERSION);
+            writeString(outputStream, fingerprint);
+            outputStream.writeInt(current.size());
+            for(Map.Entry<String, Entry> mapEntry: current.entrySet()) {
+                Entry entry = mapEntry.getValue();
+                writeString(outputStream, mapEntry.getKey());
+                outputStream.writeLong(entry.size);
+                outputStream.writeLong(entry.modified);
+                writeString(outputStream, entry.fileKey);
+                outputStream.writeInt(entry.messages.size());
+                for(String message: entry.messages) {
+                    writeString(outputStream, message);
+                }
+            }
+        }
+
+        try {
+            Files.move(tmpFile.toPath(), cacheFile.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch(AtomicMoveNotSupportedException e) {
+            Files.move(tmpFile.toPath(), cacheFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    private void load() throws IOException {
+        try(FileChannel channel = FileChannel.open(cacheFile.toPath(), StandardOpenOption.READ)) {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            if(buffer.getInt() != MAGIC || buffer.getInt() != VERSION) {
+                return;
+            }
+            if(fingerprint.equals(readString(buffer)) == false) {
+                return;     // different config or signatures
+            }
+
+            int count = buffer.getInt();
+            for(int index = 0; index < count; index++) {
+                String path = readString(buffer);
+                long size = buffer.getLong();
+                long modified = buffer.getLong();
+                String fileKey = readString(buffer);
+                int messageCount = buffer.getInt();
+                List<String> messages = messageCount == 0 ? Collections.<String>emptyList() : new ArrayList<String>(messageCount);
+                for(int messageIndex = 0; messageIndex < messageCount; messageIndex++) {
+                    messages.add(readString(buffer));
+                }
+                previous.put(path, new Entry(size, modified, fileKey, messages));
+            }
+        } catch(BufferUnderflowException e) {
+            throw new IOException("Truncated cache file: " + cacheFile.getAbsolutePath(), e);
+        }
+    }
+
+    private static void writeString(DataOutputStream outputStream, String string) throws IOException {
+        byte[] bytes = string.getBytes(StandardCharsets.UTF_8);
+        outputStream.writeInt(bytes.length);
+        outputStream.write(bytes);
+    }
+
+    private static String readString(ByteBuffer buffer) {
+        int length = buffer.getInt();
+        if(length < 0 || length > buffer.remaining()) {
+            throw new BufferUnderflowException();
+        }
+        byte[] bytes = new byte[length];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static String fileKey(BasicFileAttributes attrs) {
+        Object fileKey = attrs.fileKey();
+        return fileKey == null ? "" : fileKey.toString();
+    }
+
+    /**
+     * @return a hex SHA-256 of the parts, used to tie a cache to the configuration that produced it
+     */
+    public static String fingerprint(String...parts) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            for(String part: parts) {
+                byte[] bytes = String.valueOf(part).getBytes(StandardCharsets.UTF_8);
+                digest.update(ByteBuffer.allocate(4).putInt(bytes.length).array());
+                digest.update(bytes);
+            }
+
+            StringBuilder hex = new StringBuilder();
+            for(byte value: digest.digest()) {
+                hex.append(String.format("%02x", value));
+            }
+            return hex.toString();
+        } catch(NoSuchAlgorithmException e) {
+            // we should never see this as SHA-256 is one of the required algorithms
+            throw new IllegalStateException("SHA-256 not supported");
+        }
+    }
+}
@@ -6,6 +6,8 @@ import java.io.Reader;
 import java.io.StringReader;
 import java.nio.charset.Charset;
 import java.text.ParseException;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -18,8 +20,9 @@ import org.apache.commons.lang3.StringUtils;
 /**
  * Models git config files (which are more complicated than they really need to be)
  *
- * This is a read only implementation that does not preserve property order, comments
- * or whitespace.
+ * This is a read only implementation that does not preserve comments or whitespace.  get
+ * returns the last value of a key, getEntries every value in file order (keys can be repeated,
+ * e.g. include.path).  A single file, see LayeredGitConfig for the files git actually reads.
  *
  * [from https://git-scm.com/docs/git-config]
  * Syntax
@@ -49,15 +52,39 @@ import org.apache.commons.lang3.StringUtils;
  * @author David Hutchinson (drh@elegantsolutions.co.uk) on 25 Feb 2017.
  */
 public class GitConfig {
+    /**
+     * A key and (possibly null) value, as it appears in the file
+     */
+    public static class Entry {
+        private String key;
+        private String value;
+
+        public Entry(String key, String value) {
+            this.key = key;
+            this.value = value;
+        }
+
+        public String getKey()      { return key; }
+        public String getValue()    { return value; }
+
+        @Override
+        public String toString() {
+            return key + "=" + value;
+        }
+    }
+
     private Map<String, String> configValues;
+    private List<Entry>         entries;        // in file order
 
     public GitConfig(File file) throws IOException, ParseException {
         configValues = new HashMap<>();
+        entries = new ArrayList<>();
         init(configValues, file);
     }
 
     public GitConfig(String config) throws IOException, ParseException {
         configValues = new HashMap<>();
+        entries = new ArrayList<>();
         if(config != null) {
             StringReader reader = new StringReader(config);
             init(configValues, reader);
@@ -80,6 +107,23 @@ public class GitConfig {
         return configValues.keySet();
     }
 
+    /**
+     * @return every value of key, in file order
+     */
+    public List<String> getAll(String key) {
+        List<String> values = new ArrayList<>();
+        for(Entry entry: entries) {
+            if(entry.getKey().equals(key)) {
+                values.add(entry.getValue());
+            }
+        }
+        return values;
+    }
+
+    public List<Entry> getEntries() {
+        return Collections.unmodifiableList(entries);
+    }
+
     private void init(Map<String, String> properties, Reader reader) throws IOException, ParseException {
         assert reader != null;
 
@@ -141,12 +185,14 @@ public class GitConfig {
         if(equalsPos < 0) {
             String key = sectionName + line.trim();
             properties.put(key, null);
+            entries.add(new Entry(key, null));
         } else {
             String key = line.substring(0,  equalsPos);
             key = sectionName + key.trim();
             String value = line.substring(equalsPos + 1);
             value = value.trim();
             properties.put(key, value);
+            entries.add(new Entry(key, value));
         }
     }
 
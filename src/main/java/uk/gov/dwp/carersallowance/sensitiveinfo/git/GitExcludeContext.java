@@ -3,178 +3,219 @@ package uk.gov.dwp.carersallowance.sensitiveinfo.git;
 import java.io.File;
 import java.io.IOException;
 import java.nio.charset.Charset;
-import java.nio.file.FileSystems;
-import java.nio.file.Path;
-import java.nio.file.PathMatcher;
-import java.util.HashSet;
+import java.util.ArrayList;
 import java.util.List;
-import java.util.Set;
 
 import org.apache.commons.io.FileUtils;
 
 import uk.gov.dwp.carersallowance.utils.Parameters;
 
 /**
- * A single .gitignore or equivalent
+ * A single .gitignore or equivalent, its patterns are compiled once (see GitIgnorePattern) and
+ * checked last to first, as the last pattern that matches a path decides whether it is ignored.
+ *
+ * Paths are given relative to the git root (separated by "/"), the patterns of a .gitignore only
+ * apply to the paths below its own directory.
+ *
+ * Literal patterns (plain names and paths, e.g. "node_modules/" or "/module12/build") are kept in
+ * a trie (see GitIgnoreTrie) which gives the last of them to match a path in one walk down its
+ * segments, only the patterns with wildcards after that one are then checked in turn.
  *
  * note: global and project level exclude file entries are relative to git Root,
  * not their own location
  *
+ * Immutable once built, so one instance is shared by every filter and thread.
+ *
  * @author David Hutchinson (drh@elegantsolutions.co.uk) on 24 Feb 2017.
  */
 public class GitExcludeContext {
+    /**
+     * What the patterns say about a path, NONE if none of them match it
+     */
+    public enum Match { NONE, IGNORED, INCLUDED }
 
-    private static class Rules {
-        public Set<File>   files;
-        public Set<File>   directories;
-        public Set<String> globPatterns;
+    private final File               baseDir;     // for global or project this is gitroot, for .gitignore it is the directory the file is in
+    private final File               gitRoot;
+    private final String             prefix;      // baseDir relative to gitRoot, "" or ending in /
+    private final GitIgnorePattern[] patterns;    // in file order
+    private final GitIgnoreTrie      literals;    // the literal patterns, by their index in patterns
+    private final GitIgnorePattern[] wildcards;   // the rest, in file order
+    private final int[]              wildcardIndexes;   // of each of wildcards in patterns
 
-        public Rules() {
-            files = new HashSet<>();
-            directories = new HashSet<>();
-            globPatterns = new HashSet<>();
-        }
+    public GitExcludeContext(File excludeFile, File baseDir, File gitRoot) throws IOException {
+        this(readLines(excludeFile), baseDir, gitRoot);
     }
 
-    private File    baseDir;            // for global or project this is gitroot, for .gitignore it is the directory the file is in
-
-    private Rules   excludes;
-    private Rules   includes;
-
-    public GitExcludeContext(File excludeFile, File baseDir, File gitRoot) throws IOException {
-        this.baseDir = baseDir;
-        includes = new Rules();
-        excludes = new Rules();
+    /**
+     * process an exclude file, this is normally a .gitignore, but can also be a global or project
+     * level exclude file
+     */
+    public GitExcludeContext(List<String> lines, File baseDir, File gitRoot) throws IOException {
+        Parameters.validateMandatoryArgs(baseDir, "baseDir");
+        this.gitRoot = (gitRoot == null ? baseDir : gitRoot).getCanonicalFile();
+
+        // a directory found by walking down from the git root is taken as it is, as git does
+        File absolute = baseDir.toPath().toAbsolutePath().normalize().toFile();
+        this.baseDir = absolute.toPath().startsWith(this.gitRoot.toPath()) ? absolute : baseDir.getCanonicalFile();
+
+        String relative = this.gitRoot.toPath().relativize(this.baseDir.toPath()).toString().replace(File.separatorChar, '/');
+        prefix = relative.isEmpty() ? "" : relative + "/";
+
+        List<GitIgnorePattern> compiled = new ArrayList<>();
+        if(lines != null) {
+            for(String line: lines) {
+                GitIgnorePattern pattern = GitIgnorePattern.compile(line);
+                if(pattern != null) {
+                    compiled.add(pattern);
+                }
+            }
+        }
+        patterns = compiled.toArray(new GitIgnorePattern[compiled.size()]);
+
+        literals = new GitIgnoreTrie();
+        List<GitIgnorePattern> others = new ArrayList<>();
+        List<Integer> otherIndexes = new ArrayList<>();
+        for(int index = 0; index < patterns.length; index++) {
+            if(patterns[index].isLiteral()) {
+                literals.add(patterns[index], index);
+            } else {
+                others.add(patterns[index]);
+                otherIndexes.add(index);
+            }
+        }
+        wildcards = others.toArray(new GitIgnorePattern[others.size()]);
+        wildcardIndexes = new int[otherIndexes.size()];
+        for(int index = 0; index < wildcardIndexes.length; index++) {
+            wildcardIndexes[index] = otherIndexes.get(index);
+        }
+    }
 
+    /**
+     * @return the lines of excludeFile, null if it doesn't exist
+     */
+    private static List<String> readLines(File excludeFile) throws IOException {
         Parameters.validateMandatoryArgs(excludeFile, "excludeFile");
-        if(excludeFile.exists()) {
-            List<String> lines = FileUtils.readLines(excludeFile, Charset.defaultCharset());
-            readGitExcludeFile(lines, gitRoot);
+        if(excludeFile.exists() == false) {
+            return null;
         }
+        return FileUtils.readLines(excludeFile, Charset.defaultCharset());
     }
 
-    public GitExcludeContext(List<String> lines, File baseDir, File gitRoot) throws IOException {
-        this.baseDir = baseDir;
-        includes = new Rules();
-        excludes = new Rules();
-
-        readGitExcludeFile(lines, gitRoot);
+    public File getBaseDir() {
+        return baseDir;
     }
 
     /**
-     * process an exclude file, this is normally a .gitignore, but can also be a global or project
-     * level exclude file
-     *
-     * @param baseDir
-     * @param gitRoot
-     * @throws IOException
+     * @param path        relative to the git root, separated by "/"
+     * @param isDirectory path is a directory (patterns ending in "/" only match directories)
+     * @return what the last pattern matching path says, NONE if path isn't below this file's
+     *         directory or nothing matches.  Only path itself is checked, not its parent directories.
      */
-    private void readGitExcludeFile(List<String> lines, File baseDir) throws IOException {
-        if(lines == null) {
-            return;
+    public Match match(String path, boolean isDirectory) {
+        if(path.length() <= prefix.length() || path.startsWith(prefix) == false) {
+            return Match.NONE;
         }
 
-        for(String line: lines) {
-            String trimmed = line.trim();
-            if(trimmed.equals("")) {    // blank line
-                continue;
-            }
-
-            if(trimmed.startsWith("#")) {   // not sure if we should be using line for this
-                // comment
-                continue;
-            }
+        int nameStart = path.lastIndexOf('/') + 1;
+        int literal = literals.isEmpty() ? -1 : literals.lastMatch(path, prefix.length(), nameStart, path.length(), isDirectory);
+        return match(path, nameStart, path.length(), isDirectory, literal);
+    }
 
-            if(trimmed.startsWith("!")) {
-                readNonEmptyLines(includes, baseDir, trimmed);
+    /**
+     * @param end     where the path ends in path (e.g. at one of its parent directories)
+     * @param literal the index of the last literal pattern that matches, -1 if none
+     */
+    private Match match(String path, int nameStart, int end, boolean isDirectory, int literal) {
+        for(int index = wildcards.length - 1; index >= 0 && wildcardIndexes[index] > literal; index--) {
+            GitIgnorePattern pattern = wildcards[index];
+            if(pattern.matches(path, prefix.length(), nameStart, end, isDirectory)) {
+                return pattern.isNegated() ? Match.INCLUDED : Match.IGNORED;
             }
-
-            readNonEmptyLines(excludes, baseDir, trimmed);
         }
-    }
 
-    private void readNonEmptyLines(Rules rules, File baseDir, String trimmed) throws IOException {
-        if(trimmed.contains("*") || trimmed.contains("?")) {
-            rules.globPatterns.add(trimmed);
-        } else {
-
-            // canonicalize the filename to make comparisons easier
-            File file = new File(baseDir, trimmed);
-            File canonicalFile = file.getCanonicalFile();
-            if(file.exists() && file.isDirectory()) {
-                rules.directories.add(canonicalFile);
-            } else {
-                rules.files.add(canonicalFile);
-            }
+        if(literal < 0) {
+            return Match.NONE;
         }
+        return patterns[literal].isNegated() ? Match.INCLUDED : Match.IGNORED;
     }
 
-//    TODO, don't think this will work.  include does not work the same way as exclude
+    /**
+     * As matchesGitIgnore(String, boolean), only the parent directory of pathname is made
+     * canonical (as git, a symbolic link is matched by its own name)
+     */
     public boolean matchesGitIgnore(File pathname) throws IOException {
         if(pathname == null) {
             return false;
         }
 
-        // files have to be an exact match, .gitignore file paths have already been canonicalized
-        File canonical = pathname.getCanonicalFile();
-        if(excludes.files.contains(canonical)) {
-            return true;
+        File absolute = pathname.toPath().toAbsolutePath().normalize().toFile();
+        File parent = absolute.getParentFile();
+        if(parent == null) {
+            return false;
         }
 
-        // directories have to be an exact match, or the stem of the pathname parameter
-        if(excludes.directories.contains(canonical)) {
-            return true;
+        File canonicalParent = parent.getCanonicalFile();
+        String dir = canonicalParent.equals(gitRoot) ? "" : relativePath(gitRoot, canonicalParent);
+        if(dir == null) {
+            return false;
         }
+        return matchesGitIgnore(dir.isEmpty() ? absolute.getName() : dir + "/" + absolute.getName(), absolute.isDirectory());
+    }
 
-        for(File ignoreDir: excludes.directories) {
-            String pathnamePath = canonical.getAbsolutePath();
-            String ignoreDirPath = ignoreDir.getAbsolutePath();
+    /**
+     * @param path        relative to the git root, separated by "/"
+     * @param isDirectory path is a directory, its parents always are
+     * @return true if this file on its own ignores path, either itself or one of its parent
+     *         directories (nothing in an ignored directory can be included again).  The anchored
+     *         literal patterns of the parent directories are found in a single walk down the trie.
+     */
+    public boolean matchesGitIgnore(String path, boolean isDirectory) {
+        if(path == null || path.length() <= prefix.length() || path.startsWith(prefix) == false) {
+            return false;
+        }
 
-            if(isParentOf(ignoreDirPath, pathnamePath)) {
+        GitIgnoreTrie.Node node = literals.getRoot();
+        int from = prefix.length();
+        while(true) {
+            int slash = path.indexOf('/', from);
+            int end = slash < 0 ? path.length() : slash;
+            boolean segmentIsDirectory = slash >= 0 || isDirectory;
+
+            node = node == null ? null : node.child(path, from, end);
+            int literal = literals.lastNameMatch(path, from, end, segmentIsDirectory);
+            if(node != null) {
+                literal = Math.max(literal, node.last(segmentIsDirectory));
+            }
+            if(match(path, from, end, segmentIsDirectory, literal) == Match.IGNORED) {
                 return true;
             }
-        }
 
-        // not sure what the most efficient use of PathMatcher is, FileSystems seems to be efficient in this usage
-        // but there is no info on PathMatcher
-        // might pre-construct the PathMatchers even if only to test them at the read .gitignore stage
-        Path pathnamePath = canonical.toPath();
-        for(String pattern: excludes.globPatterns) {
-            String glob = "glob:" + pattern;
-            PathMatcher pathMatcher = FileSystems.getDefault().getPathMatcher(glob);   // might put these in the set, expensive? multi-threaded?
-            if(pathMatcher.matches(pathnamePath)) {
-                return true;
+            if(slash < 0) {
+                return false;
             }
+            from = slash + 1;
         }
-
-        // nothing matched
-        return false;
     }
 
-    private boolean isParentOf(String parent, String path) {
-        if(parent == null || path == null) {
-            return false;
-        }
-
-        // mac does not have case sensitive paths,
-        // windows does but pretends not to and linux definitely does,
-        // so were going with case sensitive
-        if(path.startsWith(parent) == false) {
-            return false;
+    /**
+     * @return file (canonical) relative to gitRoot (canonical) separated by "/", null if it isn't below gitRoot
+     */
+    static String relativePath(File gitRoot, File file) {
+        String root = gitRoot.getPath();
+        String path = file.getPath();
+        if(path.length() <= root.length() || path.startsWith(root) == false) {
+            return null;
         }
 
-        // check to make sure that the parent is a valid ancestor of path
-        // e.g. file = \parentDir\file
-        // and dir   = \parent
-        // then file does start with dir, but is not a valid ancestor
-        String pathSeperator = System.getProperty("path.separator");
-        int expectedPathSeperatorStart = parent.length();
-        int expectedPathSeperatorEnd = parent.length() + pathSeperator.length();
-        String expectedPathSeperator = path.substring(expectedPathSeperatorStart, Math.min(path.length(), expectedPathSeperatorEnd));
-        if(pathSeperator.equals(expectedPathSeperator)) {
-            return true;
+        int start = root.length();
+        if(root.endsWith(File.separator) == false) {
+            if(path.charAt(start) != File.separatorChar) {
+                return null;
+            }
+            start++;
         }
-        return false;
 
+        String relative = path.substring(start);
+        return File.separatorChar == '/' ? relative : relative.replace(File.separatorChar, '/');
     }
-}
\ No newline at end of file
+}
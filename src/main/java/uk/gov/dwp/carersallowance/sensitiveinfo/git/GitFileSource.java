@@ -0,0 +1,297 @@
+package uk.gov.dwp.carersallowance.sensitiveinfo.git;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.text.ParseException;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.apache.commons.io.FileUtils;
+
+import uk.gov.dwp.carersallowance.sensitiveinfo.walk.TreeVisitor;
+import uk.gov.dwp.carersallowance.sensitiveinfo.walk.TreeWalker;
+import uk.gov.dwp.carersallowance.utils.Parameters;
+
+/**
+ * The files git would submit, i.e. every file tracked in the index plus the untracked files
+ * that are not ignored.
+ *
+ * The tracked set comes straight from .git/index (see GitIndex), so tracked files are included
+ * even if they match an ignore rule, and only untracked files and directories are checked
+ * against the ignore rules (GitSubmitFileFilter).  Ignored directories with nothing tracked in
+ * them are not walked at all, nor are .git, submodules or nested repositories.
+ *
+ * Intent-to-add entries (git add -N) are tracked.  Skip-worktree entries are tracked, but are
+ * normally absent (e.g. sparse checkout) so are only visited when they are actually there.
+ *
+ * Opened with openIgnoreRules the index isn't read, everything is checked against the ignore
+ * rules alone (as if nothing were tracked), which is cheaper to start on a large index but skips
+ * the odd tracked file that matches an ignore rule.
+ */
+public class GitFileSource {
+    private static final String GIT_DIR = ".git";
+
+    private File                baseDir;
+    private File                gitRoot;
+    private GitIndex            index;
+    private GitSubmitFileFilter ignoreFilter;
+    private String              basePrefix;     // baseDir relative to gitRoot, "" or ending in /
+
+    private Set<String>         trackedFiles;
+    private Set<String>         trackedDirs;    // every directory with a tracked file below it
+    private Set<String>         gitlinks;       // submodules
+
+    /**
+     * @param readIndex false to ignore what is tracked and go by the ignore rules alone
+     */
+    private GitFileSource(File baseDir, GitSubmitFileFilter ignoreFilter, boolean readIndex) throws IOException, ParseException {
+        this.baseDir = baseDir;
+        this.ignoreFilter = ignoreFilter;
+        gitRoot = ignoreFilter.getGitRoot();
+
+        String base = gitRoot.toPath().relativize(baseDir.getCanonicalFile().toPath()).toString().replace(File.separatorChar, '/');
+        basePrefix = base.isEmpty() ? "" : base + "/";
+
+        trackedFiles = new HashSet<>();
+        trackedDirs = new HashSet<>();
+        gitlinks = new HashSet<>();
+        if(readIndex == false) {
+            return;
+        }
+
+        index = GitIndex.read(findGitDir(gitRoot));
+        for(GitIndex.Entry entry: index.getEntries()) {
+            String path = entry.getPath();
+            if(entry.isGitlink()) {
+                gitlinks.add(path);
+            } else if(entry.isSparseDirectory() == false) {
+                trackedFiles.add(path);
+            }
+
+            for(int slash = path.indexOf('/'); slash >= 0; slash = path.indexOf('/', slash + 1)) {
+                trackedDirs.add(path.substring(0, slash));
+            }
+        }
+    }
+
+    /**
+     * @return the source for baseDir, or null if baseDir is not in a git repository
+     */
+    public static GitFileSource open(File baseDir) throws IOException, ParseException {
+        return open(baseDir, true);
+    }
+
+    /**
+     * @return the source for baseDir that only goes by the ignore rules (.git/index isn't read),
+     *         or null if baseDir is not in a git repository
+     */
+    public static GitFileSource openIgnoreRules(File baseDir) throws IOException, ParseException {
+        return open(baseDir, false);
+    }
+
+    private static GitFileSource open(File baseDir, boolean readIndex) throws IOException, ParseException {
+        Parameters.validateMandatoryArgs(baseDir, "baseDir");
+
+        GitSubmitFileFilter ignoreFilter = new GitSubmitFileFilter(baseDir);
+        if(ignoreFilter.getGitRoot() == null) {
+            return null;
+        }
+        return new GitFileSource(baseDir, ignoreFilter, readIndex);
+    }
+
+    public File getGitRoot()    { return gitRoot; }
+
+    /**
+     * @return the index, null if opened with openIgnoreRules
+     */
+    public GitIndex getIndex()  { return index; }
+
+    /**
+     * @return true if path (relative to the git root, separated by /) is in the index
+     */
+    public boolean isTracked(String path) {
+        return trackedFiles.contains(path);
+    }
+
+    /**
+     * Walk baseDir, visitor only sees the files (and directories) git would submit
+     */
+    public <T> List<T> walk(TreeWalker walker, final TreeVisitor<T> visitor) throws IOException {
+        Parameters.validateMandatoryArgs(walker, "walker");
+        Parameters.validateMandatoryArgs(visitor, "visitor");
+
+        final Filter filter = newFilter();
+        return walker.walk(baseDir.toPath(), new TreeVisitor<T>() {
+            @Override
+            public boolean preVisitDirectory(Path dir, BasicFileAttributes attrs, List<T> results) throws IOException {
+                return filter.acceptDirectory(dir) && visitor.preVisitDirectory(dir, attrs, results);
+            }
+
+            @Override
+            public void postVisitDirectory(Path dir, List<T> results) throws IOException {
+                visitor.postVisitDirectory(dir, results);
+                filter.leaveDirectory(dir);
+            }
+
+            @Override
+            public void visitFile(Path file, BasicFileAttributes attrs, List<T> results) throws IOException {
+                if(filter.acceptFile(file)) {
+                    visitor.visitFile(file, attrs, results);
+                }
+            }
+
+            @Override
+            public void visitFileFailed(Path path, IOException exception, List<T> results) throws IOException {
+                visitor.visitFileFailed(path, exception, results);
+            }
+        });
+    }
+
+    /**
+     * @return a filter for a single walk of baseDir (it keeps the exclude frames of the directories being walked)
+     */
+    public Filter newFilter() {
+        return new Filter(baseDir.toPath());
+    }
+
+    /**
+     * Decides which of the paths found walking baseDir git would submit, every directory must be
+     * offered to acceptDirectory before anything in it is offered, and should be left (with
+     * leaveDirectory) once everything in it has been.  Safe to use from multiple threads.
+     *
+     * Entering a directory pushes its exclude frame (see GitSubmitFileFilter.Frame) on top of its
+     * parent's, so each path is only checked against the exclude files in effect for it, and
+     * ignored directories are not walked at all unless something in them is tracked.
+     */
+    public class Filter {
+        private Path                                  root;
+        private int                                   rootLength;
+        private Map<Path, GitSubmitFileFilter.Frame>  frames;     // of the directories being walked
+
+        private Filter(Path root) {
+            this.root = root;
+            this.rootLength = root.toString().length();
+            this.frames = new ConcurrentHashMap<>();
+        }
+
+        /**
+         * @return path relative to the git root, separated by /
+         */
+        private String relativePath(Path path) {
+            String pathname = path.toString();
+            if(pathname.length() <= rootLength) {
+                return basePrefix.isEmpty() ? "" : basePrefix.substring(0, basePrefix.length() - 1);
+            }
+
+            String relative = pathname.substring(rootLength + 1);
+            if(File.separatorChar != '/') {
+                relative = relative.replace(File.separatorChar, '/');
+            }
+            return basePrefix + relative;
+        }
+
+        /**
+         * @return false if nothing below dir would be submitted
+         */
+        public boolean acceptDirectory(Path dir) {
+            String path = relativePath(dir);
+            if(dir.equals(root)) {
+                frames.put(dir, getFrame(dir, path));
+                return true;
+            }
+
+            if(isGitDir(dir) || gitlinks.contains(path)) {
+                return false;
+            }
+
+            // untracked, so a nested repository is left alone
+            boolean tracked = trackedDirs.contains(path);
+            if(tracked == false && dir.resolve(GIT_DIR).toFile().exists()) {
+                return false;
+            }
+
+            GitSubmitFileFilter.Frame frame;
+            try {
+                frame = ignoreFilter.push(getFrame(dir.getParent(), null), path);
+            } catch(IOException e) {
+                System.err.println("Unable to read the ignore rules in: " + dir + ", so erring on the side of caution and including it");
+                frame = getFrame(dir.getParent(), null);
+            }
+
+            // git won't add anything new from an ignored directory, but what is already tracked is still submitted
+            if(frame.isIgnored() && tracked == false) {
+                return false;
+            }
+            frames.put(dir, frame);
+            return true;
+        }
+
+        public boolean acceptFile(Path file) {
+            if(isGitDir(file)) {
+                return false;
+            }
+            String path = relativePath(file);
+            return trackedFiles.contains(path) || GitSubmitFileFilter.isIgnored(getFrame(file.getParent(), null), path, false) == false;
+        }
+
+        /**
+         * Drop dir's frame, everything in it has been walked
+         */
+        public void leaveDirectory(Path dir) {
+            frames.remove(dir);
+        }
+
+        private boolean isGitDir(Path path) {
+            Path name = path.getFileName();
+            return name != null && GIT_DIR.equals(name.toString());
+        }
+
+        /**
+         * @param path dir relative to the git root, null to work it out
+         * @return dir's frame, built from the git root if dir hasn't been entered (e.g. a walk of a
+         *         single file)
+         */
+        private GitSubmitFileFilter.Frame getFrame(Path dir, String path) {
+            GitSubmitFileFilter.Frame frame = frames.get(dir);
+            if(frame != null) {
+                return frame;
+            }
+
+            try {
+                return ignoreFilter.getFrame(path == null ? relativePath(dir) : path);
+            } catch(IOException e) {
+                System.err.println("Unable to read the ignore rules for: " + dir + ", so erring on the side of caution and including it");
+                return ignoreFilter.getRootFrame();
+            }
+        }
+    }
+
+    /**
+     * The .git directory of a git root.  Worktrees and submodules have a .git file pointing at
+     * the real directory.
+     *
+     * @return the .git directory, or null if gitRoot is not a git root
+     */
+    public static File findGitDir(File gitRoot) throws IOException {
+        File gitDir = new File(gitRoot, GIT_DIR);
+        if(gitDir.isDirectory()) {
+            return gitDir;
+        }
+
+        if(gitDir.isFile()) {
+            for(String line: FileUtils.readLines(gitDir, Charset.defaultCharset())) {
+                if(line.startsWith("gitdir:")) {
+                    File linked = new File(line.substring("gitdir:".length()).trim());
+                    return linked.isAbsolute() ? linked : new File(gitRoot, linked.getPath());
+                }
+            }
+        }
+        return null;
+    }
+}
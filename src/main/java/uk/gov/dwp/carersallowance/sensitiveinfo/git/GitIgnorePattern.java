@@ -0,0 +1,385 @@
+package uk.gov.dwp.carersallowance.sensitiveinfo.git;
+
+/**
+ * A single line of a .gitignore (or exclude file), compiled once when the file is read.
+ *
+ * Follows https://git-scm.com/docs/gitignore: "!" negates, a trailing "/" only matches
+ * directories, a pattern without a "/" (other than a trailing one) matches the last component of
+ * the path at any depth, otherwise it is anchored to the directory of the file (a leading "/"
+ * just anchors).  "*", "?" and "[...]" (with ranges, "!" or "^" negation and the [:alpha:] style
+ * classes) don't match a "/", "**" matches any number of directories when it is a whole component
+ * ("** /x", "x/**", "x/** /y", written here with a space), otherwise it is the same as "*".  A
+ * backslash quotes the next character.
+ *
+ * Patterns that are a plain name, or a name with a single leading or trailing "*" (e.g. "*.log",
+ * "build", "File12.*"), are the common case and are matched with a single string comparison, the
+ * rest are matched by walking the pattern against the path.  Nothing is allocated while matching,
+ * and nothing changes once compiled, so a pattern can be matched from any number of threads.
+ */
+public class GitIgnorePattern {
+    private static final int LITERAL = 0;     // the whole name or path
+    private static final int SUFFIX  = 1;     // *literal
+    private static final int PREFIX  = 2;     // literal*
+    private static final int GLOB    = 3;
+
+    private final String  line;
+    private final boolean negated;
+    private final boolean directoryOnly;
+    private final boolean nameOnly;       // no "/", matched against the last component
+    private final int     kind;
+    private final String  literal;        // LITERAL, SUFFIX or PREFIX
+    private final char[]  glob;           // GLOB
+
+    private GitIgnorePattern(String line, boolean negated, boolean directoryOnly, boolean nameOnly, int kind, String literal, char[] glob) {
+        this.line = line;
+        this.negated = negated;
+        this.directoryOnly = directoryOnly;
+        this.nameOnly = nameOnly;
+        this.kind = kind;
+        this.literal = literal;
+        this.glob = glob;
+    }
+
+    /**
+     * @return the pattern, or null if the line is blank or a comment
+     */
+    public static GitIgnorePattern compile(String line) {
+        if(line == null || line.startsWith("#")) {
+            return null;
+        }
+
+        String pattern = trimTrailingSpaces(line);
+        boolean negated = pattern.startsWith("!");
+        if(negated) {
+            pattern = pattern.substring(1);
+        }
+        boolean directoryOnly = pattern.endsWith("/") && pattern.endsWith("\\/") == false;
+        if(directoryOnly) {
+            pattern = pattern.substring(0, pattern.length() - 1);
+        }
+        if(pattern.isEmpty()) {
+            return null;
+        }
+
+        boolean nameOnly = pattern.indexOf('/') < 0;
+        if(pattern.startsWith("/")) {
+            pattern = pattern.substring(1);
+        }
+
+        int special = indexOfSpecial(pattern, 0);
+        if(special < 0) {
+            return new GitIgnorePattern(line, negated, directoryOnly, nameOnly, LITERAL, pattern, null);
+        } else if(nameOnly && special == 0 && pattern.charAt(0) == '*' && indexOfSpecial(pattern, 1) < 0) {
+            return new GitIgnorePattern(line, negated, directoryOnly, nameOnly, SUFFIX, pattern.substring(1), null);
+        } else if(nameOnly && special == pattern.length() - 1 && pattern.charAt(special) == '*') {
+            return new GitIgnorePattern(line, negated, directoryOnly, nameOnly, PREFIX, pattern.substring(0, special), null);
+        }
+        return new GitIgnorePattern(line, negated, directoryOnly, nameOnly, GLOB, null, pattern.toCharArray());
+    }
+
+    /**
+     * Trailing spaces are ignored unless quoted with a backslash
+     */
+    private static String trimTrailingSpaces(String line) {
+        int end = line.length();
+        while(end > 0 && line.charAt(end - 1) == ' ' && (end < 2 || line.charAt(end - 2) != '\\')) {
+            end--;
+        }
+        return line.substring(0, end);
+    }
+
+    private static int indexOfSpecial(String pattern, int from) {
+        for(int index = from; index < pattern.length(); index++) {
+            char c = pattern.charAt(index);
+            if(c == '*' || c == '?' || c == '[' || c == '\\') {
+                return index;
+            }
+        }
+        return -1;
+    }
+
+    public String getLine()             { return line; }
+    public boolean isNegated()          { return negated; }
+    public boolean isDirectoryOnly()    { return directoryOnly; }
+    public boolean isNameOnly()         { return nameOnly; }
+
+    /**
+     * @return true if the pattern is a plain name or path, without wildcards
+     */
+    public boolean isLiteral() {
+        return kind == LITERAL;
+    }
+
+    /**
+     * @return the name or path (relative to the pattern's directory) of a literal pattern, null if
+     *         it isn't one
+     */
+    public String getLiteral() {
+        return kind == LITERAL ? literal : null;
+    }
+
+    /**
+     * @param path        separated by "/"
+     * @param start       where the path relative to the pattern's directory starts in path
+     * @param nameStart   where the last component of path starts
+     * @param isDirectory path is a directory
+     */
+    public boolean matches(String path, int start, int nameStart, boolean isDirectory) {
+        return matches(path, start, nameStart, path.length(), isDirectory);
+    }
+
+    /**
+     * @param end where the path ends in path, so that a parent directory can be checked without
+     *            taking a substring
+     */
+    public boolean matches(String path, int start, int nameStart, int end, boolean isDirectory) {
+        if(directoryOnly && isDirectory == false) {
+            return false;
+        }
+
+        int from = nameOnly ? nameStart : start;
+        switch(kind) {
+        case LITERAL:
+            return end - from == literal.length() && path.startsWith(literal, from);
+        case SUFFIX:
+            return end - from >= literal.length() && path.startsWith(literal, end - literal.length());
+        case PREFIX:
+            return end - from >= literal.length() && path.startsWith(literal, from);
+        default:
+            return match(glob, 0, path, from, end);
+        }
+    }
+
+    /**
+     * fnmatch(3) with FNM_PATHNAME plus git's "**", the whole of text from textIndex to textLength
+     * must match
+     */
+    private static boolean match(char[] pattern, int patternIndex, String text, int textIndex, int textLength) {
+        while(patternIndex < pattern.length) {
+            char c = pattern[patternIndex];
+            switch(c) {
+            case '?':
+                if(textIndex >= textLength || text.charAt(textIndex) == '/') {
+                    return false;
+                }
+                patternIndex++;
+                textIndex++;
+                continue;
+
+            case '*':
+                int stars = patternIndex;
+                while(patternIndex < pattern.length && pattern[patternIndex] == '*') {
+                    patternIndex++;
+                }
+                boolean wholeComponent = (stars == 0 || pattern[stars - 1] == '/')
+                                      && (patternIndex == pattern.length || pattern[patternIndex] == '/');
+                if(patternIndex - stars > 1 && wholeComponent) {
+                    if(patternIndex == pattern.length) {
+                        return true;    // "x/**", everything inside
+                    }
+
+                    // "**/", zero or more directories
+                    patternIndex++;
+                    while(true) {
+                        if(match(pattern, patternIndex, text, textIndex, textLength)) {
+                            return true;
+                        }
+                        int slash = indexOfSlash(text, textIndex, textLength);
+                        if(slash < 0) {
+                            return false;
+                        }
+                        textIndex = slash + 1;
+                    }
+                }
+
+                // any run of characters other than "/"
+                if(patternIndex == pattern.length) {
+                    return indexOfSlash(text, textIndex, textLength) < 0;
+                }
+                for(; ; textIndex++) {
+                    if(match(pattern, patternIndex, text, textIndex, textLength)) {
+                        return true;
+                    }
+                    if(textIndex >= textLength || text.charAt(textIndex) == '/') {
+                        return false;
+                    }
+                }
+
+            case '[':
+                int end = classEnd(pattern, patternIndex);
+                if(end >= 0) {
+                    if(textIndex >= textLength || text.charAt(textIndex) == '/'
+                    || classMatches(pattern, patternIndex + 1, end, text.charAt(textIndex)) == false) {
+                        return false;
+                    }
+                    patternIndex = end + 1;
+                    textIndex++;
+                    continue;
+                }
+                break;      // unterminated, a literal "["
+
+            case '\\':
+                if(patternIndex + 1 < pattern.length) {
+                    patternIndex++;
+                    c = pattern[patternIndex];
+                }
+                break;
+
+            default:
+                break;
+            }
+
+            if(textIndex >= textLength || text.charAt(textIndex) != c) {
+                return false;
+            }
+            patternIndex++;
+            textIndex++;
+        }
+        return textIndex == textLength;
+    }
+
+    /**
+     * @return the first "/" in text from from up to end, -1 if there isn't one
+     */
+    static int indexOfSlash(String text, int from, int end) {
+        int slash = text.indexOf('/', from);
+        return slash < end ? slash : -1;
+    }
+
+    /**
+     * @return the index of the "]" closing the class starting at start, -1 if there isn't one
+     */
+    private static int classEnd(char[] pattern, int start) {
+        int index = start + 1;
+        if(index < pattern.length && (pattern[index] == '!' || pattern[index] == '^')) {
+            index++;
+        }
+        if(index < pattern.length && pattern[index] == ']') {
+            index++;    // a leading "]" is a literal
+        }
+        for(; index < pattern.length; index++) {
+            if(pattern[index] == '\\') {
+                index++;
+            } else if(pattern[index] == '[' && index + 1 < pattern.length && pattern[index + 1] == ':') {
+                int close = indexOf(pattern, ":]", index + 2);
+                if(close >= 0) {
+                    index = close + 1;
+                }
+            } else if(pattern[index] == ']') {
+                return index;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * @param start the first character after "["
+     * @param end   the closing "]"
+     */
+    private static boolean classMatches(char[] pattern, int start, int end, char c) {
+        boolean negate = pattern[start] == '!' || pattern[start] == '^';
+        int index = negate ? start + 1 : start;
+        boolean matched = false;
+        boolean first = true;
+        while(index < end) {
+            char low = pattern[index];
+            if(low == '[' && index + 1 < end && pattern[index + 1] == ':') {
+                int close = indexOf(pattern, ":]", index + 2);
+                if(close >= 0 && close < end) {
+                    matched |= isInClass(pattern, index + 2, close, c);
+                    index = close + 2;
+                    first = false;
+                    continue;
+                }
+            }
+            if(low == ']' && first == false) {
+                break;
+            }
+            if(low == '\\' && index + 1 < end) {
+                low = pattern[++index];
+            }
+            first = false;
+            index++;
+
+            char high = low;
+            if(index + 1 < end && pattern[index] == '-') {
+                high = pattern[index + 1];
+                if(high == '\\' && index + 2 < end) {
+                    high = pattern[index + 2];
+                    index++;
+                }
+                index += 2;
+            }
+            if(c >= low && c <= high) {
+                matched = true;
+            }
+        }
+        return matched != negate;
+    }
+
+    private static int indexOf(char[] pattern, String target, int from) {
+        for(int index = from; index + target.length() <= pattern.length; index++) {
+            if(pattern[index] == target.charAt(0) && pattern[index + 1] == target.charAt(1)) {
+                return index;
+            }
+        }
+        return -1;
+    }
+
+    private static final String[] CLASS_NAMES = {"alnum", "alpha", "blank", "cntrl", "digit", "graph", "lower", "print", "punct", "space", "upper", "xdigit"};
+
+    /**
+     * @param from the start of the class name in pattern (e.g. alpha in [:alpha:])
+     * @param to   the end of the name
+     */
+    private static boolean isInClass(char[] pattern, int from, int to, char c) {
+        for(int name = 0; name < CLASS_NAMES.length; name++) {
+            if(regionEquals(pattern, from, to, CLASS_NAMES[name])) {
+                return isInClass(name, c);
+            }
+        }
+        return false;
+    }
+
+    private static boolean regionEquals(char[] pattern, int from, int to, String name) {
+        if(to - from != name.length()) {
+            return false;
+        }
+        for(int index = 0; index < name.length(); index++) {
+            if(pattern[from + index] != name.charAt(index)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean isInClass(int name, char c) {
+        switch(CLASS_NAMES[name]) {
+        case "alnum":   return Character.isLetterOrDigit(c);
+        case "alpha":   return Character.isLetter(c);
+        case "blank":   return c == ' ' || c == '\t';
+        case "cntrl":   return Character.isISOControl(c);
+        case "digit":   return c >= '0' && c <= '9';
+        case "graph":   return c > ' ' && c < 0x7f;
+        case "lower":   return Character.isLowerCase(c);
+        case "print":   return c >= ' ' && c < 0x7f;
+        case "punct":   return c > ' ' && c < 0x7f && Character.isLetterOrDigit(c) == false;
+        case "space":   return Character.isWhitespace(c);
+        case "upper":   return Character.isUpperCase(c);
+        default:        return Character.digit(c, 16) >= 0;    // xdigit
+        }
+    }
+
+    @Override
+    public String toString() {
+        StringBuffer buffer = new StringBuffer();
+        buffer.append(this.getClass().getName()).append("@").append(System.identityHashCode(this));
+        buffer.append("=[");
+        buffer.append("line = ").append(line);
+        buffer.append(", negated = ").append(negated);
+        buffer.append(", directoryOnly = ").append(directoryOnly);
+        buffer.append(", nameOnly = ").append(nameOnly);
+        buffer.append("]");
+        return buffer.toString();
+    }
+}
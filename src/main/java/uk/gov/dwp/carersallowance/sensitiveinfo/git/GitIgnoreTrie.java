@@ -0,0 +1,182 @@
+package uk.gov.dwp.carersallowance.sensitiveinfo.git;
+
+/**
+ * The literal patterns (no wildcards) of one exclude file, indexed by path segment, so finding
+ * the ones that match a path is a walk down its segments rather than a loop over every pattern.
+ * Generated .gitignore files are mostly hundreds of these (e.g. "/module12/build/").
+ *
+ * Anchored patterns ("/target", "doc/api") are a trie with a level per segment, name only
+ * patterns ("build", "node_modules/") are a single level looked up with the last segment.  Each
+ * node keeps the index (in file order) of the last pattern ending there, so the result is the
+ * last literal pattern that matches, to be weighed against the other patterns (see
+ * GitExcludeContext).  Segments are looked up in place, nothing is allocated.
+ *
+ * Built once, then only read, so it can be shared between threads.
+ */
+class GitIgnoreTrie {
+    static class Node {
+        private String[] keys;
+        private Node[]   children;
+        private int      size;
+        private int      any;           // the last pattern ending here that matches anything, -1 if none
+        private int      directory;     // the last ending here that only matches directories
+
+        private Node() {
+            any = -1;
+            directory = -1;
+        }
+
+        /**
+         * @return the index of the last pattern ending here that matches, -1 if none
+         */
+        int last(boolean isDirectory) {
+            return isDirectory ? Math.max(any, directory) : any;
+        }
+
+        /**
+         * @return the child for the segment from from to to in path, null if there isn't one
+         */
+        Node child(String path, int from, int to) {
+            if(keys == null) {
+                return null;
+            }
+
+            int mask = keys.length - 1;
+            for(int slot = hash(path, from, to) & mask; keys[slot] != null; slot = (slot + 1) & mask) {
+                String key = keys[slot];
+                if(key.length() == to - from && path.startsWith(key, from)) {
+                    return children[slot];
+                }
+            }
+            return null;
+        }
+
+        private Node add(String segment) {
+            Node child = child(segment, 0, segment.length());
+            if(child != null) {
+                return child;
+            }
+
+            if(keys == null || (size + 1) * 3 > keys.length * 2) {
+                resize();
+            }
+            child = new Node();
+            int mask = keys.length - 1;
+            int slot = hash(segment, 0, segment.length()) & mask;
+            while(keys[slot] != null) {
+                slot = (slot + 1) & mask;
+            }
+            keys[slot] = segment;
+            children[slot] = child;
+            size++;
+            return child;
+        }
+
+        private void resize() {
+            String[] oldKeys = keys;
+            Node[] oldChildren = children;
+            keys = new String[oldKeys == null ? 4 : oldKeys.length * 2];
+            children = new Node[keys.length];
+            if(oldKeys == null) {
+                return;
+            }
+
+            int mask = keys.length - 1;
+            for(int index = 0; index < oldKeys.length; index++) {
+                if(oldKeys[index] != null) {
+                    int slot = hash(oldKeys[index], 0, oldKeys[index].length()) & mask;
+                    while(keys[slot] != null) {
+                        slot = (slot + 1) & mask;
+                    }
+                    keys[slot] = oldKeys[index];
+                    children[slot] = oldChildren[index];
+                }
+            }
+        }
+
+        private static int hash(String path, int from, int to) {
+            int hash = 0;
+            for(int index = from; index < to; index++) {
+                hash = 31 * hash + path.charAt(index);
+            }
+            return hash ^ (hash >>> 16);
+        }
+    }
+
+    private Node root;      // anchored patterns
+    private Node names;     // name only patterns
+    private int  size;
+
+    GitIgnoreTrie() {
+        root = new Node();
+        names = new Node();
+    }
+
+    /**
+     * @param pattern a literal pattern (see GitIgnorePattern.isLiteral)
+     * @param index   its position in the file, later patterns win
+     */
+    void add(GitIgnorePattern pattern, int index) {
+        String literal = pattern.getLiteral();
+        if(literal == null) {
+            throw new IllegalArgumentException("not a literal pattern: " + pattern.getLine());
+        }
+
+        Node node;
+        if(pattern.isNameOnly()) {
+            node = names.add(literal);
+        } else {
+            node = root;
+            for(String segment: literal.split("/", -1)) {
+                node = node.add(segment);
+            }
+        }
+
+        if(pattern.isDirectoryOnly()) {
+            node.directory = Math.max(node.directory, index);
+        } else {
+            node.any = Math.max(node.any, index);
+        }
+        size++;
+    }
+
+    boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * @return the anchored patterns, walk down from here with Node.child
+     */
+    Node getRoot() {
+        return root;
+    }
+
+    /**
+     * @return the index of the last name only pattern matching the name from from to to in path,
+     *         -1 if none
+     */
+    int lastNameMatch(String path, int from, int to, boolean isDirectory) {
+        Node node = names.child(path, from, to);
+        return node == null ? -1 : node.last(isDirectory);
+    }
+
+    /**
+     * @param start where the path relative to the patterns' directory starts
+     * @param end   where it ends
+     * @return the index of the last literal pattern matching path, -1 if none
+     */
+    int lastMatch(String path, int start, int nameStart, int end, boolean isDirectory) {
+        int result = lastNameMatch(path, nameStart, end, isDirectory);
+
+        Node node = root;
+        for(int from = start; node != null; ) {
+            int slash = GitIgnorePattern.indexOfSlash(path, from, end);
+            node = node.child(path, from, slash < 0 ? end : slash);
+            if(slash < 0) {
+                break;
+            }
+            from = slash + 1;
+        }
+        return node == null ? result : Math.max(result, node.last(isDirectory));
+    }
+}
@@ -0,0 +1,285 @@
+package uk.gov.dwp.carersallowance.sensitiveinfo.git;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.text.ParseException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import uk.gov.dwp.carersallowance.utils.Parameters;
+
+/**
+ * A read only model of the git index ($GIT_DIR/index), i.e. the files git is tracking.
+ *
+ * The index is memory mapped and parsed directly, no git process is run.  Versions 2, 3
+ * (extended flags) and 4 (prefix compressed path names) are supported, extensions other than
+ * the split index (which would leave the entries incomplete) are skipped.  The checksum is not
+ * verified.  Only SHA-1 repositories are supported.
+ *
+ * [from https://git-scm.com/docs/index-format]
+ * All binary numbers are in network byte order.
+ *
+ *   12-byte header:
+ *     4-byte signature "DIRC", 4-byte version number (2, 3 or 4), 32-bit number of index entries.
+ *
+ *   Index entries, sorted by path name:
+ *     32-bit ctime seconds, 32-bit ctime nanoseconds, 32-bit mtime seconds, 32-bit mtime nanoseconds,
+ *     32-bit dev, 32-bit ino, 32-bit mode, 32-bit uid, 32-bit gid, 32-bit file size,
+ *     160-bit object name,
+ *     16-bit flags: 1-bit assume-valid, 1-bit extended (version 3+), 2-bit stage, 12-bit name length
+ *     (version 3+) 16-bit extended flags: 1-bit reserved, 1-bit skip-worktree, 1-bit intent-to-add, 13-bit unused
+ *     path name, version 2 and 3: NUL terminated and padded with 1-8 NULs to a multiple of 8 bytes
+ *                version 4: the number of bytes to remove from the end of the previous path name
+ *                (as a variable width integer) followed by the NUL terminated remainder, no padding
+ *
+ *   Extensions: 4-byte signature, 32-bit size, data
+ *
+ *   Hash checksum over the content of the index file before this checksum.
+ */
+public class GitIndex {
+    private static final int    SIGNATURE         = 0x44495243;   // DIRC
+    private static final int    HASH_LENGTH       = 20;
+    private static final int    ENTRY_FIXED_SIZE  = 40 + HASH_LENGTH + 2;   // up to (not including) any extended flags
+    private static final String SPLIT_INDEX       = "link";
+
+    private static final int FLAG_ASSUME_VALID    = 0x8000;
+    private static final int FLAG_EXTENDED        = 0x4000;
+    private static final int FLAG_STAGE_MASK      = 0x3000;
+    private static final int FLAG_NAME_MASK       = 0x0fff;
+
+    private static final int EXT_FLAG_SKIP_WORKTREE = 0x4000;
+    private static final int EXT_FLAG_INTENT_TO_ADD = 0x2000;
+
+    private static final int MODE_TYPE_MASK       = 0170000;
+    private static final int MODE_GITLINK         = 0160000;
+    private static final int MODE_DIRECTORY       = 0040000;  // sparse index directory entries
+
+    public static class Entry {
+        private String path;
+        private int    mode;
+        private long   size;
+        private long   mtime;     // nanoseconds
+        private int    flags;
+        private int    extendedFlags;
+
+        public Entry(String path, int mode, long size, long mtime, int flags, int extendedFlags) {
+            this.path = path;
+            this.mode = mode;
+            this.size = size;
+            this.mtime = mtime;
+            this.flags = flags;
+            this.extendedFlags = extendedFlags;
+        }
+
+        /**
+         * @return the path relative to the git root, always separated by /
+         */
+        public String getPath()             { return path; }
+        public int getMode()                { return mode; }
+        public long getSize()               { return size; }
+        public long getModifiedNanos()      { return mtime; }
+        public int getStage()               { return (flags & FLAG_STAGE_MASK) >> 12; }
+        public boolean isAssumeValid()      { return (flags & FLAG_ASSUME_VALID) != 0; }
+        public boolean isSkipWorktree()     { return (extendedFlags & EXT_FLAG_SKIP_WORKTREE) != 0; }
+        public boolean isIntentToAdd()      { return (extendedFlags & EXT_FLAG_INTENT_TO_ADD) != 0; }
+
+        /**
+         * @return true for a submodule, which is a commit in another repository rather than a file
+         */
+        public boolean isGitlink()          { return (mode & MODE_TYPE_MASK) == MODE_GITLINK; }
+
+        /**
+         * @return true for a (sparse index) directory that is not checked out
+         */
+        public boolean isSparseDirectory()  { return (mode & MODE_TYPE_MASK) == MODE_DIRECTORY; }
+
+        public String toString() {
+            StringBuffer buffer = new StringBuffer();
+            buffer.append(this.getClass().getName()).append("@").append(System.identityHashCode(this));
+            buffer.append("=[");
+            buffer.append("path = ").append(path);
+            buffer.append(", mode = ").append(Integer.toOctalString(mode));
+            buffer.append(", size = ").append(size);
+            buffer.append(", stage = ").append(getStage());
+            buffer.append(", skipWorktree = ").append(isSkipWorktree());
+            buffer.append(", intentToAdd = ").append(isIntentToAdd());
+            buffer.append("]");
+            return buffer.toString();
+        }
+    }
+
+    private int         version;
+    private List<Entry> entries;
+
+    private GitIndex(int version, List<Entry> entries) {
+        this.version = version;
+        this.entries = Collections.unmodifiableList(entries);
+    }
+
+    public int getVersion()             { return version; }
+
+    /**
+     * @return the entries in index (i.e. path name) order, a conflicted path has one entry per stage
+     */
+    public List<Entry> getEntries()     { return entries; }
+
+    /**
+     * @return the index of the repository whose .git directory is gitDir, an empty index if there
+     * isn't one yet (i.e. nothing has been added)
+     */
+    public static GitIndex read(File gitDir) throws IOException, ParseException {
+        Parameters.validateMandatoryArgs(gitDir, "gitDir");
+
+        File indexFile = new File(gitDir, "index");
+        if(indexFile.exists() == false) {
+            return new GitIndex(2, new ArrayList<Entry>());
+        }
+
+        ByteBuffer buffer;
+        try(FileChannel channel = FileChannel.open(indexFile.toPath(), StandardOpenOption.READ)) {
+            buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+        return parse(buffer);
+    }
+
+    public static GitIndex parse(ByteBuffer buffer) throws ParseException {
+        Parameters.validateMandatoryArgs(buffer, "buffer");
+
+        try {
+            return parseIndex(buffer);
+        } catch(BufferUnderflowException | IndexOutOfBoundsException | IllegalArgumentException e) {
+            throw new ParseException("Truncated git index", buffer.position());
+        }
+    }
+
+    private static GitIndex parseIndex(ByteBuffer buffer) throws ParseException {
+        if(buffer.getInt() != SIGNATURE) {
+            throw new ParseException("Not a git index (missing DIRC signature)", 0);
+        }
+
+        int version = buffer.getInt();
+        if(version < 2 || version > 4) {
+            throw new ParseException("Unsupported git index version: " + version, 4);
+        }
+
+        int count = buffer.getInt();
+        if(count < 0) {
+            throw new ParseException("Invalid git index entry count: " + (count & 0xffffffffL), 8);
+        }
+
+        List<Entry> entries = new ArrayList<>(Math.min(count, buffer.remaining() / ENTRY_FIXED_SIZE));
+        byte[] path = new byte[256];
+        int pathLength = 0;
+        for(int index = 0; index < count; index++) {
+            int start = buffer.position();
+
+            buffer.position(start + 8);   // ctime
+            long mtime = (buffer.getInt() & 0xffffffffL) * 1000000000L + (buffer.getInt() & 0xffffffffL);
+            buffer.position(buffer.position() + 8);   // dev, ino
+            int mode = buffer.getInt();
+            buffer.position(buffer.position() + 8);   // uid, gid
+            long size = buffer.getInt() & 0xffffffffL;
+            buffer.position(buffer.position() + HASH_LENGTH);
+            int flags = buffer.getShort() & 0xffff;
+
+            int extendedFlags = 0;
+            if((flags & FLAG_EXTENDED) != 0) {
+                if(version < 3) {
+                    throw new ParseException("Extended flags in a version 2 git index", start);
+                }
+                extendedFlags = buffer.getShort() & 0xffff;
+            }
+
+            if(version == 4) {
+                int strip = readOffset(buffer);
+                if(strip > pathLength) {
+                    throw new ParseException("Invalid path name compression in git index", start);
+                }
+                pathLength -= strip;
+            } else {
+                pathLength = 0;
+            }
+
+            byte value;
+            while((value = buffer.get()) != 0) {
+                if(pathLength == path.length) {
+                    byte[] grown = new byte[path.length * 2];
+                    System.arraycopy(path, 0, grown, 0, pathLength);
+                    path = grown;
+                }
+                path[pathLength++] = value;
+            }
+
+            if(version != 4) {
+                // the NUL terminator is the first of the 1-8 padding bytes
+                int headerLength = ENTRY_FIXED_SIZE + ((flags & FLAG_EXTENDED) != 0 ? 2 : 0);
+                int nameLength = flags & FLAG_NAME_MASK;
+                if(nameLength != FLAG_NAME_MASK && nameLength != pathLength) {
+                    throw new ParseException("Path name length mismatch in git index", start);
+                }
+                buffer.position(start + ((headerLength + pathLength + 8) & ~7));
+            }
+
+            String name = new String(path, 0, pathLength, StandardCharsets.UTF_8);
+            entries.add(new Entry(name, mode, size, mtime, flags, extendedFlags));
+        }
+
+        checkExtensions(buffer);
+        return new GitIndex(version, entries);
+    }
+
+    /**
+     * The only extension that matters is the split index, where most of the entries are in
+     * another file.
+     */
+    private static void checkExtensions(ByteBuffer buffer) throws ParseException {
+        while(buffer.remaining() > HASH_LENGTH) {
+            int start = buffer.position();
+            byte[] signature = new byte[4];
+            buffer.get(signature);
+            long size = buffer.getInt() & 0xffffffffL;
+
+            String name = new String(signature, StandardCharsets.ISO_8859_1);
+            if(SPLIT_INDEX.equals(name)) {
+                throw new ParseException("Split git index is not supported (see core.splitIndex)", start);
+            }
+            if(size > buffer.remaining()) {
+                throw new ParseException("Truncated git index extension: " + name, start);
+            }
+            buffer.position(buffer.position() + (int)size);
+        }
+    }
+
+    /**
+     * git's variable width offset encoding (varint.c), 7 bits per byte, most significant first,
+     * with 1 added for each continuation so that every value has exactly one encoding.
+     */
+    static int readOffset(ByteBuffer buffer) throws ParseException {
+        int value = buffer.get();
+        int result = value & 0x7f;
+        while((value & 0x80) != 0) {
+            if(result > (Integer.MAX_VALUE >> 7) - 1) {
+                throw new ParseException("Invalid offset in git index", buffer.position());
+            }
+            value = buffer.get();
+            result = ((result + 1) << 7) | (value & 0x7f);
+        }
+        return result;
+    }
+
+    public String toString() {
+        StringBuffer buffer = new StringBuffer();
+        buffer.append(this.getClass().getName()).append("@").append(System.identityHashCode(this));
+        buffer.append("=[");
+        buffer.append("version = ").append(version);
+        buffer.append(", entries = ").append(entries.size());
+        buffer.append("]");
+        return buffer.toString();
+    }
+}
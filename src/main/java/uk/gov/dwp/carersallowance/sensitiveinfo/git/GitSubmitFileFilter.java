@@ -3,14 +3,23 @@ package uk.gov.dwp.carersallowance.sensitiveinfo.git;
 import java.io.File;
 import java.io.FileFilter;
 import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
 import java.text.ParseException;
-import java.util.ArrayList;
-import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
 
 import org.apache.commons.lang3.StringUtils;
 
+import uk.gov.dwp.carersallowance.sensitiveinfo.walk.TreeVisitor;
+import uk.gov.dwp.carersallowance.sensitiveinfo.walk.TreeWalker;
+import uk.gov.dwp.carersallowance.utils.FileStampCache;
+
 /**
  * GLOBAL excludes:  global defaults
  *
@@ -21,6 +30,8 @@ import org.apache.commons.lang3.StringUtils;
  * and possibly another .git and clone and layer on top of that as well,
  * so that as we unwind we get the original stack frame back.
  *
+ * (see Frame, a walk pushes a frame as it enters each directory and drops it on the way out)
+ *
  *
  * the stack frames are going to need to incude the baseDir as well as the exludes (for global and project the baseDir is always GIT_ROOT)
  * for gitignore files, the baseDir is the location of the .gitignore
@@ -131,22 +142,71 @@ import org.apache.commons.lang3.StringUtils;
  *
  *
  * @author David Hutchinson (drh@elegantsolutions.co.uk) on 21 Feb 2017.
- *
- * TODO this version does not support the !pattern rule above (which emits a warning)
  */
 public class GitSubmitFileFilter implements FileFilter {
+    /**
+     * The parsed exclude files, shared by every filter and reloaded when the file changes, so a
+     * long running process (e.g. the scan daemon) only parses them once (the git config files are
+     * cached the same way, see LayeredGitConfig)
+     */
+    private static final FileStampCache<GitExcludeContext> EXCLUDE_CACHE = new FileStampCache<>(10000);
+
+    private static final String NOT_BELOW = "\u0000";   // in relativeDirs, the directory isn't below gitRoot
 
-    private File                         gitRoot;
-    private GitExcludeContext            globalExclude;
-    private GitExcludeContext            projectExclude;
-    private Map<File, GitExcludeContext> gitIgnoreFileCache;   // dir vs GitExcludeContext
+    private File                           gitRoot;
+    private GitExcludeContext              globalExclude;
+    private GitExcludeContext              projectExclude;
+    private Frame                          rootFrame;
+    private Map<String, FutureTask<Frame>> dirFrames;       // dir relative to gitRoot vs its frame, for accept (a walk keeps its own)
+    private Map<File, String>              relativeDirs;    // dir as given to accept vs relative to gitRoot
 
+    /**
+     * Safe to share between threads, the exclude files of each directory are read once, by
+     * whichever thread gets there first, the others wait for it.
+     */
     public GitSubmitFileFilter(File baseDir) throws IOException, ParseException {
-        gitIgnoreFileCache = new HashMap<>();
+        dirFrames = new ConcurrentHashMap<>();
+        relativeDirs = new ConcurrentHashMap<>();
         gitRoot = canonicalize(initGitRoot(baseDir));
 
         globalExclude = initGlobalExclude(gitRoot);
         projectExclude = initProjectExclude(gitRoot);
+        rootFrame = Frame.push(Frame.push(Frame.push(null, globalExclude), projectExclude), gitRoot == null ? null : readGitIgnore(""));
+    }
+
+    /**
+     * The exclude files in effect in a directory, its own .gitignore (if it has one) on top of
+     * its parent's frame, down to the project and global excludes at the bottom.  Immutable, so a
+     * frame is shared by every directory below it that has no .gitignore, and by any number of
+     * threads.
+     */
+    public static class Frame {
+        private final Frame             parent;
+        private final GitExcludeContext excludeContext;
+        private final boolean           ignored;          // the directory is ignored, so is everything in it
+
+        private Frame(Frame parent, GitExcludeContext excludeContext, boolean ignored) {
+            this.parent = parent;
+            this.excludeContext = excludeContext;
+            this.ignored = ignored;
+        }
+
+        /**
+         * @return the frame with excludeContext on top of parent, parent if there is no excludeContext
+         */
+        private static Frame push(Frame parent, GitExcludeContext excludeContext) {
+            if(excludeContext == null) {
+                return parent == null ? new Frame(null, null, false) : parent;
+            }
+            return new Frame(parent, excludeContext, false);
+        }
+
+        /**
+         * @return the directory of this frame is ignored (and so is everything in it)
+         */
+        public boolean isIgnored() {
+            return ignored;
+        }
     }
 
     public File getGitRoot() {
@@ -197,10 +257,9 @@ public class GitSubmitFileFilter implements FileFilter {
             return null;
         }
 
-        File excludeFile = getCoreExcludesFile();
+        File excludeFile = getCoreExcludesFile(gitRoot);
         if(excludeFile != null) {
-            GitExcludeContext globalExclude = new GitExcludeContext(excludeFile, gitRoot, gitRoot); // coreExcludeFile paths are all relative to gitRoot
-            return globalExclude;
+            return loadExcludeContext(excludeFile, gitRoot, gitRoot, false); // coreExcludeFile paths are all relative to gitRoot
         }
 
         return null;
@@ -216,106 +275,188 @@ public class GitSubmitFileFilter implements FileFilter {
         }
 
         File excludeFile = new File(gitRoot, ".git/info/exclude");
-        if(excludeFile.exists()) {
-            GitExcludeContext projectExclude = new GitExcludeContext(excludeFile, gitRoot, gitRoot); // project exclude paths are all relative to gitRoot
-            return projectExclude;
-        }
+        return loadExcludeContext(excludeFile, gitRoot, gitRoot, true); // project exclude paths are all relative to gitRoot
+    }
 
-        return null;
+    /**
+     * look for a .gitignore file in dir (relative to gitRoot)
+     */
+    private GitExcludeContext readGitIgnore(String dir) throws IOException {
+        File baseDir = dir.isEmpty() ? gitRoot : new File(gitRoot, dir);
+        File gitIgnoreFile = new File(baseDir, ".gitignore");
+        return loadExcludeContext(gitIgnoreFile, baseDir, gitRoot, true);
     }
 
     /**
-     * look for a .gitignore file in baseDir
+     * @param nullIfMissing return null rather than an empty context if excludeFile doesn't exist
      */
-    private GitExcludeContext readGitIgnore(File baseDir, File gitRoot) throws IOException {
-        if(gitRoot == null) {
-            throw new IllegalArgumentException("gitRoot cannot be null");
+    private static GitExcludeContext loadExcludeContext(File excludeFile, final File baseDir, final File gitRoot, final boolean nullIfMissing) throws IOException {
+        if(excludeFile.exists() == false) {
+            // most directories don't have a .gitignore, they aren't worth an entry in the cache
+            return nullIfMissing ? null : new GitExcludeContext(excludeFile, baseDir, gitRoot);
         }
 
-        File gitIgnoreFile = new File(baseDir, ".gitignore");
-        if(gitIgnoreFile.exists()) {
-            GitExcludeContext result = new GitExcludeContext(gitIgnoreFile, baseDir, gitRoot);
-            return result;
+        String key = excludeFile.getAbsolutePath() + File.pathSeparator + baseDir + File.pathSeparator + gitRoot;
+        try {
+            return EXCLUDE_CACHE.get(key, excludeFile, new FileStampCache.Loader<GitExcludeContext>() {
+                @Override
+                public GitExcludeContext load(File file) throws IOException {
+                    if(nullIfMissing && file.exists() == false) {
+                        return null;
+                    }
+                    return new GitExcludeContext(file, baseDir, gitRoot);
+                }
+            });
+        } catch(ParseException e) {
+            throw new IOException(e);   // not thrown by GitExcludeContext
         }
+    }
 
-        return null;
+    /**
+     * @return the frame of the directory walked from gitRoot, where the walk starts
+     */
+    public Frame getRootFrame() {
+        return rootFrame;
     }
 
     /**
-     * Build a list of all the ExcludeContexts in order from the most specific first to the most general last
-     * starting with the current pathname, up the pathnames ancestors until gitRoot and then project exclude and
-     * global exclude.
-     * @throws IOException
+     * Enter dir, a directory in parent's directory.  dir's .gitignore is only read if dir isn't
+     * ignored, as git doesn't look in ignored directories.
+     *
+     * @param dir relative to gitRoot, separated by "/"
+     * @return the frame for the paths in dir
      */
-    private List<GitExcludeContext> buildFullExcludeContext(File pathname) throws IOException {
-        if(pathname == null) {
-            return null;
+    public Frame push(Frame parent, String dir) throws IOException {
+        if(parent.ignored) {
+            return parent;
         }
+        if(isIgnored(parent, dir, true)) {
+            return new Frame(parent, null, true);
+        }
+        return Frame.push(parent, readGitIgnore(dir));
+    }
 
-        List<GitExcludeContext> results = new ArrayList<>();
-
-        File currentDir;
-        if(pathname.isDirectory()) {
-            currentDir = canonicalize(pathname);
-        } else {
-            currentDir = canonicalize(pathname.getParentFile());
+    /**
+     * @return the frame of any directory (pushing the frames of the directories above it), for
+     *         when it hasn't been reached by walking down from gitRoot
+     */
+    public Frame getFrame(final String dir) throws IOException {
+        if(gitRoot == null || dir.isEmpty()) {
+            return rootFrame;
         }
 
-        File previousDir = null;
-        while(currentDir != null && currentDir.equals(previousDir) == false) {
-            // since current is canonicalized, and parent is derived as a substring of current, then parent is automatically canonicalized
-            if(gitIgnoreFileCache.containsKey(currentDir) == false) {
-                GitExcludeContext excludeContext = readGitIgnore(currentDir, gitRoot);  // returns null if no .gitignore
-                gitIgnoreFileCache.put(currentDir, excludeContext);
-                addToList(results, excludeContext);
-            } else {
-                addToList(results, gitIgnoreFileCache.get(currentDir)); // this can be null (which means its been checked and does not exist)
+        FutureTask<Frame> frame = dirFrames.get(dir);
+        if(frame == null) {
+            final Frame parent = getFrame(parentOf(dir));
+            FutureTask<Frame> pushed = new FutureTask<>(new Callable<Frame>() {
+                @Override
+                public Frame call() throws IOException {
+                    return push(parent, dir);
+                }
+            });
+            frame = dirFrames.putIfAbsent(dir, pushed);
+            if(frame == null) {
+                frame = pushed;
+                frame.run();
             }
+        }
 
-            if(currentDir.equals(gitRoot)) {
-                break;
+        try {
+            return frame.get();
+        } catch(ExecutionException e) {
+            dirFrames.remove(dir, frame);   // so the next call tries again
+            if(e.getCause() instanceof IOException) {
+                throw (IOException)e.getCause();
             }
-
-            previousDir = currentDir;
-            currentDir = currentDir.getParentFile();
+            throw new IOException(e.getCause());
+        } catch(InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted reading the ignore rules for: " + dir);
         }
-        addToList(results, projectExclude);
-        addToList(results, globalExclude);
+    }
 
-        return results;
+    private static String parentOf(String path) {
+        int slash = path.lastIndexOf('/');
+        return slash < 0 ? "" : path.substring(0, slash);
     }
 
-    private void addToList(List<GitExcludeContext> list, GitExcludeContext instance) {
-        assert list != null;
-        if(instance != null) {
-            list.add(instance);
+    /**
+     * A path is ignored if it, or one of its directories, is ignored by the most specific exclude
+     * file with a pattern that matches it (nothing in an ignored directory can be included again).
+     * Nothing is read from the file system other than the exclude files (once per directory).
+     *
+     * @param path        relative to the git root and separated by "/", as git does (i.e. with
+     *                    symbolic links not followed)
+     * @param isDirectory path is a directory
+     */
+    public boolean isIgnored(String path, boolean isDirectory) throws IOException {
+        if(gitRoot == null || path.isEmpty()) {
+            return false;
         }
+        return isIgnored(getFrame(parentOf(path)), path, isDirectory);
     }
 
-    private boolean matchesGitIgnore(File pathname) throws IOException {
-        if(pathname == null) {
-            return false;
+    /**
+     * Only the frames in effect are checked, the most specific first, the directories of path were
+     * checked as their frames were pushed
+     *
+     * @param frame the frame of path's directory
+     * @param path  relative to the git root
+     */
+    public static boolean isIgnored(Frame frame, String path, boolean isDirectory) {
+        if(frame.ignored) {
+            return true;
         }
 
-        // need a list of exclude files in execution order
-        List<GitExcludeContext> excludeContexts = buildFullExcludeContext(pathname);
-        for(GitExcludeContext excludeContext: excludeContexts) {
-            if(excludeContext.matchesGitIgnore(pathname)) {
-                return true;
+        for(Frame current = frame; current != null; current = current.parent) {
+            if(current.excludeContext != null) {
+                GitExcludeContext.Match match = current.excludeContext.match(path, isDirectory);
+                if(match != GitExcludeContext.Match.NONE) {
+                    return match == GitExcludeContext.Match.IGNORED;
+                }
             }
         }
-
         return false;
     }
 
+    /**
+     * @return pathname relative to gitRoot, null if it isn't below it.  Only its directory is
+     *         canonicalized (symbolic links resolved), once.
+     */
+    private String relativePath(File pathname) throws IOException {
+        File absolute = pathname.getAbsoluteFile();
+        File parent = absolute.getParentFile();
+        if(parent == null) {
+            return null;
+        }
+
+        String dir = relativeDirs.get(parent);
+        if(dir == null) {
+            File canonical = parent.getCanonicalFile();
+            dir = canonical.equals(gitRoot) ? "" : GitExcludeContext.relativePath(gitRoot, canonical);
+            dir = dir == null ? NOT_BELOW : dir;
+            relativeDirs.put(parent, dir);      // the same whichever thread works it out
+        }
+
+        if(dir == NOT_BELOW) {
+            return null;
+        }
+        return dir.isEmpty() ? absolute.getName() : dir + "/" + absolute.getName();
+    }
+
+    private boolean matchesGitIgnore(File pathname) throws IOException {
+        if(pathname == null || gitRoot == null) {
+            return false;
+        }
+
+        String path = relativePath(pathname);
+        return path != null && isIgnored(path, pathname.isDirectory());
+    }
+
     @Override
     public boolean accept(File pathname) {
         try {
-            if(matchesGitIgnore(pathname)) {
-                System.out.println("ignoring: " + pathname.getAbsolutePath());
-                return false;
-            }
-            return true;
+            return matchesGitIgnore(pathname) == false;
 
         } catch (IOException e) {
             System.err.println("Unable to get pathname (" + pathname + ") as a canonical path, so erring on the side of caution and returning true;");
@@ -323,27 +464,40 @@ public class GitSubmitFileFilter implements FileFilter {
         }
     }
 
-    public static void walkTree(File file, FileFilter fileFilter) {
+    /**
+     * Walk the tree printing every path that fileFilter accepts, directories that are not accepted
+     * are not walked
+     */
+    public static void walkTree(File file, final FileFilter fileFilter) throws IOException {
         assert fileFilter != null;
         if(file == null) {
             return;
         }
 
-        // this will handle a file as well as a directory
-        if(fileFilter.accept(file) == false) {
-            return;
-        }
+        TreeWalker walker = new TreeWalker();
+        walker.walk(file.toPath(), new TreeVisitor<Void>() {
+            @Override
+            public boolean preVisitDirectory(Path dir, BasicFileAttributes attrs, List<Void> results) {
+                return fileFilter.accept(dir.toFile());
+            }
 
-        if(file.isDirectory()) {
-            File[] children = file.listFiles(fileFilter);
-            if(children != null) {
-                for(File child : children) {
-                    walkTree(child, fileFilter);
+            @Override
+            public void postVisitDirectory(Path dir, List<Void> results) {
+                System.out.println(dir.toAbsolutePath());
+            }
+
+            @Override
+            public void visitFile(Path path, BasicFileAttributes attrs, List<Void> results) {
+                if(fileFilter.accept(path.toFile())) {
+                    System.out.println(path.toAbsolutePath());
                 }
             }
-        }
 
-        System.out.println(file.getAbsolutePath());
+            @Override
+            public void visitFileFailed(Path path, IOException exception, List<Void> results) {
+                System.err.println("Unable to read: " + path.toAbsolutePath());
+            }
+        });
     }
 
     /**
@@ -356,23 +510,14 @@ public class GitSubmitFileFilter implements FileFilter {
      * core.excludesFile in the user’s ~/.gitconfig. Its default value is $XDG_CONFIG_HOME/git/ignore.
      * If $XDG_CONFIG_HOME is either not set or empty, $HOME/.config/git/ignore is used instead.
      *
-     * @return
-     * @throws IOException
-     * @throws ParseException
+     * core.excludesFile can be set in any of the config files git reads for the repository (see
+     * LayeredGitConfig), the last one wins.
      */
-    private File getCoreExcludesFile() throws IOException, ParseException {
-        String homePath = System.getProperty("user.home");
-        File home = new File(homePath);
-
-        // if specified in ~/.gitconfig use this value (and return)
-        File gitConfigFile = new File(home, ".gitconfig");
-        if(gitConfigFile.exists() == true) {
-            GitConfig gitConfig = new GitConfig(gitConfigFile);
-            if(gitConfig.containsKey("core.excludesFile")) {
-                String coreExcludesFilePath = gitConfig.get("core.excludesFile");   // not sure if this is relative or absolute!?
-                File result = new File(coreExcludesFilePath);
-                return result;
-            }
+    private File getCoreExcludesFile(File gitRoot) throws IOException, ParseException {
+        LayeredGitConfig gitConfig = LayeredGitConfig.load(GitFileSource.findGitDir(gitRoot));
+        File coreExcludesFile = gitConfig.getPath("core.excludesFile");
+        if(coreExcludesFile != null) {
+            return coreExcludesFile;
         }
 
         // if XDG_CONFIG_HOME is defined use it to locate /git/ignore (and return)
@@ -384,7 +529,7 @@ public class GitSubmitFileFilter implements FileFilter {
         }
 
         // otherwiuse use ~/.config/git/ignore
-        File homeGitIgnore = new File(home, ".config/git/ignore");
+        File homeGitIgnore = new File(System.getProperty("user.home"), ".config/git/ignore");
         return homeGitIgnore;
     }
 
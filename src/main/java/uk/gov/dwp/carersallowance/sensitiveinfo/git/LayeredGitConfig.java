@@ -0,0 +1,303 @@
+package uk.gov.dwp.carersallowance.sensitiveinfo.git;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.text.ParseException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.lang3.StringUtils;
+
+import uk.gov.dwp.carersallowance.utils.FileStampCache;
+
+/**
+ * The git config in effect for a repository, the files git reads in the order it reads them
+ * (see https://git-scm.com/docs/git-config#FILES), a value in a later file overriding one in an
+ * earlier file:
+ *
+ *     system      /etc/gitconfig (unless GIT_CONFIG_NOSYSTEM is set)
+ *     global      $XDG_CONFIG_HOME/git/config (or ~/.config/git/config), then ~/.gitconfig
+ *     repository  $GIT_DIR/config (the common directory's for a linked worktree)
+ *     worktree    $GIT_DIR/config.worktree, if extensions.worktreeConfig is set
+ *
+ * include.path and includeIf.<condition>.path read the named file where the directive is, a
+ * relative path is relative to the file it is in.  The gitdir:, gitdir/i: and onbranch:
+ * conditions are supported, any other condition (e.g. hasconfig:) is taken as false.  Missing
+ * files are skipped, as git does.
+ *
+ * Section and variable names are case insensitive (subsections are not), so "core.excludesFile"
+ * and "core.excludesfile" are the same key.
+ *
+ * Each file is parsed once and shared by every repository (and every thread) for as long as its
+ * path, size, modified time and inode are the same (see FileStampCache), so scanning hundreds of
+ * checkouts reads the system and global files once, only the combined view is per repository.
+ */
+public class LayeredGitConfig {
+    private static final FileStampCache<GitConfig> CONFIG_CACHE = new FileStampCache<>(256);
+    private static final int MAX_INCLUDE_DEPTH = 10;   // as git, a loop of includes is an error
+
+    private File                      home;
+    private File                      gitDir;       // null outside a repository
+    private List<GitConfig.Entry>     entries;      // with canonical keys, in the order git reads them
+    private Map<String, String>       values;       // canonical key vs its last value
+
+    private LayeredGitConfig(File home, File gitDir) {
+        this.home = home;
+        this.gitDir = gitDir;
+        this.entries = new ArrayList<>();
+        this.values = new HashMap<>();
+    }
+
+    /**
+     * @param gitDir the repository's .git directory (see GitFileSource.findGitDir), null for just
+     *               the system and global config
+     */
+    public static LayeredGitConfig load(File gitDir) throws IOException, ParseException {
+        File system = StringUtils.isEmpty(System.getenv("GIT_CONFIG_NOSYSTEM")) ? new File("/etc/gitconfig") : null;
+        return load(gitDir, system, new File(System.getProperty("user.home")), System.getenv("XDG_CONFIG_HOME"));
+    }
+
+    /**
+     * @param system        the system config, null for none
+     * @param xdgConfigHome $XDG_CONFIG_HOME, null or empty for ~/.config
+     */
+    static LayeredGitConfig load(File gitDir, File system, File home, String xdgConfigHome) throws IOException, ParseException {
+        LayeredGitConfig config = new LayeredGitConfig(home, gitDir);
+        config.read(system, 0);
+
+        File xdgHome = StringUtils.isEmpty(xdgConfigHome) ? new File(home, ".config") : new File(xdgConfigHome);
+        config.read(new File(xdgHome, "git/config"), 0);
+        config.read(new File(home, ".gitconfig"), 0);
+
+        if(gitDir != null) {
+            config.read(new File(getCommonDir(gitDir), "config"), 0);
+            if(config.getBoolean("extensions.worktreeConfig")) {
+                config.read(new File(gitDir, "config.worktree"), 0);
+            }
+        }
+        return config;
+    }
+
+    /**
+     * @return the last value of key, null if it isn't set (or is set without a value)
+     */
+    public String get(String key) {
+        return values.get(canonicalKey(key));
+    }
+
+    public boolean containsKey(String key) {
+        return values.containsKey(canonicalKey(key));
+    }
+
+    /**
+     * @return every value of key, in the order git reads them
+     */
+    public List<String> getAll(String key) {
+        String canonical = canonicalKey(key);
+        List<String> result = new ArrayList<>();
+        for(GitConfig.Entry entry: entries) {
+            if(entry.getKey().equals(canonical)) {
+                result.add(entry.getValue());
+            }
+        }
+        return result;
+    }
+
+    /**
+     * @return every key and value, with section and variable names in lower case
+     */
+    public List<GitConfig.Entry> getEntries() {
+        return Collections.unmodifiableList(entries);
+    }
+
+    /**
+     * @return true if key is set to true, yes, on or 1, or is set without a value
+     */
+    public boolean getBoolean(String key) {
+        if(containsKey(key) == false) {
+            return false;
+        }
+        String value = get(key);
+        return value == null || value.equalsIgnoreCase("true") || value.equalsIgnoreCase("yes") || value.equalsIgnoreCase("on") || value.equals("1");
+    }
+
+    /**
+     * @return the value of key as a path ("~/" is the home directory), null if it isn't set
+     */
+    public File getPath(String key) {
+        String value = unquote(get(key));
+        return StringUtils.isEmpty(value) ? null : expandHome(value);
+    }
+
+    private void read(File file, int depth) throws IOException, ParseException {
+        if(depth > MAX_INCLUDE_DEPTH) {
+            throw new ParseException("exceeded maximum include depth (" + MAX_INCLUDE_DEPTH + ") reading: " + file.getAbsolutePath(), -1);
+        }
+        if(file == null || file.isFile() == false) {
+            return;
+        }
+
+        GitConfig config = CONFIG_CACHE.get(file, new FileStampCache.Loader<GitConfig>() {
+            @Override
+            public GitConfig load(File file) throws IOException, ParseException {
+                return new GitConfig(file);
+            }
+        });
+
+        for(GitConfig.Entry entry: config.getEntries()) {
+            String key = canonicalKey(entry.getKey());
+            entries.add(new GitConfig.Entry(key, entry.getValue()));
+            values.put(key, entry.getValue());
+
+            String path = unquote(entry.getValue());
+            if(StringUtils.isEmpty(path) == false && isInclude(key, file)) {
+                File include = expandHome(path);
+                read(include.isAbsolute() ? include : new File(file.getAbsoluteFile().getParentFile(), path), depth + 1);
+            }
+        }
+    }
+
+    /**
+     * @param key  canonical
+     * @param file the file key is in
+     */
+    private boolean isInclude(String key, File file) throws IOException {
+        if(key.equals("include.path")) {
+            return true;
+        }
+        if(key.startsWith("includeif.") == false || key.endsWith(".path") == false || key.length() <= "includeif..path".length()) {
+            return false;
+        }
+
+        String condition = key.substring("includeif.".length(), key.length() - ".path".length());
+        if(condition.startsWith("gitdir:")) {
+            return matchesGitDir(condition.substring("gitdir:".length()), file, false);
+        } else if(condition.startsWith("gitdir/i:")) {
+            return matchesGitDir(condition.substring("gitdir/i:".length()), file, true);
+        } else if(condition.startsWith("onbranch:")) {
+            return matchesBranch(condition.substring("onbranch:".length()));
+        }
+        return false;
+    }
+
+    /**
+     * "~/" is the home directory, "./" the directory of file, a pattern not starting with
+     * either of those or "/" matches at any depth and one ending in "/" matches everything below
+     */
+    private boolean matchesGitDir(String pattern, File file, boolean ignoreCase) throws IOException {
+        if(gitDir == null || pattern.isEmpty()) {
+            return false;
+        }
+
+        if(pattern.startsWith("~/")) {
+            pattern = toSlashes(home.getAbsolutePath()) + pattern.substring(1);
+        } else if(pattern.startsWith("./")) {
+            pattern = toSlashes(file.getAbsoluteFile().getParent()) + pattern.substring(1);
+        } else if(pattern.startsWith("/") == false) {
+            pattern = "**/" + pattern;
+        }
+        if(pattern.endsWith("/")) {
+            pattern = pattern + "**";
+        }
+
+        // both as given and with symbolic links resolved, as git does
+        return matchesPath(pattern, toSlashes(gitDir.getAbsolutePath()), ignoreCase)
+            || matchesPath(pattern, toSlashes(gitDir.getCanonicalPath()), ignoreCase);
+    }
+
+    private boolean matchesBranch(String pattern) throws IOException {
+        if(gitDir == null || pattern.isEmpty()) {
+            return false;
+        }
+
+        File head = new File(gitDir, "HEAD");
+        if(head.isFile() == false) {
+            return false;
+        }
+        String ref = FileUtils.readFileToString(head, Charset.defaultCharset()).trim();
+        if(ref.startsWith("ref: refs/heads/") == false) {
+            return false;       // detached
+        }
+
+        if(pattern.endsWith("/")) {
+            pattern = pattern + "**";
+        }
+        return matchesPath(pattern.startsWith("/") ? pattern : "/" + pattern, ref.substring("ref: refs/heads/".length()), false);
+    }
+
+    /**
+     * The same wildcards as a .gitignore, the whole of path must match
+     */
+    private static boolean matchesPath(String pattern, String path, boolean ignoreCase) {
+        if(ignoreCase) {
+            pattern = pattern.toLowerCase(Locale.ROOT);
+            path = path.toLowerCase(Locale.ROOT);
+        }
+        if(path.startsWith("/")) {
+            path = path.substring(1);
+        }
+
+        GitIgnorePattern compiled = GitIgnorePattern.compile(pattern);
+        return compiled != null && compiled.matches(path, 0, path.lastIndexOf('/') + 1, true);
+    }
+
+    /**
+     * A linked worktree's .git directory has a commondir file pointing at the main one, which
+     * has the repository's config
+     */
+    private static File getCommonDir(File gitDir) throws IOException {
+        File commonDir = new File(gitDir, "commondir");
+        if(commonDir.isFile() == false) {
+            return gitDir;
+        }
+
+        File common = new File(FileUtils.readFileToString(commonDir, Charset.defaultCharset()).trim());
+        return common.isAbsolute() ? common : new File(gitDir, common.getPath());
+    }
+
+    /**
+     * section.subsection.name with the section and name in lower case
+     */
+    static String canonicalKey(String key) {
+        int firstDot = key.indexOf('.');
+        int lastDot = key.lastIndexOf('.');
+        if(firstDot < 0) {
+            return key.toLowerCase(Locale.ROOT);
+        }
+        return key.substring(0, firstDot).toLowerCase(Locale.ROOT)
+             + key.substring(firstDot, lastDot + 1)
+             + key.substring(lastDot + 1).toLowerCase(Locale.ROOT);
+    }
+
+    private File expandHome(String path) {
+        return path.startsWith("~/") ? new File(home, path.substring(2)) : new File(path);
+    }
+
+    private static String unquote(String value) {
+        if(value != null && value.length() >= 2 && value.startsWith("\"") && value.endsWith("\"")) {
+            return value.substring(1, value.length() - 1);
+        }
+        return value;
+    }
+
+    private static String toSlashes(String path) {
+        return File.separatorChar == '/' ? path : path.replace(File.separatorChar, '/');
+    }
+
+    @Override
+    public String toString() {
+        StringBuffer buffer = new StringBuffer();
+        buffer.append(this.getClass().getName()).append("@").append(System.identityHashCode(this));
+        buffer.append("=[");
+        buffer.append("gitDir = ").append(gitDir);
+        buffer.append(", entries = ").append(entries);
+        buffer.append("]");
+        return buffer.toString();
+    }
+}
@@ -0,0 +1,153 @@
+package uk.gov.dwp.carersallowance.sensitiveinfo.signature;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+import uk.gov.dwp.carersallowance.utils.Parameters;
+
+/**
+ * A file type and the magic bytes found at a fixed offset (normally the start) of files of that type.
+ *
+ * String signatures (as used in the "magic" database) are byte strings, each character
+ * is a single byte so they are converted using ISO-8859-1.
+ *
+ * An optional mask is and'ed with the file bytes (and the signature) before they are compared,
+ * e.g. belong&0xffffff00
+ */
+public class FileSignature {
+    private String fileType;
+    private int    offset;
+    private byte[] magicSignature;
+    private byte[] mask;            // null = no mask
+
+    public FileSignature(String fileType, byte[] magicSignature) {
+        this(fileType, 0, magicSignature, null);
+    }
+
+    public FileSignature(String fileType, int offset, byte[] magicSignature, byte[] mask) {
+        Parameters.validateMandatoryArgs(new Object[]{fileType, magicSignature}, new String[]{"fileType", "magicSignature"});
+        if(magicSignature.length == 0) {
+            throw new IllegalArgumentException("magicSignature cannot be empty");
+        }
+        if(offset < 0) {
+            throw new IllegalArgumentException("offset cannot be negative: " + offset);
+        }
+        if(mask != null && mask.length != magicSignature.length) {
+            throw new IllegalArgumentException("mask and magicSignature must be the same length");
+        }
+
+        this.fileType = fileType;
+        this.offset = offset;
+        this.magicSignature = magicSignature.clone();
+        this.mask = mask == null ? null : mask.clone();
+        if(this.mask != null) {
+            for(int index = 0; index < this.mask.length; index++) {
+                this.magicSignature[index] &= this.mask[index];
+            }
+        }
+    }
+
+    public static FileSignature fromHex(String fileType, String hexSignature) {
+        return new FileSignature(fileType, parseHexBytes(hexSignature));
+    }
+
+    public static FileSignature fromString(String fileType, String stringSignature) {
+        Parameters.validateMandatoryArgs(stringSignature, "stringSignature");
+        return new FileSignature(fileType, stringSignature.getBytes(StandardCharsets.ISO_8859_1));
+    }
+
+    public String  getFileType()        { return fileType; }
+    public int     getOffset()          { return offset; }
+    public byte[]  getMagicSignature()  { return magicSignature.clone(); }
+    public byte[]  getMask()            { return mask == null ? null : mask.clone(); }
+    public boolean isMasked()           { return mask != null; }
+    public int     length()             { return magicSignature.length; }
+
+    /**
+     * The number of header bytes needed to check this signature
+     */
+    public int getEnd() {
+        return offset + magicSignature.length;
+    }
+
+    byte byteAt(int index) {
+        return magicSignature[index];
+    }
+
+    /**
+     * Compare the signature (applying any mask) against header[0 .. length)
+     */
+    public boolean matches(byte[] header, int length) {
+        if(header == null || length < getEnd()) {
+            return false;
+        }
+
+        for(int index = 0; index < magicSignature.length; index++) {
+            byte value = header[offset + index];
+            if(mask != null) {
+                value &= mask[index];
+            }
+            if(value != magicSignature[index]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * As matches(byte[], int) but reading (with absolute gets) from a buffer, which may be direct
+     */
+    public boolean matches(ByteBuffer header, int length) {
+        if(header == null || length < getEnd()) {
+            return false;
+        }
+
+        for(int index = 0; index < magicSignature.length; index++) {
+            byte value = header.get(offset + index);
+            if(mask != null) {
+                value &= mask[index];
+            }
+            if(value != magicSignature[index]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @param string hex digits, optionally starting with 0x, e.g. 0xfeedfeed
+     */
+    public static byte[] parseHexBytes(String string) {
+        Parameters.validateMandatoryArgs(string, "string");
+
+        if(string.startsWith("0x") || string.startsWith("0X")) {
+            string = string.substring(2);
+        }
+
+        if(string.length() % 2 != 0) {
+            throw new IllegalArgumentException("hex string must have an even number of digits: " + string);
+        }
+
+        byte[] result = new byte[string.length() / 2];
+        for(int index = 0; index < result.length; index++) {
+            String hexByte = string.substring(index * 2, index * 2 + 2);
+            result[index] = (byte)Integer.parseInt(hexByte, 16);
+        }
+        return result;
+    }
+
+    public String toString() {
+        StringBuffer buffer = new StringBuffer();
+
+        buffer.append(this.getClass().getName()).append("@").append(System.identityHashCode(this));
+        buffer.append("=[");
+        buffer.append("fileType = ").append(fileType);
+        buffer.append(", offset = ").append(offset);
+        buffer.append(", magicSignature = ").append(Arrays.toString(magicSignature));
+        buffer.append(", mask = ").append(mask == null ? null : Arrays.toString(mask));
+        buffer.append("]");
+
+        return buffer.toString();
+    }
+}
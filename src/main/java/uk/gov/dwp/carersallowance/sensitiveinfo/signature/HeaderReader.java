@@ -0,0 +1,109 @@
+package uk.gov.dwp.carersallowance.sensitiveinfo.signature;
+
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.file.Path;
+
+import uk.gov.dwp.carersallowance.utils.Parameters;
+
+/**
+ * Reads the start of files into a buffer owned by the calling thread.
+ *
+ * Millions of files are read and only a few dozen bytes of each are needed, so rather than a
+ * new byte[] and a copy per file the bytes are read straight into a reused buffer which the
+ * signatures are then matched against directly.
+ *
+ * The file is opened with a FileInputStream rather than a FileChannel, reading a few bytes into
+ * an array is handled without any native buffer allocation, and opening a FileChannel allocates
+ * noticeably more (the option set, the channel, its locks and thread set) than the stream does.
+ * The stream (and its file descriptor) are the only per file allocation left, HeaderReaderBenchmark
+ * compares the two (run it with -prof gc for the bytes allocated per read).
+ *
+ * The buffer returned is only valid until the next read on the same thread.
+ */
+public class HeaderReader {
+    private static final int INITIAL_CAPACITY = 256;
+
+    private static final ThreadLocal<ByteBuffer> BUFFER = new ThreadLocal<ByteBuffer>() {
+        @Override
+        protected ByteBuffer initialValue() {
+            return ByteBuffer.allocate(INITIAL_CAPACITY);
+        }
+    };
+
+    private HeaderReader() {
+        // all methods are static
+    }
+
+    /**
+     * @return the thread's buffer holding the first maxBytesToRead (or fewer if the file is shorter)
+     *         bytes of the file, from position 0 to the limit
+     */
+    public static ByteBuffer read(Path file, int maxBytesToRead) throws IOException {
+        Parameters.validateMandatoryArgs(file, "file");
+
+        try(FileInputStream inputStream = new FileInputStream(file.toFile())) {
+            return read(inputStream, maxBytesToRead);
+        }
+    }
+
+    /**
+     * As read(Path, int) but reading from (and not closing) inputStream
+     */
+    public static ByteBuffer read(InputStream inputStream, int maxBytesToRead) throws IOException {
+        Parameters.validateMandatoryArgs(inputStream, "inputStream");
+
+        return readInto(inputStream, getBuffer(maxBytesToRead));
+    }
+
+    /**
+     * As read(Path, int) but into buffer (which must have a backing array) rather than the thread's
+     * buffer, up to the buffer's limit is read.  For callers that need the header to survive
+     * other reads on the same thread.
+     */
+    public static ByteBuffer read(Path file, ByteBuffer buffer) throws IOException {
+        Parameters.validateMandatoryArgs(file, "file");
+        Parameters.validateMandatoryArgs(buffer, "buffer");
+
+        try(FileInputStream inputStream = new FileInputStream(file.toFile())) {
+            return readInto(inputStream, buffer);
+        }
+    }
+
+    private static ByteBuffer readInto(InputStream inputStream, ByteBuffer buffer) throws IOException {
+        int maxBytesToRead = buffer.limit();
+        byte[] bytes = buffer.array();
+        int offset = buffer.arrayOffset();
+        int length = 0;
+        while(length < maxBytesToRead) {
+            int read = inputStream.read(bytes, offset + length, maxBytesToRead - length);
+            if(read < 0) {
+                break;
+            }
+            length += read;
+        }
+        buffer.position(0);
+        buffer.limit(length);
+        return buffer;
+    }
+
+    /**
+     * @return the thread's buffer (grown if necessary), cleared with its limit set to length
+     */
+    public static ByteBuffer getBuffer(int length) {
+        if(length < 0) {
+            throw new IllegalArgumentException("length cannot be negative: " + length);
+        }
+
+        ByteBuffer buffer = BUFFER.get();
+        if(buffer.capacity() < length) {
+            buffer = ByteBuffer.allocate(Math.max(length, buffer.capacity() * 2));
+            BUFFER.set(buffer);
+        }
+        buffer.clear();
+        buffer.limit(length);
+        return buffer;
+    }
+}
@@ -0,0 +1,320 @@
+package uk.gov.dwp.carersallowance.sensitiveinfo.signature;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.text.ParseException;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
+
+import uk.gov.dwp.carersallowance.utils.Parameters;
+
+/**
+ * Reads the signatures from magic(5) files, i.e. the files /etc/magic, /usr/share/file/magic
+ * etc. are built from.
+ *
+ * Only what is needed to recognise a file type is supported, that is top level entries
+ * (continuation lines starting with '>' only add detail to the description) with a fixed
+ * offset, a byte, short, long, quad or string type (with optional be/le/u prefixes and
+ * an optional &mask) and an equality test.  Anything else (indirect offsets, regex, search,
+ * dates, comparison operators etc.) is skipped.
+ *
+ * Line format (fields are whitespace separated, a backslash escapes whitespace in a string):
+ *
+ *     offset  type[&mask]  value  description
+ *     0       belong       0xfeedfeed      Java KeyStore
+ *     0       string       \001gpg         GPG key trust database
+ *
+ * The "long" and "short" types use the native byte order, as file(1) does.
+ */
+public class MagicFileParser {
+    /**
+     * The magic files bundled in the magicFiles resource directory
+     */
+    public static final String[] BUNDLED_MAGIC_FILES = {"java", "gnu", "gnome-keyring", "pgp", "private-keys"};
+
+    private static final String BUNDLED_MAGIC_DIR = "/magicFiles/";
+
+    private MagicFileParser() {
+        // all methods are static
+    }
+
+    public static List<FileSignature> parseBundled() throws IOException, ParseException {
+        List<FileSignature> results = new ArrayList<>();
+        for(String name: BUNDLED_MAGIC_FILES) {
+            results.addAll(parseResource(BUNDLED_MAGIC_DIR + name));
+        }
+        return results;
+    }
+
+    public static List<FileSignature> parseResource(String resourceName) throws IOException, ParseException {
+        Parameters.validateMandatoryArgs(resourceName, "resourceName");
+
+        InputStream inputStream = MagicFileParser.class.getResourceAsStream(resourceName);
+        if(inputStream == null) {
+            throw new FileNotFoundException("magic resource not found: " + resourceName);
+        }
+
+        try {
+            List<String> lines = IOUtils.readLines(inputStream, StandardCharsets.ISO_8859_1);
+            return parse(lines, resourceName);
+        } finally {
+            IOUtils.closeQuietly(inputStream);
+        }
+    }
+
+    public static List<FileSignature> parse(File file) throws IOException, ParseException {
+        Parameters.validateMandatoryArgs(file, "file");
+
+        List<String> lines = FileUtils.readLines(file, StandardCharsets.ISO_8859_1);
+        return parse(lines, file.getPath());
+    }
+
+    /**
+     * @param source used in error messages
+     */
+    public static List<FileSignature> parse(List<String> lines, String source) throws ParseException {
+        List<FileSignature> results = new ArrayList<>();
+        if(lines == null) {
+            return results;
+        }
+
+        for(int index = 0; index < lines.size(); index++) {
+            String line = lines.get(index);
+            try {
+                FileSignature signature = parseLine(line);
+                if(signature != null) {
+                    results.add(signature);
+                }
+            } catch(ParseException | IllegalArgumentException e) {
+                ParseException parseException = new ParseException(source + " line " + (index + 1) + ": " + e.getMessage() + ": " + line, index + 1);
+                parseException.initCause(e);
+                throw parseException;
+            }
+        }
+        return results;
+    }
+
+    /**
+     * @return the signature or null if the line is not a supported top level entry
+     */
+    private static FileSignature parseLine(String line) throws ParseException {
+        if(line == null) {
+            return null;
+        }
+
+        String trimmed = line.trim();
+        if(trimmed.isEmpty() || trimmed.startsWith("#") || trimmed.startsWith("!:") || trimmed.startsWith(">")) {
+            return null;
+        }
+
+        String[] fields = splitFields(trimmed);
+        if(fields == null || fields[3].isEmpty()) {
+            return null;    // no description, nothing to report
+        }
+
+        String offsetField = fields[0];
+        if(offsetField.startsWith("(") || offsetField.startsWith("&")) {
+            return null;    // indirect or relative offset
+        }
+        long offset = parseNumber(offsetField);
+
+        String typeField = fields[1];
+        String maskField = null;
+        int ampersandPos = typeField.indexOf('&');
+        if(ampersandPos > -1) {
+            maskField = typeField.substring(ampersandPos + 1);
+            typeField = typeField.substring(0, ampersandPos);
+        }
+        if(typeField.indexOf('/') > -1) {
+            return null;    // string flags (e.g. case insensitive) are not supported
+        }
+        if(typeField.startsWith("u")) {
+            typeField = typeField.substring(1);     // unsigned makes no difference to an equality test
+        }
+
+        String valueField = fields[2];
+        if(valueField.startsWith("=")) {
+            valueField = valueField.substring(1);
+        } else if(valueField.equals("x") || "<>!&^~".indexOf(valueField.charAt(0)) > -1) {
+            return null;    // not an equality test
+        }
+
+        String description = trimDescription(fields[3]);
+        if(typeField.equals("string")) {
+            if(maskField != null) {
+                return null;
+            }
+            byte[] value = unescape(valueField);
+            if(value.length == 0) {
+                return null;
+            }
+            return new FileSignature(description, (int)offset, value, null);
+        }
+
+        int size;
+        ByteOrder byteOrder;
+        switch(typeField) {
+            case "byte":    size = 1; byteOrder = ByteOrder.BIG_ENDIAN;     break;
+            case "short":   size = 2; byteOrder = ByteOrder.nativeOrder();  break;
+            case "beshort": size = 2; byteOrder = ByteOrder.BIG_ENDIAN;     break;
+            case "leshort": size = 2; byteOrder = ByteOrder.LITTLE_ENDIAN;  break;
+            case "long":    size = 4; byteOrder = ByteOrder.nativeOrder();  break;
+            case "belong":  size = 4; byteOrder = ByteOrder.BIG_ENDIAN;     break;
+            case "lelong":  size = 4; byteOrder = ByteOrder.LITTLE_ENDIAN;  break;
+            case "quad":    size = 8; byteOrder = ByteOrder.nativeOrder();  break;
+            case "bequad":  size = 8; byteOrder = ByteOrder.BIG_ENDIAN;     break;
+            case "lequad":  size = 8; byteOrder = ByteOrder.LITTLE_ENDIAN;  break;
+            default:
+                return null;    // regex, search, pstring, dates, floats etc.
+        }
+
+        byte[] value = toBytes(parseNumber(valueField), size, byteOrder);
+        byte[] mask = maskField == null ? null : toBytes(parseNumber(maskField), size, byteOrder);
+        return new FileSignature(description, (int)offset, value, mask);
+    }
+
+    /**
+     * split into offset, type, value and description (the rest of the line)
+     *
+     * @return null if there are fewer than 3 fields
+     */
+    private static String[] splitFields(String line) {
+        String[] fields = new String[4];
+        int pos = 0;
+        for(int field = 0; field < 3; field++) {
+            while(pos < line.length() && Character.isWhitespace(line.charAt(pos))) {
+                pos++;
+            }
+
+            int start = pos;
+            while(pos < line.length() && Character.isWhitespace(line.charAt(pos)) == false) {
+                if(line.charAt(pos) == '\\') {
+                    pos++;  // the escaped character is part of the field, even if it is whitespace
+                }
+                pos++;
+            }
+            pos = Math.min(pos, line.length());
+
+            if(start == pos) {
+                return null;
+            }
+            fields[field] = line.substring(start, pos);
+        }
+
+        fields[3] = line.substring(pos).trim();
+        return fields;
+    }
+
+    private static String trimDescription(String description) {
+        String trimmed = description.trim();
+        while(trimmed.endsWith(",")) {
+            trimmed = trimmed.substring(0, trimmed.length() - 1).trim();
+        }
+        return trimmed;
+    }
+
+    /**
+     * C style numbers: 0x hex, leading 0 octal, otherwise decimal, with an optional sign
+     * and optional size suffix (e.g. 0L)
+     */
+    static long parseNumber(String string) throws ParseException {
+        String number = string;
+        boolean negative = false;
+        if(number.startsWith("-") || number.startsWith("+")) {
+            negative = number.startsWith("-");
+            number = number.substring(1);
+        }
+        while(number.endsWith("L") || number.endsWith("l") || number.endsWith("U") || number.endsWith("u")) {
+            number = number.substring(0, number.length() - 1);
+        }
+
+        try {
+            long value;
+            if(number.startsWith("0x") || number.startsWith("0X")) {
+                value = Long.parseUnsignedLong(number.substring(2), 16);
+            } else if(number.length() > 1 && number.startsWith("0")) {
+                value = Long.parseLong(number.substring(1), 8);
+            } else {
+                value = Long.parseLong(number);
+            }
+            return negative ? -value : value;
+        } catch(NumberFormatException e) {
+            throw new ParseException("invalid number: " + string, -1);
+        }
+    }
+
+    private static byte[] toBytes(long value, int size, ByteOrder byteOrder) {
+        byte[] bytes = new byte[size];
+        for(int index = 0; index < size; index++) {
+            byte lowByte = (byte)(value >>> (8 * index));
+            if(byteOrder == ByteOrder.BIG_ENDIAN) {
+                bytes[size - 1 - index] = lowByte;
+            } else {
+                bytes[index] = lowByte;
+            }
+        }
+        return bytes;
+    }
+
+    /**
+     * Convert the C style escapes used in magic strings, \n \r \t etc, octal \ooo and hex \xhh
+     */
+    static byte[] unescape(String string) {
+        byte[] buffer = new byte[string.length()];
+        int length = 0;
+        for(int index = 0; index < string.length(); index++) {
+            char current = string.charAt(index);
+            if(current != '\\' || index == string.length() - 1) {
+                buffer[length++] = (byte)current;
+                continue;
+            }
+
+            index++;
+            char escaped = string.charAt(index);
+            switch(escaped) {
+                case 'n': buffer[length++] = '\n';      break;
+                case 'r': buffer[length++] = '\r';      break;
+                case 't': buffer[length++] = '\t';      break;
+                case 'b': buffer[length++] = '\b';      break;
+                case 'f': buffer[length++] = '\f';      break;
+                case 'v': buffer[length++] = 0x0b;      break;
+                case 'a': buffer[length++] = 0x07;      break;
+                case 'x': {
+                    int end = index + 1;
+                    while(end < string.length() && end < index + 3 && Character.digit(string.charAt(end), 16) > -1) {
+                        end++;
+                    }
+                    if(end == index + 1) {
+                        buffer[length++] = 'x';
+                    } else {
+                        buffer[length++] = (byte)Integer.parseInt(string.substring(index + 1, end), 16);
+                        index = end - 1;
+                    }
+                    break;
+                }
+                default:
+                    if(escaped >= '0' && escaped <= '7') {
+                        int end = index;
+                        while(end < string.length() && end < index + 3 && string.charAt(end) >= '0' && string.charAt(end) <= '7') {
+                            end++;
+                        }
+                        buffer[length++] = (byte)Integer.parseInt(string.substring(index, end), 8);
+                        index = end - 1;
+                    } else {
+                        buffer[length++] = (byte)escaped;   // e.g. '\ ' or '\\'
+                    }
+            }
+        }
+
+        byte[] result = new byte[length];
+        System.arraycopy(buffer, 0, result, 0, length);
+        return result;
+    }
+}
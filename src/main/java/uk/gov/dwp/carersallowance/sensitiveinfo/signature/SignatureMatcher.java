@@ -0,0 +1,127 @@
+package uk.gov.dwp.carersallowance.sensitiveinfo.signature;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+
+import uk.gov.dwp.carersallowance.utils.Parameters;
+
+/**
+ * Matches the start of a file against a set of signatures in a single pass.
+ *
+ * The signatures are compiled into a trie (a deterministic automaton) keyed on the leading
+ * bytes, each node being a row of 256 transitions in one flat array.  Matching walks the header
+ * one byte at a time until there is no transition, so the cost of a match depends on the length
+ * of the longest signature, not the number of signatures, and it does not allocate anything.
+ *
+ * Where signatures share a prefix the longest (most specific) match wins.
+ *
+ * Signature offsets and masks are not used here, the matcher is applied at a given position
+ * in the header, see SignatureTable for offset and mask handling.
+ *
+ * Instances are immutable and can be shared between threads.
+ */
+public class SignatureMatcher {
+    private static final int ALPHABET   = 256;
+    private static final int NO_STATE   = 0;    // state 0 is the root, nothing transitions back to it
+    private static final int ROOT_STATE = 0;
+
+    private int[]           transitions;    // state * ALPHABET + byte -> next state
+    private FileSignature[] accepting;      // state -> signature ending at that state (or null)
+    private int             longestSignature;
+
+    public SignatureMatcher(Collection<FileSignature> signatures) {
+        Parameters.validateMandatoryArgs(signatures, "signatures");
+
+        int maxStates = 1;
+        for(FileSignature signature: signatures) {
+            maxStates += signature.length();
+            longestSignature = Math.max(longestSignature, signature.length());
+        }
+
+        transitions = new int[maxStates * ALPHABET];
+        accepting = new FileSignature[maxStates];
+
+        int states = 1;
+        for(FileSignature signature: signatures) {
+            int state = ROOT_STATE;
+            for(int index = 0; index < signature.length(); index++) {
+                int slot = state * ALPHABET + (signature.byteAt(index) & 0xff);
+                if(transitions[slot] == NO_STATE) {
+                    transitions[slot] = states;
+                    states++;
+                }
+                state = transitions[slot];
+            }
+
+            if(accepting[state] == null) {  // first one wins for duplicate signatures
+                accepting[state] = signature;
+            }
+        }
+
+        transitions = Arrays.copyOf(transitions, states * ALPHABET);
+        accepting = Arrays.copyOf(accepting, states);
+    }
+
+    /**
+     * The number of header bytes needed to match every signature
+     */
+    public int getLongestSignature() {
+        return longestSignature;
+    }
+
+    public List<FileSignature> getSignatures() {
+        List<FileSignature> signatures = new ArrayList<>();
+        for(FileSignature signature: accepting) {
+            if(signature != null) {
+                signatures.add(signature);
+            }
+        }
+        return signatures;
+    }
+
+    public FileSignature match(byte[] header) {
+        Parameters.validateMandatoryArgs(header, "header");
+        return match(header, 0, header.length);
+    }
+
+    /**
+     * @return the longest signature that header[offset .. offset + length) starts with, or null if there isn't one
+     */
+    public FileSignature match(byte[] header, int offset, int length) {
+        FileSignature result = null;
+        int state = ROOT_STATE;
+        int end = offset + Math.min(length, longestSignature);
+        for(int index = offset; index < end; index++) {
+            state = transitions[state * ALPHABET + (header[index] & 0xff)];
+            if(state == NO_STATE) {
+                break;
+            }
+            if(accepting[state] != null) {
+                result = accepting[state];
+            }
+        }
+        return result;
+    }
+
+    /**
+     * As match(byte[], int, int) but reading (with absolute gets) from a buffer, which may be direct or mapped
+     */
+    public FileSignature match(ByteBuffer header, int offset, int length) {
+        FileSignature result = null;
+        int state = ROOT_STATE;
+        int end = offset + Math.min(length, longestSignature);
+        for(int index = offset; index < end; index++) {
+            state = transitions[state * ALPHABET + (header.get(index) & 0xff)];
+            if(state == NO_STATE) {
+                break;
+            }
+            if(accepting[state] != null) {
+                result = accepting[state];
+            }
+        }
+        return result;
+    }
+}
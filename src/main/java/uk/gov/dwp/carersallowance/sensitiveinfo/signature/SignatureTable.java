@@ -0,0 +1,165 @@
+package uk.gov.dwp.carersallowance.sensitiveinfo.signature;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import uk.gov.dwp.carersallowance.utils.Parameters;
+
+/**
+ * A compiled set of signatures indexed by the offset they are found at.
+ *
+ * Plain signatures at each offset are compiled into a SignatureMatcher (a trie) so checking an
+ * offset is a single pass regardless of how many signatures share it, masked signatures at the
+ * offset are compared individually (there are very few of them in practice).
+ *
+ * The offsets are checked in ascending order and the first match is returned.
+ *
+ * Instances are immutable and can be shared between threads.
+ */
+public class SignatureTable {
+    private int[]               offsets;            // ascending
+    private SignatureMatcher[]  matchers;           // matchers[i] for signatures at offsets[i], or null
+    private FileSignature[][]   maskedSignatures;   // maskedSignatures[i] for signatures at offsets[i]
+    private List<FileSignature> signatures;
+    private int                 headerLength;
+    private String              fingerprint;
+
+    public SignatureTable(Collection<FileSignature> signatures) {
+        Parameters.validateMandatoryArgs(signatures, "signatures");
+
+        // offset -> [plain signatures, masked signatures]
+        Map<Integer, List<List<FileSignature>>> byOffset = new TreeMap<>();
+        for(FileSignature signature: signatures) {
+            List<List<FileSignature>> atOffset = byOffset.get(signature.getOffset());
+            if(atOffset == null) {
+                atOffset = new ArrayList<>();
+                atOffset.add(new ArrayList<FileSignature>());
+                atOffset.add(new ArrayList<FileSignature>());
+                byOffset.put(signature.getOffset(), atOffset);
+            }
+            atOffset.get(signature.isMasked() ? 1 : 0).add(signature);
+            headerLength = Math.max(headerLength, signature.getEnd());
+        }
+
+        offsets = new int[byOffset.size()];
+        matchers = new SignatureMatcher[offsets.length];
+        maskedSignatures = new FileSignature[offsets.length][];
+        int index = 0;
+        for(Map.Entry<Integer, List<List<FileSignature>>> entry: byOffset.entrySet()) {
+            List<FileSignature> plain = entry.getValue().get(0);
+            List<FileSignature> masked = entry.getValue().get(1);
+
+            offsets[index] = entry.getKey();
+            if(plain.isEmpty() == false) {
+                matchers[index] = new SignatureMatcher(plain);
+            }
+            maskedSignatures[index] = masked.toArray(new FileSignature[masked.size()]);
+            index++;
+        }
+
+        this.signatures = Collections.unmodifiableList(new ArrayList<>(signatures));
+        fingerprint = buildFingerprint(this.signatures);
+    }
+
+    private static String buildFingerprint(List<FileSignature> signatures) {
+        StringBuilder builder = new StringBuilder();
+        for(FileSignature signature: signatures) {
+            builder.append(signature.getOffset()).append(':');
+            appendHex(builder, signature.getMagicSignature());
+            builder.append(':');
+            if(signature.isMasked()) {
+                appendHex(builder, signature.getMask());
+            }
+            builder.append(':').append(signature.getFileType()).append('\n');
+        }
+        return builder.toString();
+    }
+
+    private static void appendHex(StringBuilder builder, byte[] bytes) {
+        for(byte value: bytes) {
+            builder.append(String.format("%02x", value));
+        }
+    }
+
+    /**
+     * A canonical description of every signature in the table, if two tables have the same fingerprint
+     * they match the same files in the same way
+     */
+    public String getFingerprint() {
+        return fingerprint;
+    }
+
+    /**
+     * The number of bytes from the start of a file needed to check every signature
+     */
+    public int getHeaderLength() {
+        return headerLength;
+    }
+
+    public List<FileSignature> getSignatures() {
+        return signatures;
+    }
+
+    public FileSignature match(byte[] header) {
+        Parameters.validateMandatoryArgs(header, "header");
+        return match(header, header.length);
+    }
+
+    /**
+     * @return the first signature (in offset order) matching header[0 .. length), or null if there isn't one
+     */
+    public FileSignature match(byte[] header, int length) {
+        for(int index = 0; index < offsets.length; index++) {
+            int offset = offsets[index];
+            if(offset >= length) {
+                break;
+            }
+
+            if(matchers[index] != null) {
+                FileSignature result = matchers[index].match(header, offset, length - offset);
+                if(result != null) {
+                    return result;
+                }
+            }
+
+            for(FileSignature signature: maskedSignatures[index]) {
+                if(signature.matches(header, length)) {
+                    return signature;
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * As match(byte[], int) but reading (with absolute gets) from a buffer, which may be direct,
+     * nothing is allocated
+     */
+    public FileSignature match(ByteBuffer header, int length) {
+        for(int index = 0; index < offsets.length; index++) {
+            int offset = offsets[index];
+            if(offset >= length) {
+                break;
+            }
+
+            if(matchers[index] != null) {
+                FileSignature result = matchers[index].match(header, offset, length - offset);
+                if(result != null) {
+                    return result;
+                }
+            }
+
+            for(FileSignature signature: maskedSignatures[index]) {
+                if(signature.matches(header, length)) {
+                    return signature;
+                }
+            }
+        }
+        return null;
+    }
+}
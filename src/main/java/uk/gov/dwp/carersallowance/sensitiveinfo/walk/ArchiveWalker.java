@@ -0,0 +1,132 @@
+package uk.gov.dwp.carersallowance.sensitiveinfo.walk;
+
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.file.Path;
+import java.util.Enumeration;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+import java.util.zip.ZipInputStream;
+
+import uk.gov.dwp.carersallowance.sensitiveinfo.signature.HeaderReader;
+import uk.gov.dwp.carersallowance.utils.Parameters;
+
+/**
+ * Walks the entries of a zip archive (jar, war, zip etc.) without extracting anything.
+ *
+ * The outer archive is read with ZipFile, i.e. from its central directory, and only the first
+ * headerLength bytes of each entry are inflated.  Archives nested inside it (e.g. the jars in a
+ * Spring Boot fat jar's BOOT-INF/lib) are streamed with a ZipInputStream down to maxDepth levels,
+ * moving to the next nested entry means reading past the rest of the current one, but nothing is
+ * ever written to disk or held in memory in full.
+ *
+ * Entries are reported with jar url style paths, e.g. outer.jar!/BOOT-INF/lib/inner.jar!/keystore.jks
+ */
+public class ArchiveWalker {
+    public static final String SEPARATOR = "!/";
+
+    private static final byte[] LOCAL_FILE_HEADER = {'P', 'K', 3, 4};
+
+    public interface EntryVisitor {
+        /**
+         * @param header the start of the entry, only valid for the duration of the call
+         */
+        public void visitEntry(String path, ByteBuffer header) throws IOException;
+
+        public void visitEntryFailed(String path, IOException exception) throws IOException;
+    }
+
+    private int maxDepth;
+    private int headerLength;
+
+    /**
+     * @param maxDepth the number of archive levels to walk, 1 is the entries of the outer archive only
+     * @param headerLength the number of bytes to read from the start of each entry
+     */
+    public ArchiveWalker(int maxDepth, int headerLength) {
+        if(maxDepth < 1) {
+            throw new IllegalArgumentException("maxDepth must be 1 or more, not: " + maxDepth);
+        }
+        if(headerLength < LOCAL_FILE_HEADER.length) {
+            throw new IllegalArgumentException("headerLength must be at least " + LOCAL_FILE_HEADER.length + ", not: " + headerLength);
+        }
+        this.maxDepth = maxDepth;
+        this.headerLength = headerLength;
+    }
+
+    public int getMaxDepth() { return maxDepth; }
+
+    /**
+     * @return true if header (from position 0 to the limit) is the start of a zip archive with at least one entry
+     */
+    public static boolean isArchive(ByteBuffer header) {
+        if(header == null || header.limit() < LOCAL_FILE_HEADER.length) {
+            return false;
+        }
+
+        for(int index = 0; index < LOCAL_FILE_HEADER.length; index++) {
+            if(header.get(index) != LOCAL_FILE_HEADER[index]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    public void walk(Path archive, EntryVisitor visitor) throws IOException {
+        Parameters.validateMandatoryArgs(archive, "archive");
+        Parameters.validateMandatoryArgs(visitor, "visitor");
+
+        String archivePath = archive.toAbsolutePath().toString();
+        try(ZipFile zipFile = new ZipFile(archive.toFile())) {
+            Enumeration<? extends ZipEntry> entries = zipFile.entries();
+            while(entries.hasMoreElements()) {
+                ZipEntry entry = entries.nextElement();
+                if(entry.isDirectory()) {
+                    continue;
+                }
+
+                String entryPath = archivePath + SEPARATOR + entry.getName();
+                try(InputStream inputStream = new BufferedInputStream(zipFile.getInputStream(entry), headerLength)) {
+                    visitEntry(entryPath, inputStream, 1, visitor);
+                } catch(IOException e) {
+                    visitor.visitEntryFailed(entryPath, e);
+                }
+            }
+        }
+    }
+
+    /**
+     * @param inputStream the entry content, must support mark, it is not closed
+     */
+    private void visitEntry(String entryPath, InputStream inputStream, int depth, EntryVisitor visitor) throws IOException {
+        inputStream.mark(headerLength);
+        ByteBuffer header = HeaderReader.read(inputStream, headerLength);
+        boolean archive = isArchive(header);
+        visitor.visitEntry(entryPath, header);
+
+        if(archive == false || depth >= maxDepth) {
+            return;
+        }
+
+        // the nested archive shares inputStream, so it is not closed here
+        inputStream.reset();
+        ZipInputStream nested = new ZipInputStream(inputStream);
+        ZipEntry entry;
+        while((entry = nested.getNextEntry()) != null) {
+            if(entry.isDirectory()) {
+                continue;
+            }
+
+            String nestedPath = entryPath + SEPARATOR + entry.getName();
+            try {
+                visitEntry(nestedPath, new BufferedInputStream(nested, headerLength), depth + 1, visitor);
+            } catch(IOException e) {
+                // the stream position is unknown, so the rest of this archive can't be read
+                visitor.visitEntryFailed(nestedPath, e);
+                return;
+            }
+        }
+    }
+}
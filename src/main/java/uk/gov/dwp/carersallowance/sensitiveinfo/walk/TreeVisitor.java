@@ -0,0 +1,40 @@
+package uk.gov.dwp.carersallowance.sensitiveinfo.walk;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.List;
+
+/**
+ * Callbacks from a TreeWalker.
+ *
+ * The attributes passed in are the ones read while walking the tree (symbolic links are not
+ * followed), so visitors should use them rather than going back to the file system.
+ *
+ * Anything a visitor wants to report is added to the results list it is handed, when the
+ * walk is parallel each task has its own list and they are joined in walk order, so a
+ * visitor does not need any locking for its results.  Any other state a visitor keeps must
+ * be thread safe if it is used with a parallel walker.
+ *
+ * @param <T> the result type
+ */
+public interface TreeVisitor<T> {
+    /**
+     * @return true to walk the directory contents, false to skip the directory (and everything below it)
+     */
+    public boolean preVisitDirectory(Path dir, BasicFileAttributes attrs, List<T> results) throws IOException;
+
+    /**
+     * called once everything below dir has been visited
+     */
+    public void postVisitDirectory(Path dir, List<T> results) throws IOException;
+
+    public void visitFile(Path file, BasicFileAttributes attrs, List<T> results) throws IOException;
+
+    /**
+     * called when the attributes of path could not be read, or the directory could not be listed.
+     * A directory that can't be listed is still offered to preVisitDirectory first, and if it is
+     * accepted postVisitDirectory follows, whatever the parallelism.
+     */
+    public void visitFileFailed(Path path, IOException exception, List<T> results) throws IOException;
+}
@@ -0,0 +1,300 @@
+package uk.gov.dwp.carersallowance.sensitiveinfo.walk;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveTask;
+
+import uk.gov.dwp.carersallowance.utils.Parameters;
+
+/**
+ * Walks a directory tree, this is the single traversal engine used by the scanners.
+ *
+ * The walk is iterative (Files.walkFileTree keeps its own stack) so deep trees can't overflow
+ * the java stack, directory entries are streamed rather than listed into arrays and each
+ * entry is stat'ed exactly once, the resulting BasicFileAttributes being handed to the visitor.
+ * Symbolic links are not followed.
+ *
+ * With a parallelism greater than one the tree is walked on a ForkJoinPool instead, sub directories
+ * are forked as work-stealing tasks and files are visited in batches.  The results are joined
+ * in walk order so a parallel walk returns the same results, in the same order, as a sequential one.
+ * A parallel walk started from a task already running on a ForkJoinPool (e.g. one of the trees of
+ * a BatchScan) forks into that pool rather than starting another, so its threads share the
+ * directories of every tree being walked.
+ */
+public class TreeWalker {
+    private static final int FILE_BATCH_SIZE = 64;
+
+    private int parallelism;
+
+    public TreeWalker() {
+        this(1);
+    }
+
+    public TreeWalker(int parallelism) {
+        if(parallelism < 1) {
+            throw new IllegalArgumentException("parallelism must be 1 or more, not: " + parallelism);
+        }
+        this.parallelism = parallelism;
+    }
+
+    public int getParallelism() { return parallelism; }
+
+    /**
+     * Walk root (which may be a file or a directory), a root that does not exist has no results
+     */
+    public <T> List<T> walk(Path root, TreeVisitor<T> visitor) throws IOException {
+        Parameters.validateMandatoryArgs(root, "root");
+        Parameters.validateMandatoryArgs(visitor, "visitor");
+
+        List<T> results = new ArrayList<>();
+        if(Files.exists(root, LinkOption.NOFOLLOW_LINKS) == false) {
+            return results;
+        }
+
+        if(parallelism == 1) {
+            Files.walkFileTree(root, new VisitorAdapter<>(visitor, results));
+            return results;
+        }
+
+        BasicFileAttributes attrs = Files.readAttributes(root, BasicFileAttributes.class, LinkOption.NOFOLLOW_LINKS);
+        if(attrs.isDirectory() == false) {
+            visitor.visitFile(root, attrs, results);
+            return results;
+        }
+
+        if(visitor.preVisitDirectory(root, attrs, results) == false) {
+            return results;
+        }
+
+        if(ForkJoinTask.inForkJoinPool()) {
+            try {
+                results.addAll(new DirectoryTask<>(root, visitor).invoke());
+                return results;
+            } catch(UncheckedIOException e) {
+                throw e.getCause();
+            }
+        }
+
+        ForkJoinPool pool = new ForkJoinPool(parallelism);
+        try {
+            results.addAll(pool.invoke(new DirectoryTask<>(root, visitor)));
+            return results;
+        } catch(UncheckedIOException e) {
+            throw e.getCause();
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    private static class VisitorAdapter<T> extends SimpleFileVisitor<Path> {
+        private TreeVisitor<T> visitor;
+        private List<T>        results;
+
+        public VisitorAdapter(TreeVisitor<T> visitor, List<T> results) {
+            this.visitor = visitor;
+            this.results = results;
+        }
+
+        @Override
+        public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) throws IOException {
+            if(visitor.preVisitDirectory(dir, attrs, results)) {
+                return FileVisitResult.CONTINUE;
+            }
+            return FileVisitResult.SKIP_SUBTREE;
+        }
+
+        @Override
+        public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
+            visitor.visitFile(file, attrs, results);
+            return FileVisitResult.CONTINUE;
+        }
+
+        /**
+         * walkFileTree reports a directory it can't open here, without calling preVisitDirectory or
+         * postVisitDirectory, so the directory is offered to the visitor as it is in a parallel walk
+         */
+        @Override
+        public FileVisitResult visitFileFailed(Path file, IOException exception) throws IOException {
+            BasicFileAttributes attrs;
+            try {
+                attrs = Files.readAttributes(file, BasicFileAttributes.class, LinkOption.NOFOLLOW_LINKS);
+            } catch(IOException e) {
+                attrs = null;
+            }
+
+            if(attrs == null || attrs.isDirectory() == false) {
+                visitor.visitFileFailed(file, exception, results);
+            } else if(visitor.preVisitDirectory(file, attrs, results)) {
+                visitor.visitFileFailed(file, exception, results);
+                visitor.postVisitDirectory(file, results);
+            }
+            return FileVisitResult.CONTINUE;
+        }
+
+        @Override
+        public FileVisitResult postVisitDirectory(Path dir, IOException exception) throws IOException {
+            if(exception != null) {
+                visitor.visitFileFailed(dir, exception, results);
+            }
+            visitor.postVisitDirectory(dir, results);
+            return FileVisitResult.CONTINUE;
+        }
+    }
+
+    /**
+     * Streams the entries of a directory (that has already been accepted by preVisitDirectory).
+     * Sub directories are forked, files are collected into batches which are forked once full,
+     * the results of each part are then joined in the order the entries were listed.
+     */
+    private static class DirectoryTask<T> extends RecursiveTask<List<T>> {
+        private static final long serialVersionUID = 1L;
+
+        private Path           dir;
+        private TreeVisitor<T> visitor;
+
+        public DirectoryTask(Path dir, TreeVisitor<T> visitor) {
+            this.dir = dir;
+            this.visitor = visitor;
+        }
+
+        @Override
+        protected List<T> compute() {
+            try {
+                List<ForkJoinTask<List<T>>> parts = new ArrayList<>();
+                List<T> results = new ArrayList<>();
+                try(DirectoryStream<Path> stream = Files.newDirectoryStream(dir)) {
+                    FileBatchTask<T> batch = new FileBatchTask<>(visitor);
+                    for(Path entry: stream) {
+                        BasicFileAttributes attrs;
+                        try {
+                            attrs = Files.readAttributes(entry, BasicFileAttributes.class, LinkOption.NOFOLLOW_LINKS);
+                        } catch(IOException e) {
+                            attrs = null;
+                            batch.addFailure(entry, e);
+                        }
+
+                        if(attrs != null && attrs.isDirectory()) {
+                            // keep the files listed before this directory ahead of it in the results
+                            if(batch.isEmpty() == false) {
+                                parts.add(batch.fork());
+                                batch = new FileBatchTask<>(visitor);
+                            }
+
+                            List<T> dirResults = new ArrayList<>();
+                            boolean walkDir = visitor.preVisitDirectory(entry, attrs, dirResults);
+                            parts.add(new CompletedTask<>(dirResults));
+                            if(walkDir) {
+                                parts.add(new DirectoryTask<>(entry, visitor).fork());
+                            }
+                            continue;
+                        }
+
+                        if(attrs != null) {
+                            batch.add(entry, attrs);
+                        }
+                        if(batch.isFull()) {
+                            parts.add(batch.fork());
+                            batch = new FileBatchTask<>(visitor);
+                        }
+                    }
+
+                    if(batch.isEmpty() == false) {
+                        parts.add(new CompletedTask<>(batch.compute()));
+                    }
+                } catch(IOException e) {
+                    visitor.visitFileFailed(dir, e, results);
+                }
+
+                List<T> joined = new ArrayList<>();
+                for(ForkJoinTask<List<T>> part: parts) {
+                    joined.addAll(part.join());
+                }
+                joined.addAll(results);
+
+                visitor.postVisitDirectory(dir, joined);
+                return joined;
+            } catch(IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+    }
+
+    private static class FileBatchTask<T> extends RecursiveTask<List<T>> {
+        private static final long serialVersionUID = 1L;
+
+        private TreeVisitor<T>        visitor;
+        private Path[]                paths;
+        private BasicFileAttributes[] attributes;   // null attributes means failed
+        private IOException[]         failures;
+        private int                   size;
+
+        public FileBatchTask(TreeVisitor<T> visitor) {
+            this.visitor = visitor;
+            paths = new Path[FILE_BATCH_SIZE];
+            attributes = new BasicFileAttributes[FILE_BATCH_SIZE];
+            failures = new IOException[FILE_BATCH_SIZE];
+        }
+
+        public void add(Path path, BasicFileAttributes attrs) {
+            paths[size] = path;
+            attributes[size] = attrs;
+            size++;
+        }
+
+        public void addFailure(Path path, IOException failure) {
+            paths[size] = path;
+            failures[size] = failure;
+            size++;
+        }
+
+        public boolean isFull()     { return size == paths.length; }
+        public boolean isEmpty()    { return size == 0; }
+
+        @Override
+        protected List<T> compute() {
+            List<T> results = new ArrayList<>();
+            try {
+                for(int index = 0; index < size; index++) {
+                    if(failures[index] != null) {
+                        visitor.visitFileFailed(paths[index], failures[index], results);
+                    } else {
+                        visitor.visitFile(paths[index], attributes[index], results);
+                    }
+                }
+            } catch(IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            return results;
+        }
+    }
+
+    /**
+     * Results that are already known, used to keep them in their place in the join order
+     */
+    private static class CompletedTask<T> extends RecursiveTask<List<T>> {
+        private static final long serialVersionUID = 1L;
+
+        private List<T> results;
+
+        public CompletedTask(List<T> results) {
+            this.results = results;
+            complete(results);
+        }
+
+        @Override
+        protected List<T> compute() {
+            return results;
+        }
+    }
+}
@@ -0,0 +1,227 @@
+package uk.gov.dwp.carersallowance.utils;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.text.ParseException;
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Values loaded from files, kept for as long as the file is unchanged.  A file is unchanged if
+ * its size, last modified time and file key (inode) are the same, it is checked (stat'd) on
+ * every get, so an edit is always seen.  A missing file is a valid state, the loader decides
+ * what its value is.
+ *
+ * Files modified in the last couple of seconds are not cached, as a second write within the
+ * file system's timestamp granularity would not be noticed.
+ *
+ * The least recently used entries are dropped once there are more than maxEntries, a quarter
+ * of them at a time.  Safe to use from multiple threads, values must be too (they are shared by
+ * every caller).  There is no lock around the cache, so threads asking for different files don't
+ * wait for each other.  Threads asking for the same unchanged file at the same time wait for a
+ * single load rather than each loading it.
+ */
+public class FileStampCache<V> {
+    private static final long SETTLE_NANOS = TimeUnit.SECONDS.toNanos(2);
+
+    public interface Loader<V> {
+        V load(File file) throws IOException, ParseException;
+    }
+
+    private static class Stamp {
+        public long   size;
+        public long   modified;     // nanoseconds, -1 if the file is missing
+        public Object fileKey;
+
+        public Stamp(long size, long modified, Object fileKey) {
+            this.size = size;
+            this.modified = modified;
+            this.fileKey = fileKey;
+        }
+
+        public boolean isSettled() {
+            return modified < 0 || TimeUnit.MILLISECONDS.toNanos(System.currentTimeMillis()) - modified > SETTLE_NANOS;
+        }
+
+        @Override
+        public boolean equals(Object other) {
+            if(other instanceof Stamp == false) {
+                return false;
+            }
+            Stamp stamp = (Stamp)other;
+            return size == stamp.size && modified == stamp.modified
+                && (fileKey == null ? stamp.fileKey == null : fileKey.equals(stamp.fileKey));
+        }
+
+        @Override
+        public int hashCode() {
+            return (int)(size ^ modified);
+        }
+    }
+
+    private static class Cached<V> {
+        public Stamp         stamp;
+        public FutureTask<V> value;     // done once the first caller has loaded it
+        public volatile long used;      // System.nanoTime() of the last get
+
+        public Cached(Stamp stamp, FutureTask<V> value) {
+            this.stamp = stamp;
+            this.value = value;
+            this.used = System.nanoTime();
+        }
+    }
+
+    private static final Comparator<Map.Entry<String, Long>> LEAST_RECENTLY_USED = new Comparator<Map.Entry<String, Long>>() {
+        @Override
+        public int compare(Map.Entry<String, Long> lhs, Map.Entry<String, Long> rhs) {
+            return Long.compare(lhs.getValue(), rhs.getValue());
+        }
+    };
+
+    private int                              maxEntries;
+    private ConcurrentMap<String, Cached<V>> entries;
+    private AtomicBoolean                    evicting;      // one thread evicts, the others carry on
+
+    public FileStampCache(int maxEntries) {
+        if(maxEntries < 1) {
+            throw new IllegalArgumentException("maxEntries must be 1 or more, not: " + maxEntries);
+        }
+
+        this.maxEntries = maxEntries;
+        entries = new ConcurrentHashMap<>();
+        evicting = new AtomicBoolean();
+    }
+
+    /**
+     * @return the value for file, loading it if it isn't cached or has changed
+     */
+    public V get(File file, Loader<V> loader) throws IOException, ParseException {
+        Parameters.validateMandatoryArgs(file, "file");
+        return get(file.getAbsolutePath(), file, loader);
+    }
+
+    /**
+     * @param key identifies the value, for when the same file gives different values (e.g. depending
+     *            on where it is used), it must include the file's path
+     */
+    public V get(String key, File file, Loader<V> loader) throws IOException, ParseException {
+        Parameters.validateMandatoryArgs(key, "key");
+        Parameters.validateMandatoryArgs(file, "file");
+        Parameters.validateMandatoryArgs(loader, "loader");
+
+        Stamp stamp = stamp(file);
+        if(stamp.isSettled() == false) {
+            return loader.load(file);
+        }
+
+        Cached<V> cached = entries.get(key);
+        boolean loading = false;
+        while(cached == null || cached.stamp.equals(stamp) == false) {
+            Cached<V> created = new Cached<V>(stamp, new FutureTask<V>(new LoadTask<V>(loader, file)));
+            if(cached == null ? entries.putIfAbsent(key, created) == null : entries.replace(key, cached, created)) {
+                cached = created;
+                loading = true;
+                evictIfFull();
+            } else {
+                cached = entries.get(key);      // someone else got there first
+            }
+        }
+        cached.used = System.nanoTime();
+
+        // anyone else after the same key waits for this load
+        if(loading) {
+            cached.value.run();
+        }
+        try {
+            return cached.value.get();
+        } catch(ExecutionException e) {
+            entries.remove(key, cached);    // so the next get tries again
+            Throwable cause = e.getCause();
+            if(cause instanceof IOException) {
+                throw (IOException)cause;
+            } else if(cause instanceof ParseException) {
+                throw (ParseException)cause;
+            } else if(cause instanceof RuntimeException) {
+                throw (RuntimeException)cause;
+            } else if(cause instanceof Error) {
+                throw (Error)cause;
+            }
+            throw new IOException(cause);
+        } catch(InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted waiting for: " + file.getAbsolutePath());
+        }
+    }
+
+    private static class LoadTask<V> implements Callable<V> {
+        private Loader<V> loader;
+        private File      file;
+
+        public LoadTask(Loader<V> loader, File file) {
+            this.loader = loader;
+            this.file = file;
+        }
+
+        @Override
+        public V call() throws IOException, ParseException {
+            return loader.load(file);
+        }
+    }
+
+    /**
+     * Drop the least recently used quarter once there are too many entries, entries used while
+     * this is going on may be dropped too, they are just loaded again
+     */
+    private void evictIfFull() {
+        if(entries.size() <= maxEntries || evicting.compareAndSet(false, true) == false) {
+            return;
+        }
+
+        try {
+            List<Map.Entry<String, Long>> used = new ArrayList<>();
+            for(Map.Entry<String, Cached<V>> entry: entries.entrySet()) {
+                used.add(new AbstractMap.SimpleEntry<>(entry.getKey(), entry.getValue().used));
+            }
+            Collections.sort(used, LEAST_RECENTLY_USED);
+
+            int keep = maxEntries - maxEntries / 4;
+            for(int index = 0; index < used.size() - keep; index++) {
+                entries.remove(used.get(index).getKey());
+            }
+        } finally {
+            evicting.set(false);
+        }
+    }
+
+    public int size() {
+        return entries.size();
+    }
+
+    public void clear() {
+        entries.clear();
+    }
+
+    private static Stamp stamp(File file) throws IOException {
+        try {
+            BasicFileAttributes attrs = Files.readAttributes(file.toPath(), BasicFileAttributes.class);
+            return new Stamp(attrs.size(), attrs.lastModifiedTime().to(TimeUnit.NANOSECONDS), attrs.fileKey());
+        } catch(NoSuchFileException e) {
+            return new Stamp(-1, -1, null);
+        }
+    }
+}
@@ -0,0 +1,105 @@
+package uk.gov.dwp.carersallowance.sensitiveinfo;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class BatchScanTest {
+    private static final byte[] KEYSTORE = {(byte)0xfe, (byte)0xed, (byte)0xfe, (byte)0xed, 0, 0, 0, 2};
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private File root;
+
+    @Before
+    public void createRepositories() throws IOException {
+        root = folder.newFolder("fleet");
+        new File(root, "alpha/.git").mkdirs();
+        FileUtils.writeByteArrayToFile(new File(root, "alpha/keys/first.jks"), KEYSTORE);
+        FileUtils.writeByteArrayToFile(new File(root, "alpha/src/deep/er/second.jks"), KEYSTORE);
+        new File(root, "alpha/vendor/nested/.git").mkdirs();    // inside alpha, so not a repository of its own
+
+        new File(root, "beta/.git").mkdirs();
+        FileUtils.writeStringToFile(new File(root, "beta/README"), "nothing to see", StandardCharsets.UTF_8);
+
+        FileUtils.writeStringToFile(new File(root, "team/gamma/.git"), "gitdir: ../../alpha/.git\n", StandardCharsets.UTF_8);
+        FileUtils.writeByteArrayToFile(new File(root, "team/gamma/third.jks"), KEYSTORE);
+
+        FileUtils.writeByteArrayToFile(new File(root, "notes/not-a-repository.jks"), KEYSTORE);
+    }
+
+    @Test
+    public void testFindRepositories() throws IOException {
+        Map<String, File> repositories = BatchScan.findRepositories(root);
+        Assert.assertEquals(Arrays.asList("alpha", "beta", "team/gamma"), new ArrayList<>(repositories.keySet()));
+        Assert.assertEquals(new File(root, "team/gamma"), repositories.get("team/gamma"));
+
+        Assert.assertEquals(Arrays.asList("."), new ArrayList<>(BatchScan.findRepositories(new File(root, "beta")).keySet()));
+    }
+
+    @Test
+    public void testReadRepositoryList() throws IOException {
+        File list = new File(root, "repositories.txt");
+        FileUtils.writeStringToFile(list, "# release\nbeta\n\n  team/gamma  \n", StandardCharsets.UTF_8);
+
+        Map<String, File> repositories = BatchScan.readRepositoryList(list);
+        Assert.assertEquals(Arrays.asList("beta", "team/gamma"), new ArrayList<>(repositories.keySet()));
+        Assert.assertEquals(new File(root, "team/gamma"), repositories.get("team/gamma"));
+    }
+
+    @Test
+    public void testResultsPerRepository() throws IOException {
+        for(String config: Arrays.asList("{\"KeyStoreScanner\": {}}", "{\"KeyStoreScanner\": {\"parallelism\": 4}}")) {
+            File configFile = new File(folder.getRoot(), "config.json");
+            FileUtils.writeStringToFile(configFile, config, StandardCharsets.UTF_8);
+            File resultsDir = new File(folder.getRoot(), "results");
+            FileUtils.deleteDirectory(resultsDir);
+
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            ByteArrayOutputStream err = new ByteArrayOutputStream();
+            int exitCode = ScannerFactory.run(new String[] {"--batch", configFile.getPath(), "--results", resultsDir.getPath(), "--threads", "2", root.getPath()},
+                                              new PrintStream(out, true), new PrintStream(err, true));
+            Assert.assertEquals(err.toString(), 1, exitCode);
+
+            String output = out.toString();
+            Assert.assertTrue(output, output.contains("Searching for sensitive information in 3 repositories"));
+            Assert.assertTrue(output, output.indexOf("Repository: alpha") < output.indexOf("Repository: team/gamma"));
+            Assert.assertFalse(output, output.contains("Repository: beta"));
+            Assert.assertFalse(output, output.contains("not-a-repository"));
+
+            List<String> alpha = FileUtils.readLines(new File(resultsDir, "alpha.txt"), StandardCharsets.UTF_8);
+            Collections.sort(alpha);     // a parallel walk finds them in any order
+            Assert.assertEquals(2, alpha.size());
+            Assert.assertTrue(alpha.get(0), alpha.get(0).endsWith("first.jks"));
+            Assert.assertTrue(alpha.get(1), alpha.get(1).endsWith("second.jks"));
+            Assert.assertEquals(Arrays.asList("No sensitive information found"),
+                                FileUtils.readLines(new File(resultsDir, "beta.txt"), StandardCharsets.UTF_8));
+            Assert.assertEquals(1, FileUtils.readLines(new File(resultsDir, "team/gamma.txt"), StandardCharsets.UTF_8).size());
+        }
+    }
+
+    @Test
+    public void testUsage() {
+        ByteArrayOutputStream err = new ByteArrayOutputStream();
+        PrintStream out = new PrintStream(new ByteArrayOutputStream(), true);
+        Assert.assertEquals(5, ScannerFactory.run(new String[] {"--batch"}, out, new PrintStream(err, true)));
+        Assert.assertTrue(err.toString(), err.toString().startsWith("Usage:"));
+
+        Assert.assertEquals(2, ScannerFactory.run(new String[] {"--batch", new File(root, "missing.json").getPath(), root.getPath()}, out, out));
+    }
+}
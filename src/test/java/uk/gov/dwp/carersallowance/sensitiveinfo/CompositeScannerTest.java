@@ -0,0 +1,227 @@
+package uk.gov.dwp.carersallowance.sensitiveinfo;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+public class CompositeScannerTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void testConcurrentResultsInScannerOrder() throws IOException {
+        // the first scanner finishes last
+        CountDownLatch othersDone = new CountDownLatch(2);
+        List<SensitiveInfoScanner> scanners = Arrays.<SensitiveInfoScanner>asList(
+                new FixedScanner("first", othersDone, null),
+                new FixedScanner("second", null, othersDone),
+                new FixedScanner("third", null, othersDone));
+
+        CompositeScanner scanner = new CompositeScanner(scanners, 3);
+        Assert.assertEquals(Arrays.asList("first", "second", "third"), messages(scanner.scan(new File("."))));
+        Assert.assertEquals(Arrays.asList("1: FixedScanner", "2: FixedScanner", "3: FixedScanner"), new ArrayList<>(scanner.getTimings().keySet()));
+    }
+
+    @Test
+    public void testFailureStopsScan() throws IOException {
+        CountDownLatch never = new CountDownLatch(1);
+        List<SensitiveInfoScanner> scanners = Arrays.<SensitiveInfoScanner>asList(
+                new FixedScanner("slow", never, null),
+                new FailingScanner());
+
+        long start = System.nanoTime();
+        try {
+            new CompositeScanner(scanners, 2).scan(new File("."));
+            Assert.fail("expected IOException");
+        } catch(IOException e) {
+            Assert.assertEquals("failed", e.getMessage());
+        }
+        Assert.assertTrue(System.nanoTime() - start < TimeUnit.SECONDS.toNanos(5));
+    }
+
+    @Test
+    public void testFailureCancelsSharedWalk() throws IOException, InterruptedException {
+        for(int dir = 0; dir < 20; dir++) {
+            new File(folder.getRoot(), "dir" + dir + "/sub").mkdirs();
+        }
+
+        for(int parallelism: new int[] {1, 4}) {
+            CountDownLatch walkStarted = new CountDownLatch(1);
+            BlockingFileScanner walk = new BlockingFileScanner(walkStarted, parallelism);
+            List<SensitiveInfoScanner> scanners = Arrays.<SensitiveInfoScanner>asList(walk, new FailingScanner(walkStarted));
+
+            try {
+                new CompositeScanner(scanners, 2).scan(folder.getRoot());
+                Assert.fail("expected IOException");
+            } catch(IOException e) {
+                Assert.assertEquals("failed", e.getMessage());
+            }
+
+            // the walk is held in the root until the scan has failed, then nothing below it is visited
+            Assert.assertTrue(walk.walkDone.await(10, TimeUnit.SECONDS));
+            Assert.assertEquals(1, walk.directories.get());
+            Assert.assertFalse(walk.finished.get());
+        }
+    }
+
+    @Test
+    public void testFromConfig() throws IOException {
+        String json = "{\"threads\": 2, \"scanners\": {"
+                + "\"SensitivePropertiesScanner\": {\"path\": \"missing.properties\", \"keys\": [\"password\"]},"
+                + "\"KeyStoreScanner\": {}}}";
+
+        CompositeScanner scanner = new CompositeScanner(new ObjectMapper().readTree(json));
+        Assert.assertEquals(2, scanner.getThreads());
+        Assert.assertEquals(2, scanner.getScanners().size());
+        Assert.assertTrue(scanner.getScanners().get(0) instanceof SensitivePropertiesScanner);
+        Assert.assertTrue(scanner.getScanners().get(1) instanceof KeyStoreScanner);
+    }
+
+    private static List<String> messages(List<SensitiveInformation> results) {
+        List<String> messages = new ArrayList<>();
+        for(SensitiveInformation result: results) {
+            messages.add(result.getMessage());
+        }
+        return messages;
+    }
+
+    private static class FixedScanner implements SensitiveInfoScanner {
+        private String         message;
+        private CountDownLatch waitFor;     // may be null
+        private CountDownLatch countDown;   // may be null
+
+        public FixedScanner(String message, CountDownLatch waitFor, CountDownLatch countDown) {
+            this.message = message;
+            this.waitFor = waitFor;
+            this.countDown = countDown;
+        }
+
+        @Override
+        public List<SensitiveInformation> scan(File baseDir) throws IOException {
+            try {
+                if(waitFor != null) {
+                    waitFor.await(30, TimeUnit.SECONDS);
+                }
+            } catch(InterruptedException e) {
+                throw new IOException(e);
+            }
+
+            if(countDown != null) {
+                countDown.countDown();
+            }
+            return Arrays.asList(new SensitiveInformation(message));
+        }
+    }
+
+    private static class FailingScanner implements SensitiveInfoScanner {
+        private CountDownLatch waitFor;     // may be null
+
+        public FailingScanner() {
+            this(null);
+        }
+
+        public FailingScanner(CountDownLatch waitFor) {
+            this.waitFor = waitFor;
+        }
+
+        @Override
+        public List<SensitiveInformation> scan(File baseDir) throws IOException {
+            try {
+                if(waitFor != null) {
+                    waitFor.await(30, TimeUnit.SECONDS);
+                }
+            } catch(InterruptedException e) {
+                throw new IOException(e);
+            }
+            throw new IOException("failed");
+        }
+    }
+
+    /**
+     * Holds the walk in the root directory until the thread walking it is interrupted (i.e. the
+     * scan has been abandoned), counting the directories it is offered
+     */
+    private static class BlockingFileScanner implements FileScanner {
+        private CountDownLatch walkStarted;
+        private int            parallelism;
+        private AtomicInteger  directories = new AtomicInteger();
+        private AtomicBoolean  finished = new AtomicBoolean();
+        private CountDownLatch walkDone = new CountDownLatch(1);
+
+        public BlockingFileScanner(CountDownLatch walkStarted, int parallelism) {
+            this.walkStarted = walkStarted;
+            this.parallelism = parallelism;
+        }
+
+        @Override
+        public List<SensitiveInformation> scan(File baseDir) throws IOException {
+            return SharedTreeScan.scan(baseDir, Arrays.asList(this)).get(0);
+        }
+
+        @Override
+        public int getHeaderLength()    { return 0; }
+
+        @Override
+        public int getParallelism()     { return parallelism; }
+
+        @Override
+        public FileScan startScan(final File baseDir) {
+            return new FileScan() {
+                @Override
+                public boolean preVisitDirectory(Path dir, BasicFileAttributes attrs) {
+                    directories.incrementAndGet();
+                    if(dir.equals(baseDir.toPath())) {
+                        walkStarted.countDown();
+                        try {
+                            Thread.sleep(TimeUnit.SECONDS.toMillis(30));
+                        } catch(InterruptedException e) {
+                            // the scan has failed
+                        }
+                    }
+                    return true;
+                }
+
+                @Override
+                public void postVisitDirectory(Path dir) {
+                    if(dir.equals(baseDir.toPath())) {
+                        walkDone.countDown();
+                    }
+                }
+
+                @Override
+                public boolean acceptFile(Path file, BasicFileAttributes attrs, List<SensitiveInformation> results) {
+                    return false;
+                }
+
+                @Override
+                public void visitFile(Path file, BasicFileAttributes attrs, ByteBuffer header, List<SensitiveInformation> results) {
+                }
+
+                @Override
+                public void visitFileFailed(Path path, IOException exception, List<SensitiveInformation> results) {
+                }
+
+                @Override
+                public void finish() {
+                    finished.set(true);
+                }
+            };
+        }
+    }
+}
@@ -0,0 +1,170 @@
+package uk.gov.dwp.carersallowance.sensitiveinfo;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+public class KeyStoreScannerTest {
+    private static final byte[] KEYSTORE = {(byte)0xfe, (byte)0xed, (byte)0xfe, (byte)0xed, 0, 0, 0, 2};
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private String userHome;
+    private File   repo;
+
+    @Before
+    public void setUp() throws IOException {
+        // no global excludes
+        userHome = System.getProperty("user.home");
+        System.setProperty("user.home", folder.newFolder("home").getAbsolutePath());
+
+        repo = folder.newFolder("repo");
+        FileUtils.writeStringToFile(new File(repo, ".gitignore"), "build/\n", StandardCharsets.UTF_8);
+        FileUtils.writeStringToFile(new File(repo, ".git/HEAD"), "ref: refs/heads/main\n", StandardCharsets.UTF_8);
+        FileUtils.writeByteArrayToFile(new File(repo, ".git/objects/ab/cdef"), KEYSTORE);
+        FileUtils.writeByteArrayToFile(new File(repo, "build/ignored.jks"), KEYSTORE);
+        FileUtils.writeByteArrayToFile(new File(repo, "src/main/resources/tracked.jks"), KEYSTORE);
+    }
+
+    @After
+    public void tearDown() {
+        System.setProperty("user.home", userHome);
+    }
+
+    @Test
+    public void testGitIgnorePrunesIgnoredDirectories() throws IOException {
+        for(String config: Arrays.asList("{\"gitIgnore\": true}", "{\"gitIgnore\": true, \"parallelism\": 4}")) {
+            ProbedScanner scanner = new ProbedScanner(new KeyStoreScanner(new ObjectMapper().readTree(config)));
+            List<SensitiveInformation> results = SharedTreeScan.scan(repo, Collections.singletonList(scanner)).get(0);
+
+            Assert.assertEquals(config, Arrays.asList("Found sensitive file(Java KeyStore): " + new File(repo, "src/main/resources/tracked.jks").getAbsolutePath()),
+                                messages(results));
+
+            // .git and build are offered and turned down, so nothing below them is ever listed
+            Assert.assertTrue(config, scanner.seen.contains(".git"));
+            Assert.assertTrue(config, scanner.seen.contains("build"));
+            for(String path: scanner.seen) {
+                Assert.assertFalse(config + ": " + path, path.startsWith(".git/") || path.startsWith("build/"));
+            }
+        }
+    }
+
+    @Test
+    public void testParallelScanMatchesSequential() throws IOException {
+        // enough files in a directory to be split into several batches, and keystores at every level
+        File tree = folder.newFolder("tree");
+        for(int dir = 0; dir < 6; dir++) {
+            for(int file = 0; file < 150; file++) {
+                String path = "dir" + dir + "/sub" + (file % 3) + "/file" + file;
+                if(file % 7 == 0) {
+                    FileUtils.writeByteArrayToFile(new File(tree, path + ".jks"), KEYSTORE);
+                } else {
+                    FileUtils.writeStringToFile(new File(tree, path + ".txt"), "not a keystore " + file, StandardCharsets.UTF_8);
+                }
+            }
+            FileUtils.writeByteArrayToFile(new File(tree, "dir" + dir + ".jks"), KEYSTORE);
+        }
+
+        List<String> sequential = messages(new KeyStoreScanner(new ObjectMapper().readTree("{\"parallelism\": 1}")).scan(tree));
+        Assert.assertEquals(6 * (150 / 7 + 1) + 6, sequential.size());
+        for(int parallelism: new int[] {2, 4, 8}) {
+            KeyStoreScanner scanner = new KeyStoreScanner(new ObjectMapper().readTree("{\"parallelism\": " + parallelism + "}"));
+            Assert.assertEquals("parallelism " + parallelism, sequential, messages(scanner.scan(tree)));
+        }
+    }
+
+    private static List<String> messages(List<SensitiveInformation> results) {
+        List<String> messages = new ArrayList<>();
+        for(SensitiveInformation result: results) {
+            messages.add(result.getMessage());
+        }
+        return messages;
+    }
+
+    /**
+     * Records every path the walk offers the scanner, relative to the base directory
+     */
+    private static class ProbedScanner implements FileScanner {
+        private KeyStoreScanner scanner;
+        private Set<String>     seen = Collections.synchronizedSet(new TreeSet<String>());
+
+        public ProbedScanner(KeyStoreScanner scanner) {
+            this.scanner = scanner;
+        }
+
+        @Override
+        public int getHeaderLength()    { return scanner.getHeaderLength(); }
+
+        @Override
+        public int getParallelism()     { return scanner.getParallelism(); }
+
+        @Override
+        public List<SensitiveInformation> scan(File baseDir) throws IOException {
+            return SharedTreeScan.scan(baseDir, Arrays.asList(this)).get(0);
+        }
+
+        @Override
+        public FileScan startScan(File baseDir) throws IOException {
+            final Path root = baseDir.toPath();
+            final FileScan scan = scanner.startScan(baseDir);
+            return new FileScan() {
+                @Override
+                public boolean preVisitDirectory(Path dir, BasicFileAttributes attrs) {
+                    seen.add(relative(dir));
+                    return scan.preVisitDirectory(dir, attrs);
+                }
+
+                @Override
+                public void postVisitDirectory(Path dir) {
+                    scan.postVisitDirectory(dir);
+                }
+
+                @Override
+                public boolean acceptFile(Path file, BasicFileAttributes attrs, List<SensitiveInformation> results) {
+                    seen.add(relative(file));
+                    return scan.acceptFile(file, attrs, results);
+                }
+
+                @Override
+                public void visitFile(Path file, BasicFileAttributes attrs, ByteBuffer header, List<SensitiveInformation> results) {
+                    scan.visitFile(file, attrs, header, results);
+                }
+
+                @Override
+                public void visitFileFailed(Path path, IOException exception, List<SensitiveInformation> results) {
+                    seen.add(relative(path));
+                    scan.visitFileFailed(path, exception, results);
+                }
+
+                @Override
+                public void finish() throws IOException {
+                    scan.finish();
+                }
+
+                private String relative(Path path) {
+                    return root.relativize(path).toString().replace(File.separatorChar, '/');
+                }
+            };
+        }
+    }
+}
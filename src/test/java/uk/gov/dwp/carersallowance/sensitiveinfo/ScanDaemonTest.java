@@ -0,0 +1,130 @@
+package uk.gov.dwp.carersallowance.sensitiveinfo;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class ScanDaemonTest {
+    private static final byte[] KEYSTORE = {(byte)0xfe, (byte)0xed, (byte)0xfe, (byte)0xed, 0, 0, 0, 2};
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private ScanDaemon daemon;
+    private File       stateFile;
+
+    @Before
+    public void startDaemon() throws IOException {
+        stateFile = new File(folder.getRoot(), "state/daemon");
+        daemon = new ScanDaemon(0, stateFile, 2);
+        Thread thread = new Thread() {
+            @Override
+            public void run() {
+                try {
+                    daemon.serve();
+                } catch(IOException e) {
+                    // the test fails on the client side
+                }
+            }
+        };
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    @After
+    public void stopDaemon() throws IOException {
+        daemon.close();
+    }
+
+    @Test
+    public void testStateFile() throws IOException {
+        String state = FileUtils.readFileToString(stateFile, StandardCharsets.UTF_8);
+        Assert.assertEquals(daemon.getPort() + " " + daemon.getToken() + "\n", state);
+    }
+
+    @Test
+    public void testRelativeConfigsAndExitCode() throws IOException {
+        FileUtils.writeStringToFile(new File(folder.getRoot(), "app/config.json"), "{\"KeyStoreScanner\":{}}", StandardCharsets.UTF_8);
+        File keyStore = new File(folder.getRoot(), "app/keystore.jks");
+        FileUtils.writeByteArrayToFile(keyStore, KEYSTORE);
+
+        // twice, the second time the scanners are already loaded
+        for(int run = 0; run < 2; run++) {
+            List<String> lines = request(daemon.getToken(), folder.getRoot().getAbsolutePath(), "app/config.json");
+            Assert.assertEquals("1 Searching for sensitive information", lines.get(0));
+            Assert.assertEquals("1 Config: app/config.json", lines.get(1));
+            Assert.assertEquals("1 \tFound sensitive file(Java KeyStore): " + keyStore.getAbsolutePath(), lines.get(2));
+            Assert.assertEquals("exit 1", lines.get(lines.size() - 1));
+        }
+    }
+
+    @Test
+    public void testMissingConfig() throws IOException {
+        List<String> lines = request(daemon.getToken(), folder.getRoot().getAbsolutePath(), "missing.json");
+        Assert.assertEquals("2 Unable to locate configuration file: " + new File(folder.getRoot(), "missing.json").getAbsolutePath(), lines.get(1));
+        Assert.assertEquals("exit 2", lines.get(lines.size() - 1));
+    }
+
+    @Test
+    public void testWrongToken() throws IOException {
+        List<String> lines = request("not the token", folder.getRoot().getAbsolutePath(), "missing.json");
+        Assert.assertEquals(2, lines.size());
+        Assert.assertTrue(lines.get(0).startsWith("2 "));
+        Assert.assertEquals("exit 5", lines.get(1));
+    }
+
+    @Test(timeout = 30000)
+    public void testWatchRefused() throws IOException {
+        FileUtils.writeStringToFile(new File(folder.getRoot(), "config.json"), "{\"KeyStoreScanner\":{}}", StandardCharsets.UTF_8);
+
+        // more than there are request threads, each would otherwise never return
+        for(int run = 0; run < 3; run++) {
+            List<String> lines = request(daemon.getToken(), folder.getRoot().getAbsolutePath(), "--watch", "config.json");
+            Assert.assertEquals(2, lines.size());
+            Assert.assertEquals("2 --watch is not supported by the scan daemon, run the jar instead", lines.get(0));
+            Assert.assertEquals("exit 5", lines.get(1));
+        }
+
+        List<String> lines = request(daemon.getToken(), folder.getRoot().getAbsolutePath(), "config.json");
+        Assert.assertEquals("exit 0", lines.get(lines.size() - 1));
+    }
+
+    private List<String> request(String token, String workingDir, String... args) throws IOException {
+        try(Socket socket = new Socket(InetAddress.getLoopbackAddress(), daemon.getPort())) {
+            StringBuilder request = new StringBuilder();
+            request.append(ScanDaemon.PROTOCOL).append(" ").append(token).append("\n");
+            request.append(workingDir).append("\n");
+            for(String arg: args) {
+                request.append(arg).append("\n");
+            }
+            request.append("\n");
+
+            OutputStream output = socket.getOutputStream();
+            output.write(request.toString().getBytes(StandardCharsets.UTF_8));
+            output.flush();
+
+            List<String> lines = new ArrayList<>();
+            BufferedReader reader = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+            String line;
+            while((line = reader.readLine()) != null) {
+                lines.add(line);
+            }
+            return lines;
+        }
+    }
+}
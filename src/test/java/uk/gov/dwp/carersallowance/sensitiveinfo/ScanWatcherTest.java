@@ -0,0 +1,150 @@
+package uk.gov.dwp.carersallowance.sensitiveinfo;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+public class ScanWatcherTest {
+    private static final byte[] KEYSTORE = {(byte)0xfe, (byte)0xed, (byte)0xfe, (byte)0xed, 0, 0, 0, 2};
+    private static final long   TIMEOUT  = 10000;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private ScanWatcher  watcher;
+    private List<String> changes = Collections.synchronizedList(new ArrayList<String>());
+
+    @Before
+    public void createTree() throws IOException {
+        new File(folder.getRoot(), ".git").mkdir();     // a repository with nothing added
+        FileUtils.writeByteArrayToFile(new File(folder.getRoot(), "keys/first.jks"), KEYSTORE);
+        FileUtils.writeStringToFile(new File(folder.getRoot(), "README"), "nothing to see", StandardCharsets.UTF_8);
+    }
+
+    @After
+    public void stopWatching() throws IOException {
+        if(watcher != null) {
+            watcher.close();
+        }
+    }
+
+    @Test
+    public void testFoundAndFixed() throws Exception {
+        startWatching("{}");
+        waitFor(Arrays.asList("keys/first.jks"));
+
+        FileUtils.writeByteArrayToFile(new File(folder.getRoot(), "keys/second.jks"), KEYSTORE);
+        waitFor(Arrays.asList("keys/first.jks", "keys/second.jks"));
+
+        FileUtils.writeStringToFile(new File(folder.getRoot(), "keys/first.jks"), "not a keystore any more", StandardCharsets.UTF_8);
+        waitFor(Arrays.asList("keys/second.jks"));
+        waitForChange("fixed " + new File(folder.getRoot(), "keys/first.jks").getAbsolutePath());
+    }
+
+    @Test
+    public void testNewAndDeletedDirectories() throws Exception {
+        startWatching("{}");
+        waitFor(Arrays.asList("keys/first.jks"));
+
+        FileUtils.writeByteArrayToFile(new File(folder.getRoot(), "new/deep/third.jks"), KEYSTORE);
+        waitFor(Arrays.asList("keys/first.jks", "new/deep/third.jks"));
+
+        // the new directories are watched too
+        FileUtils.writeByteArrayToFile(new File(folder.getRoot(), "new/deep/fourth.jks"), KEYSTORE);
+        waitFor(Arrays.asList("keys/first.jks", "new/deep/fourth.jks", "new/deep/third.jks"));
+
+        FileUtils.deleteDirectory(new File(folder.getRoot(), "new"));
+        waitFor(Arrays.asList("keys/first.jks"));
+    }
+
+    @Test
+    public void testGitIgnoreChanged() throws Exception {
+        startWatching("{\"gitIndex\": true}");
+        waitFor(Arrays.asList("keys/first.jks"));
+
+        FileUtils.writeStringToFile(new File(folder.getRoot(), ".gitignore"), "keys\n", StandardCharsets.UTF_8);
+        waitFor(Collections.<String>emptyList());
+
+        FileUtils.writeStringToFile(new File(folder.getRoot(), ".gitignore"), "other\n", StandardCharsets.UTF_8);
+        waitFor(Arrays.asList("keys/first.jks"));
+    }
+
+    private void startWatching(String config) throws IOException {
+        KeyStoreScanner scanner = new KeyStoreScanner(new ObjectMapper().readTree(config));
+        watcher = new ScanWatcher(folder.getRoot(), Arrays.<SensitiveInfoScanner>asList(scanner), new ScanWatcher.Listener() {
+            @Override
+            public void findingsChanged(List<SensitiveInformation> found, List<SensitiveInformation> fixed) {
+                for(SensitiveInformation information: fixed) {
+                    changes.add("fixed " + path(information));
+                }
+                for(SensitiveInformation information: found) {
+                    changes.add("found " + path(information));
+                }
+            }
+        }, 20, 500);
+
+        Thread thread = new Thread() {
+            @Override
+            public void run() {
+                try {
+                    watcher.watch();
+                } catch(IOException e) {
+                    changes.add("failed " + e);
+                }
+            }
+        };
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    private static String path(SensitiveInformation information) {
+        String message = information.getMessage();
+        return message.substring(message.indexOf(": ") + 2);
+    }
+
+    /**
+     * The listener is told after the findings are updated, so wait for it too
+     */
+    private void waitForChange(String change) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + TIMEOUT;
+        while(changes.contains(change) == false && System.currentTimeMillis() < deadline) {
+            Thread.sleep(20);
+        }
+        Assert.assertTrue(changes.toString(), changes.contains(change));
+    }
+
+    /**
+     * Wait for the findings to be the files in paths (relative to the root, in path order)
+     */
+    private void waitFor(List<String> paths) throws InterruptedException {
+        List<String> expected = new ArrayList<>();
+        for(String path: paths) {
+            expected.add(new File(folder.getRoot(), path).getAbsolutePath());
+        }
+
+        long deadline = System.currentTimeMillis() + TIMEOUT;
+        List<String> actual;
+        do {
+            Thread.sleep(20);
+            actual = new ArrayList<>();
+            for(SensitiveInformation information: watcher.getFindings()) {
+                actual.add(path(information));
+            }
+        } while(actual.equals(expected) == false && System.currentTimeMillis() < deadline);
+        Assert.assertEquals(expected, actual);
+    }
+}
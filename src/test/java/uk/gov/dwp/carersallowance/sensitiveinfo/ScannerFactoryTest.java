@@ -0,0 +1,117 @@
+package uk.gov.dwp.carersallowance.sensitiveinfo;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class ScannerFactoryTest {
+    private static final byte[] KEYSTORE = {(byte)0xfe, (byte)0xed, (byte)0xfe, (byte)0xed, 0, 0, 0, 2};
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private ByteArrayOutputStream out = new ByteArrayOutputStream();
+    private ByteArrayOutputStream err = new ByteArrayOutputStream();
+
+    @Test
+    public void testSharedScanReportedForEachConfig() throws IOException {
+        File first = config("app/first.json", "{\"KeyStoreScanner\":{}}");
+        File second = config("app/second.json", "{\"KeyStoreScanner\":{}}");
+        File clean = config("clean/third.json", "{\"KeyStoreScanner\":{}}");
+        FileUtils.writeByteArrayToFile(new File(folder.getRoot(), "app/keystore.jks"), KEYSTORE);
+
+        Assert.assertEquals(1, run(first.getPath(), clean.getPath(), second.getPath()));
+
+        String expected = "Searching for sensitive information\n"
+                + "Config: " + first.getPath() + "\n"
+                + "\tFound sensitive file(Java KeyStore): " + new File(folder.getRoot(), "app/keystore.jks").getAbsolutePath() + "\n"
+                + "Config: " + second.getPath() + "\n"
+                + "\tFound sensitive file(Java KeyStore): " + new File(folder.getRoot(), "app/keystore.jks").getAbsolutePath() + "\n";
+        Assert.assertEquals(expected, output(out));
+    }
+
+    @Test
+    public void testFailFastReportsFirstFinding() throws IOException {
+        File config = config("app/config.json", "{\"KeyStoreScanner\":{}}");
+        FileUtils.writeByteArrayToFile(new File(folder.getRoot(), "app/one.jks"), KEYSTORE);
+        FileUtils.writeByteArrayToFile(new File(folder.getRoot(), "app/two.jks"), KEYSTORE);
+
+        Assert.assertEquals(1, run("--fail-fast", config.getPath()));
+        String[] lines = output(out).split("\n");
+        Assert.assertEquals(3, lines.length);
+        Assert.assertEquals("Config: " + config.getPath(), lines[1]);
+        Assert.assertTrue(lines[2].startsWith("\tFound sensitive file(Java KeyStore): "));
+    }
+
+    @Test
+    public void testNothingFound() throws IOException {
+        File clean = config("clean/config.json", "{\"KeyStoreScanner\":{}}");
+        Assert.assertEquals(0, run(clean.getPath()));
+        Assert.assertTrue(output(out).endsWith("No sensitive information found\n"));
+    }
+
+    @Test
+    public void testMissingConfig() throws IOException {
+        File clean = config("clean/config.json", "{\"KeyStoreScanner\":{}}");
+        Assert.assertEquals(2, run(clean.getPath(), new File(folder.getRoot(), "missing.json").getPath()));
+    }
+
+    @Test
+    public void testBadConfig() throws IOException {
+        File bad = config("bad/config.json", "{\"UnknownScanner\":{}}");
+        File clean = config("clean/config.json", "{\"KeyStoreScanner\":{}}");
+        Assert.assertEquals(4, run(bad.getPath(), clean.getPath()));
+        Assert.assertTrue(output(err).startsWith("Problems executing configuration: " + bad.getPath()));
+    }
+
+    @Test
+    public void testFailureOnlyFailsItsOwnConfig() throws IOException {
+        // the same directory, so both are scanned by the same group, the first can't read the git index
+        File broken = config("app/broken.json", "{\"KeyStoreScanner\":{\"gitIndex\": true}}");
+        File working = config("app/working.json", "{\"KeyStoreScanner\":{}}");
+        FileUtils.writeStringToFile(new File(folder.getRoot(), "app/.git/index"), "not an index", StandardCharsets.UTF_8);
+        FileUtils.writeByteArrayToFile(new File(folder.getRoot(), "app/keystore.jks"), KEYSTORE);
+
+        Assert.assertEquals(1, run(broken.getPath(), working.getPath()));
+
+        String expected = "Searching for sensitive information\n"
+                + "Config: " + working.getPath() + "\n"
+                + "\tFound sensitive file(Java KeyStore): " + new File(folder.getRoot(), "app/keystore.jks").getAbsolutePath() + "\n";
+        Assert.assertEquals(expected, output(out));
+        Assert.assertTrue(output(err), output(err).startsWith("Problems executing configuration: " + broken.getPath()));
+        Assert.assertFalse(output(err), output(err).contains(working.getPath()));
+    }
+
+    @Test
+    public void testMagicFilesRelativeToConfig() throws IOException {
+        // relative to app/, not the working directory
+        File config = config("app/config.json", "{\"KeyStoreScanner\":{\"magicFiles\": [\"config/private.magic\"]}}");
+        FileUtils.writeStringToFile(new File(folder.getRoot(), "app/config/private.magic"), "0\tstring\tSECRET\tPrivate secret\n", StandardCharsets.UTF_8);
+        FileUtils.writeStringToFile(new File(folder.getRoot(), "app/secret.txt"), "SECRET", StandardCharsets.UTF_8);
+
+        Assert.assertEquals(output(err), 1, run(config.getPath()));
+        Assert.assertTrue(output(out), output(out).contains("Found sensitive file(Private secret): " + new File(folder.getRoot(), "app/secret.txt").getAbsolutePath()));
+    }
+
+    private File config(String path, String json) throws IOException {
+        File file = new File(folder.getRoot(), path);
+        FileUtils.writeStringToFile(file, json, StandardCharsets.UTF_8);
+        return file;
+    }
+
+    private int run(String...args) {
+        return ScannerFactory.run(args, new PrintStream(out, true), new PrintStream(err, true));
+    }
+
+    private static String output(ByteArrayOutputStream stream) {
+        return new String(stream.toByteArray(), StandardCharsets.UTF_8).replace(System.lineSeparator(), "\n");
+    }
+}
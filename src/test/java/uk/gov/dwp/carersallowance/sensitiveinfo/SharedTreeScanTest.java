@@ -0,0 +1,183 @@
+package uk.gov.dwp.carersallowance.sensitiveinfo;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class SharedTreeScanTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Before
+    public void createTree() throws IOException {
+        FileUtils.writeStringToFile(new File(folder.getRoot(), "a/one.txt"), "first file", StandardCharsets.ISO_8859_1);
+        FileUtils.writeStringToFile(new File(folder.getRoot(), "a/two.txt"), "second file", StandardCharsets.ISO_8859_1);
+        FileUtils.writeStringToFile(new File(folder.getRoot(), "b/three.txt"), "third file", StandardCharsets.ISO_8859_1);
+    }
+
+    @Test
+    public void testEachScannerSeesItsOwnFiles() throws IOException {
+        HeaderScanner prefix = new HeaderScanner(5, 1, "b");
+        HeaderScanner longer = new HeaderScanner(8, 1, null);
+
+        List<List<SensitiveInformation>> results = SharedTreeScan.scan(folder.getRoot(), Arrays.asList(prefix, longer));
+        // directory listing order is up to the file system
+        Assert.assertEquals(Arrays.asList("one.txt=first", "two.txt=secon"), sorted(messages(results.get(0))));
+        Assert.assertEquals(Arrays.asList("one.txt=first fi", "three.txt=third fi", "two.txt=second f"), sorted(messages(results.get(1))));
+        Assert.assertTrue(prefix.finished);
+        Assert.assertTrue(longer.finished);
+    }
+
+    @Test
+    public void testParallelScanKeepsOrder() throws IOException {
+        List<List<SensitiveInformation>> sequential = SharedTreeScan.scan(folder.getRoot(),
+                Arrays.asList(new HeaderScanner(5, 1, "b"), new HeaderScanner(8, 1, null)));
+        List<List<SensitiveInformation>> parallel = SharedTreeScan.scan(folder.getRoot(),
+                Arrays.asList(new HeaderScanner(5, 4, "b"), new HeaderScanner(8, 1, null)));
+
+        Assert.assertEquals(messages(sequential.get(0)), messages(parallel.get(0)));
+        Assert.assertEquals(messages(sequential.get(1)), messages(parallel.get(1)));
+    }
+
+    @Test
+    public void testFailFastStopsAtFirstFinding() throws IOException {
+        HeaderScanner scanner = new HeaderScanner(5, 1, null);
+        FailFastSink sink = new FailFastSink();
+        SharedTreeScan.stream(folder.getRoot(), Arrays.asList(scanner), sink);
+
+        Assert.assertTrue(sink.isCancelled());
+        Assert.assertSame(scanner, sink.getFirstScanner());
+        Assert.assertEquals(1, scanner.visited.get());
+        Assert.assertFalse("a cancelled scan isn't finished", scanner.finished);
+    }
+
+    @Test
+    public void testRescanKeyedByFile() throws IOException {
+        HeaderScanner prefix = new HeaderScanner(5, 1, "b");
+        HeaderScanner longer = new HeaderScanner(8, 1, null);
+        final List<Path> accepted = new ArrayList<>();
+        Path root = folder.getRoot().toPath();
+        FileUtils.writeStringToFile(new File(folder.getRoot(), "b/c/four.txt"), "fourth file", StandardCharsets.ISO_8859_1);
+
+        Map<Path, List<SensitiveInformation>> results = SharedTreeScan.rescan(folder.getRoot(), Arrays.asList(prefix, longer),
+                Arrays.asList(root.resolve("a/two.txt"), root.resolve("b/c"), root.resolve("a/missing.txt")),
+                new SharedTreeScan.DirectoryListener() {
+                    @Override
+                    public void directoryAccepted(Path dir) {
+                        accepted.add(dir);
+                    }
+                });
+
+        Assert.assertEquals(Arrays.asList(root.resolve("a/two.txt"), root.resolve("b/c/four.txt")), new ArrayList<>(results.keySet()));
+        Assert.assertEquals(Arrays.asList("two.txt=secon", "two.txt=second f"), messages(results.get(root.resolve("a/two.txt"))));
+        Assert.assertEquals(Arrays.asList("four.txt=fourth f"), messages(results.get(root.resolve("b/c/four.txt"))));
+        Assert.assertEquals("only the directories walked", Arrays.asList(root.resolve("b/c")), accepted);
+        Assert.assertFalse("part of the tree isn't finished", prefix.finished);
+
+        SharedTreeScan.rescan(folder.getRoot(), Arrays.asList(prefix), Arrays.asList(root), null);
+        Assert.assertTrue(prefix.finished);
+    }
+
+    @Test
+    public void testMissingBaseDir() throws IOException {
+        List<List<SensitiveInformation>> results = SharedTreeScan.scan(new File(folder.getRoot(), "missing"),
+                Arrays.asList(new HeaderScanner(5, 1, null)));
+        Assert.assertEquals(1, results.size());
+        Assert.assertTrue(results.get(0).isEmpty());
+    }
+
+    private static List<String> messages(List<SensitiveInformation> results) {
+        List<String> messages = new ArrayList<>();
+        for(SensitiveInformation result: results) {
+            messages.add(result.getMessage());
+        }
+        return messages;
+    }
+
+    private static List<String> sorted(List<String> list) {
+        Collections.sort(list);
+        return list;
+    }
+
+    /**
+     * Reports the start of every file, skipping one directory
+     */
+    private static class HeaderScanner implements FileScanner {
+        private int     headerLength;
+        private int     parallelism;
+        private String  skipDir;
+        private boolean finished;
+        private AtomicInteger visited = new AtomicInteger();
+
+        public HeaderScanner(int headerLength, int parallelism, String skipDir) {
+            this.headerLength = headerLength;
+            this.parallelism = parallelism;
+            this.skipDir = skipDir;
+        }
+
+        @Override
+        public int getHeaderLength()    { return headerLength; }
+
+        @Override
+        public int getParallelism()     { return parallelism; }
+
+        @Override
+        public List<SensitiveInformation> scan(File baseDir) throws IOException {
+            return SharedTreeScan.scan(baseDir, Arrays.asList(this)).get(0);
+        }
+
+        @Override
+        public FileScan startScan(File baseDir) {
+            return new FileScan() {
+                @Override
+                public boolean preVisitDirectory(Path dir, BasicFileAttributes attrs) {
+                    return dir.getFileName().toString().equals(skipDir) == false;
+                }
+
+                @Override
+                public void postVisitDirectory(Path dir) {
+                }
+
+                @Override
+                public boolean acceptFile(Path file, BasicFileAttributes attrs, List<SensitiveInformation> results) {
+                    return true;
+                }
+
+                @Override
+                public void visitFile(Path file, BasicFileAttributes attrs, ByteBuffer header, List<SensitiveInformation> results) {
+                    visited.incrementAndGet();
+                    Assert.assertTrue(header.limit() >= headerLength);
+                    byte[] bytes = new byte[headerLength];
+                    header.get(bytes);
+                    results.add(new SensitiveInformation(file.getFileName() + "=" + new String(bytes, StandardCharsets.ISO_8859_1)));
+                }
+
+                @Override
+                public void visitFileFailed(Path path, IOException exception, List<SensitiveInformation> results) {
+                    results.add(new SensitiveInformation("failed: " + path.getFileName()));
+                }
+
+                @Override
+                public void finish() {
+                    finished = true;
+                }
+            };
+        }
+    }
+}
@@ -0,0 +1,101 @@
+package uk.gov.dwp.carersallowance.sensitiveinfo.cache;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Arrays;
+import java.util.List;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class ScanCacheTest {
+    private static final String FINGERPRINT = ScanCache.fingerprint("scanner", "config");
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void testHitAfterSave() throws IOException {
+        File cacheFile = new File(folder.getRoot(), "scan.cache");
+        File file = settledFile("keystore.jks", "content");
+
+        ScanCache cache = ScanCache.open(cacheFile, FINGERPRINT);
+        Assert.assertNull(cache.lookup(file.getAbsolutePath(), attributes(file)));
+        cache.record(file.getAbsolutePath(), attributes(file), Arrays.asList("first", "second"));
+        cache.save();
+
+        ScanCache reopened = ScanCache.open(cacheFile, FINGERPRINT);
+        List<String> messages = reopened.lookup(file.getAbsolutePath(), attributes(file));
+        Assert.assertEquals(Arrays.asList("first", "second"), messages);
+    }
+
+    @Test
+    public void testMissWhenFileChanges() throws IOException {
+        File cacheFile = new File(folder.getRoot(), "scan.cache");
+        File file = settledFile("keystore.jks", "content");
+
+        ScanCache cache = ScanCache.open(cacheFile, FINGERPRINT);
+        cache.record(file.getAbsolutePath(), attributes(file), Arrays.asList("finding"));
+        cache.save();
+
+        FileUtils.writeStringToFile(file, "different content", StandardCharsets.UTF_8);
+        file.setLastModified(System.currentTimeMillis() - 30000);
+
+        ScanCache reopened = ScanCache.open(cacheFile, FINGERPRINT);
+        Assert.assertNull(reopened.lookup(file.getAbsolutePath(), attributes(file)));
+    }
+
+    @Test
+    public void testMissWhenFingerprintChanges() throws IOException {
+        File cacheFile = new File(folder.getRoot(), "scan.cache");
+        File file = settledFile("keystore.jks", "content");
+
+        ScanCache cache = ScanCache.open(cacheFile, FINGERPRINT);
+        cache.record(file.getAbsolutePath(), attributes(file), Arrays.asList("finding"));
+        cache.save();
+
+        ScanCache reopened = ScanCache.open(cacheFile, ScanCache.fingerprint("scanner", "other config"));
+        Assert.assertNull(reopened.lookup(file.getAbsolutePath(), attributes(file)));
+    }
+
+    @Test
+    public void testRecentlyModifiedFileNotRecorded() throws IOException {
+        File cacheFile = new File(folder.getRoot(), "scan.cache");
+        File file = new File(folder.getRoot(), "fresh.jks");
+        FileUtils.writeStringToFile(file, "content", StandardCharsets.UTF_8);
+
+        ScanCache cache = ScanCache.open(cacheFile, FINGERPRINT);
+        cache.record(file.getAbsolutePath(), attributes(file), Arrays.asList("finding"));
+        cache.save();
+
+        ScanCache reopened = ScanCache.open(cacheFile, FINGERPRINT);
+        Assert.assertNull(reopened.lookup(file.getAbsolutePath(), attributes(file)));
+    }
+
+    @Test
+    public void testCorruptCacheStartsCold() throws IOException {
+        File cacheFile = new File(folder.getRoot(), "scan.cache");
+        FileUtils.writeStringToFile(cacheFile, "not a cache file", StandardCharsets.UTF_8);
+        File file = settledFile("keystore.jks", "content");
+
+        ScanCache cache = ScanCache.open(cacheFile, FINGERPRINT);
+        Assert.assertNull(cache.lookup(file.getAbsolutePath(), attributes(file)));
+    }
+
+    private File settledFile(String name, String content) throws IOException {
+        File file = new File(folder.getRoot(), name);
+        FileUtils.writeStringToFile(file, content, StandardCharsets.UTF_8);
+        file.setLastModified(System.currentTimeMillis() - 60000);
+        return file;
+    }
+
+    private BasicFileAttributes attributes(File file) throws IOException {
+        return Files.readAttributes(file.toPath(), BasicFileAttributes.class);
+    }
+}
@@ -91,6 +91,14 @@ public class GitConfigTest {
         }
     }
 
+    @Test
+    public void testRepeatedKeys() throws IOException, ParseException {
+        GitConfig gitConfig = new GitConfig("[include]\npath = first\n[core]\nbare\n[include]\npath = second\n");
+        Assert.assertEquals("second", gitConfig.get("include.path"));
+        Assert.assertEquals(Arrays.asList("first", "second"), gitConfig.getAll("include.path"));
+        Assert.assertEquals("[include.path=first, core.bare=null, include.path=second]", gitConfig.getEntries().toString());
+    }
+
     @Test
     public void testParseKeyValueNoSection() {
         String[] lines = {"", " key ", " key=value ", "key =value", "key= value"};
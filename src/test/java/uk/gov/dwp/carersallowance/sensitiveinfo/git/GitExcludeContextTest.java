@@ -1,7 +1,170 @@
 package uk.gov.dwp.carersallowance.sensitiveinfo.git;
 
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import uk.gov.dwp.carersallowance.sensitiveinfo.git.GitExcludeContext.Match;
+
 public class GitExcludeContextTest {
-//  readGitExcludeFile doesn't really have anything to test as such, its all very literal
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void testLastMatchWins() throws IOException {
+        GitExcludeContext context = context(folder.getRoot(), "*.log", "!important.log", "important.log.*");
+        Assert.assertEquals(Match.IGNORED, context.match("app.log", false));
+        Assert.assertEquals(Match.INCLUDED, context.match("important.log", false));
+        Assert.assertEquals(Match.INCLUDED, context.match("deep/er/important.log", false));
+        Assert.assertEquals(Match.NONE, context.match("app.txt", false));
+    }
+
+    @Test
+    public void testAnchoring() throws IOException {
+        GitExcludeContext context = context(folder.getRoot(), "/target", "doc/*.html", "name");
+        Assert.assertEquals(Match.IGNORED, context.match("target", true));
+        Assert.assertEquals(Match.NONE, context.match("src/target", true));
+        Assert.assertEquals(Match.IGNORED, context.match("doc/index.html", false));
+        Assert.assertEquals(Match.NONE, context.match("doc/sub/index.html", false));
+        Assert.assertEquals(Match.NONE, context.match("other/doc/index.html", false));
+        Assert.assertEquals(Match.IGNORED, context.match("a/b/name", false));
+    }
+
+    @Test
+    public void testDirectoryOnly() throws IOException {
+        GitExcludeContext context = context(folder.getRoot(), "build/");
+        Assert.assertEquals(Match.IGNORED, context.match("build", true));
+        Assert.assertEquals(Match.IGNORED, context.match("src/build", true));
+        Assert.assertEquals(Match.NONE, context.match("build", false));
+    }
+
+    @Test
+    public void testDoubleStar() throws IOException {
+        GitExcludeContext context = context(folder.getRoot(), "**/generated", "cache/**", "a/**/b", "x**y");
+        Assert.assertEquals(Match.IGNORED, context.match("generated", true));
+        Assert.assertEquals(Match.IGNORED, context.match("x/y/generated", false));
+        Assert.assertEquals(Match.NONE, context.match("cache", true));
+        Assert.assertEquals(Match.IGNORED, context.match("cache/a/b", false));
+        Assert.assertEquals(Match.IGNORED, context.match("a/b", false));
+        Assert.assertEquals(Match.IGNORED, context.match("a/x/y/b", false));
+        Assert.assertEquals(Match.NONE, context.match("ab/b", false));
+        Assert.assertEquals(Match.IGNORED, context.match("xzzy", false));    // not a whole component, so just *
+        Assert.assertEquals(Match.NONE, context.match("x/y", false));
+    }
+
+    @Test
+    public void testWildcardsAndEscapes() throws IOException {
+        GitExcludeContext context = context(folder.getRoot(), "*.[oa]", "temp?", "[!x]y.txt", "[[:digit:]]*.dat",
+                                                              "\\#hash", "\\!bang", "trailing   ", "space\\ ", "# comment", "");
+        Assert.assertEquals(Match.IGNORED, context.match("x.o", false));
+        Assert.assertEquals(Match.NONE, context.match("x.c", false));
+        Assert.assertEquals(Match.IGNORED, context.match("temp1", false));
+        Assert.assertEquals(Match.NONE, context.match("temp12", false));
+        Assert.assertEquals(Match.IGNORED, context.match("ay.txt", false));
+        Assert.assertEquals(Match.NONE, context.match("xy.txt", false));
+        Assert.assertEquals(Match.IGNORED, context.match("1.dat", false));
+        Assert.assertEquals(Match.NONE, context.match("a1.dat", false));
+        Assert.assertEquals(Match.IGNORED, context.match("#hash", false));
+        Assert.assertEquals(Match.IGNORED, context.match("!bang", false));
+        Assert.assertEquals(Match.NONE, context.match("bang", false));
+        Assert.assertEquals(Match.IGNORED, context.match("trailing", false));
+        Assert.assertEquals(Match.IGNORED, context.match("space ", false));
+        Assert.assertEquals(Match.NONE, context.match("# comment", false));
+    }
+
+    @Test
+    public void testRelativeToItsDirectory() throws IOException {
+        File sub = folder.newFolder("sub");
+        GitExcludeContext context = context(sub, "/local", "nested/");
+        Assert.assertEquals(Match.IGNORED, context.match("sub/local", false));
+        Assert.assertEquals(Match.NONE, context.match("sub/x/local", false));
+        Assert.assertEquals(Match.IGNORED, context.match("sub/x/nested", true));
+        Assert.assertEquals(Match.NONE, context.match("local", false));
+        Assert.assertEquals(Match.NONE, context.match("sub", true));
+    }
+
+    @Test
+    public void testMatchesGitIgnoreParentDirectory() throws IOException {
+        GitExcludeContext context = context(folder.getRoot(), "build/", "!build/keep.txt");
+        File keep = new File(folder.newFolder("build"), "keep.txt");
+        Assert.assertTrue(keep.createNewFile());
+        Assert.assertTrue(context.matchesGitIgnore(keep));     // a file can't be included from an ignored directory
+        Assert.assertFalse(context.matchesGitIgnore(folder.newFile("other.txt")));
+
+        Assert.assertTrue(context.matchesGitIgnore("build/keep.txt", false));
+        Assert.assertTrue(context.matchesGitIgnore("build", true));
+        Assert.assertFalse(context.matchesGitIgnore("build", false));
+        Assert.assertFalse(context.matchesGitIgnore("src/build.txt", false));
+    }
+
+    @Test
+    public void testLiteralsWeighedAgainstWildcards() throws IOException {
+        GitExcludeContext context = context(folder.getRoot(), "debug.log", "!*.log", "app.log", "/out/", "!out", "a/b", "!a/*");
+        Assert.assertEquals(Match.INCLUDED, context.match("debug.log", false));     // a later wildcard wins
+        Assert.assertEquals(Match.IGNORED, context.match("app.log", false));        // a later literal wins
+        Assert.assertEquals(Match.INCLUDED, context.match("out", true));
+        Assert.assertEquals(Match.INCLUDED, context.match("x/out", false));
+        Assert.assertEquals(Match.INCLUDED, context.match("a/b", false));
+        Assert.assertEquals(Match.NONE, context.match("a/b/c", false));
+    }
+
+    @Test
+    public void testManyLiteralRules() throws IOException {
+        List<String> lines = new ArrayList<>();
+        for(int index = 0; index < 500; index++) {
+            lines.add("/module" + index + "/build/");
+            lines.add("generated" + index);
+        }
+        lines.add("!/module250/build/");
+        GitExcludeContext context = new GitExcludeContext(lines, folder.getRoot(), folder.getRoot());
+
+        Assert.assertEquals(Match.IGNORED, context.match("module12/build", true));
+        Assert.assertEquals(Match.NONE, context.match("module12/build", false));
+        Assert.assertEquals(Match.NONE, context.match("module12/src", true));
+        Assert.assertEquals(Match.NONE, context.match("x/module12/build", true));
+        Assert.assertEquals(Match.INCLUDED, context.match("module250/build", true));
+        Assert.assertEquals(Match.IGNORED, context.match("x/y/generated499", false));
+        Assert.assertEquals(Match.NONE, context.match("generated500", false));
+
+        File file = new File(folder.getRoot(), "module12/build/classes/App.class");
+        Assert.assertTrue(file.getParentFile().mkdirs());
+        Assert.assertTrue(file.createNewFile());
+        Assert.assertTrue(context.matchesGitIgnore(file));
+    }
 
+    /**
+     * The same answer as checking every pattern last to first
+     */
+    @Test
+    public void testSameAsCheckingEveryPattern() throws IOException {
+        String[] lines = {"build", "!build/", "/target", "*.log", "!keep.log", "keep.log", "doc/api", "!doc/*", "lib*",
+                          "name/", "!x/name", "**/name", "out", "!out"};
+        String[] paths = {"build", "x/build", "target", "x/target", "a.log", "keep.log", "x/keep.log", "doc/api", "doc/apis",
+                          "library", "name", "x/name", "y/name", "out", "x/out"};
+        GitExcludeContext context = context(folder.getRoot(), lines);
+        for(String path: paths) {
+            for(boolean isDirectory: new boolean[] {false, true}) {
+                Match expected = Match.NONE;
+                for(int index = lines.length - 1; index >= 0; index--) {
+                    GitIgnorePattern pattern = GitIgnorePattern.compile(lines[index]);
+                    if(pattern.matches(path, 0, path.lastIndexOf('/') + 1, isDirectory)) {
+                        expected = pattern.isNegated() ? Match.INCLUDED : Match.IGNORED;
+                        break;
+                    }
+                }
+                Assert.assertEquals(path + " " + isDirectory, expected, context.match(path, isDirectory));
+            }
+        }
+    }
 
+    private GitExcludeContext context(File baseDir, String... lines) throws IOException {
+        return new GitExcludeContext(Arrays.asList(lines), baseDir, folder.getRoot());
+    }
 }
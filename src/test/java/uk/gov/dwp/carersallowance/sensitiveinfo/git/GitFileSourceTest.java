@@ -0,0 +1,144 @@
+package uk.gov.dwp.carersallowance.sensitiveinfo.git;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.text.ParseException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import uk.gov.dwp.carersallowance.sensitiveinfo.walk.TreeVisitor;
+import uk.gov.dwp.carersallowance.sensitiveinfo.walk.TreeWalker;
+
+public class GitFileSourceTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private String userHome;
+    private File   repo;
+
+    @Before
+    public void setUp() throws IOException {
+        // no global excludes
+        userHome = System.getProperty("user.home");
+        System.setProperty("user.home", folder.newFolder("home").getAbsolutePath());
+
+        repo = folder.newFolder("repo");
+        write(".gitignore", "build/\n*.log\ncache/\n");
+        write(".git/HEAD", "ref: refs/heads/main\n");
+        write(".git/objects/ab/cdef", "object");
+        write("README.md", "readme");
+        write("src/App.java", "class App {}");
+        write("build/kept.jar", "tracked, though build/ is ignored");
+        write("build/out.class", "untracked and ignored");
+        write("debug.log", "tracked, though *.log is ignored");
+        write("other.log", "untracked and ignored");
+        write("cache/entry", "nothing tracked in cache/");
+        write("new.txt", "git add -N");
+        write("notes.txt", "untracked");
+        write("sub/.git", "gitdir: ../.git/modules/sub\n");
+        write("sub/file.txt", "in a submodule");
+        write("nested/.git/HEAD", "ref: refs/heads/main\n");
+        write("nested/file.txt", "in an untracked nested repository");
+
+        GitIndexTest.IndexBuilder builder = new GitIndexTest.IndexBuilder(3);
+        builder.add(".gitignore", GitIndexTest.MODE_FILE, 0);
+        builder.add("README.md", GitIndexTest.MODE_FILE, 0);
+        builder.add("build/kept.jar", GitIndexTest.MODE_FILE, 0);
+        builder.add("debug.log", GitIndexTest.MODE_FILE, 0);
+        builder.add("new.txt", GitIndexTest.MODE_FILE, GitIndexTest.INTENT_TO_ADD);
+        builder.add("sparse/absent.txt", GitIndexTest.MODE_FILE, GitIndexTest.SKIP_WORKTREE);
+        builder.add("src/App.java", GitIndexTest.MODE_FILE, 0);
+        builder.add("sub", GitIndexTest.MODE_GITLINK, 0);
+        ByteBuffer index = builder.build();
+        Files.write(new File(repo, ".git/index").toPath(), Arrays.copyOf(index.array(), index.limit()));
+    }
+
+    @After
+    public void tearDown() {
+        System.setProperty("user.home", userHome);
+    }
+
+    @Test
+    public void testTrackedFilesWalkedDespiteIgnoreRules() throws IOException, ParseException {
+        GitFileSource source = GitFileSource.open(repo);
+        Assert.assertTrue(source.isTracked("build/kept.jar"));
+        Assert.assertTrue(source.isTracked("new.txt"));
+        Assert.assertTrue(source.isTracked("sparse/absent.txt"));
+        Assert.assertFalse(source.isTracked("sub"));
+
+        for(int parallelism: new int[] {1, 4}) {
+            Set<String> dirs = new TreeSet<>();
+            Set<String> files = walk(source, parallelism, dirs);
+            Assert.assertEquals(new TreeSet<>(Arrays.asList(".gitignore", "README.md", "build/kept.jar", "debug.log", "new.txt", "notes.txt", "src/App.java")), files);
+
+            // .git, the submodule, the nested repository and the ignored directory with nothing tracked aren't entered
+            Assert.assertEquals(new TreeSet<>(Arrays.asList("", "build", "src")), dirs);
+        }
+    }
+
+    @Test
+    public void testIgnoreRulesAlone() throws IOException, ParseException {
+        GitFileSource source = GitFileSource.openIgnoreRules(repo);
+        Assert.assertNull(source.getIndex());
+
+        for(int parallelism: new int[] {1, 4}) {
+            Set<String> dirs = new TreeSet<>();
+            Set<String> files = walk(source, parallelism, dirs);
+            Assert.assertEquals(new TreeSet<>(Arrays.asList(".gitignore", "README.md", "new.txt", "notes.txt", "src/App.java")), files);
+
+            // without the index the submodule is only known as a nested repository
+            Assert.assertEquals(new TreeSet<>(Arrays.asList("", "src")), dirs);
+        }
+    }
+
+    /**
+     * @return the files walked, relative to the repository
+     */
+    private Set<String> walk(GitFileSource source, int parallelism, Set<String> dirs) throws IOException {
+        final Set<String> visitedDirs = Collections.synchronizedSet(dirs);
+        final Set<String> files = Collections.synchronizedSet(new TreeSet<String>());
+        final Path root = repo.toPath();
+        source.walk(new TreeWalker(parallelism), new TreeVisitor<Void>() {
+            @Override
+            public boolean preVisitDirectory(Path dir, BasicFileAttributes attrs, List<Void> results) {
+                visitedDirs.add(root.relativize(dir).toString().replace(File.separatorChar, '/'));
+                return true;
+            }
+
+            @Override
+            public void postVisitDirectory(Path dir, List<Void> results) {
+            }
+
+            @Override
+            public void visitFile(Path file, BasicFileAttributes attrs, List<Void> results) {
+                files.add(root.relativize(file).toString().replace(File.separatorChar, '/'));
+            }
+
+            @Override
+            public void visitFileFailed(Path path, IOException exception, List<Void> results) {
+                Assert.fail("failed to visit: " + path + ", " + exception);
+            }
+        });
+        return new TreeSet<>(files);
+    }
+
+    private void write(String path, String content) throws IOException {
+        FileUtils.writeStringToFile(new File(repo, path), content, StandardCharsets.UTF_8);
+    }
+}
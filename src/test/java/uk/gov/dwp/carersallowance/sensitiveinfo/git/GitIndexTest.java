@@ -0,0 +1,217 @@
+package uk.gov.dwp.carersallowance.sensitiveinfo.git;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.text.ParseException;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class GitIndexTest {
+    static final int MODE_FILE      = 0100644;
+    static final int MODE_GITLINK   = 0160000;
+
+    static final int SKIP_WORKTREE  = 0x4000;
+    static final int INTENT_TO_ADD  = 0x2000;
+
+    @Test
+    public void testVersion2() throws IOException, ParseException {
+        IndexBuilder builder = new IndexBuilder(2);
+        builder.add("README.md", MODE_FILE, 0);
+        builder.add("src/main/java/App.java", MODE_FILE, 0);
+        builder.add("sub", MODE_GITLINK, 0);
+
+        GitIndex index = GitIndex.parse(builder.build());
+        Assert.assertEquals(2, index.getVersion());
+        Assert.assertEquals(Arrays.asList("README.md", "src/main/java/App.java", "sub"), paths(index.getEntries()));
+        Assert.assertEquals(12, index.getEntries().get(0).getSize());
+        Assert.assertFalse(index.getEntries().get(0).isGitlink());
+        Assert.assertTrue(index.getEntries().get(2).isGitlink());
+    }
+
+    @Test
+    public void testVersion3ExtendedFlags() throws IOException, ParseException {
+        IndexBuilder builder = new IndexBuilder(3);
+        builder.add("a.txt", MODE_FILE, 0);
+        builder.add("sparse/b.txt", MODE_FILE, SKIP_WORKTREE);
+        builder.add("new.txt", MODE_FILE, INTENT_TO_ADD);
+
+        List<GitIndex.Entry> entries = GitIndex.parse(builder.build()).getEntries();
+        Assert.assertEquals(Arrays.asList("a.txt", "sparse/b.txt", "new.txt"), paths(entries));
+        Assert.assertFalse(entries.get(0).isSkipWorktree());
+        Assert.assertFalse(entries.get(0).isIntentToAdd());
+        Assert.assertTrue(entries.get(1).isSkipWorktree());
+        Assert.assertTrue(entries.get(2).isIntentToAdd());
+    }
+
+    @Test
+    public void testVersion4PrefixCompression() throws IOException, ParseException {
+        IndexBuilder builder = new IndexBuilder(4);
+        builder.add("src/main/java/App.java", MODE_FILE, 0);
+        builder.add("src/main/java/Config.java", MODE_FILE, SKIP_WORKTREE);
+        builder.add("src/test/AppTest.java", MODE_FILE, 0);
+        builder.add("\u00fcnicode.txt", MODE_FILE, 0);
+
+        List<GitIndex.Entry> entries = GitIndex.parse(builder.build()).getEntries();
+        Assert.assertEquals(Arrays.asList("src/main/java/App.java", "src/main/java/Config.java", "src/test/AppTest.java", "\u00fcnicode.txt"), paths(entries));
+        Assert.assertTrue(entries.get(1).isSkipWorktree());
+    }
+
+    @Test
+    public void testLongPrefixOffset() throws IOException, ParseException {
+        // strip more than 127 bytes so the offset needs two bytes
+        StringBuilder longName = new StringBuilder("dir/");
+        for(int index = 0; index < 200; index++) {
+            longName.append('x');
+        }
+
+        IndexBuilder builder = new IndexBuilder(4);
+        builder.add(longName.toString(), MODE_FILE, 0);
+        builder.add("dir/y", MODE_FILE, 0);
+
+        Assert.assertEquals(Arrays.asList(longName.toString(), "dir/y"), paths(GitIndex.parse(builder.build()).getEntries()));
+    }
+
+    @Test
+    public void testReadOffset() throws ParseException {
+        Assert.assertEquals(0, GitIndex.readOffset(ByteBuffer.wrap(new byte[]{0})));
+        Assert.assertEquals(127, GitIndex.readOffset(ByteBuffer.wrap(new byte[]{0x7f})));
+        Assert.assertEquals(128, GitIndex.readOffset(ByteBuffer.wrap(new byte[]{(byte)0x80, 0})));
+        Assert.assertEquals(16511, GitIndex.readOffset(ByteBuffer.wrap(new byte[]{(byte)0xff, 0x7f})));
+    }
+
+    @Test(expected=ParseException.class)
+    public void testNotAnIndex() throws ParseException {
+        GitIndex.parse(ByteBuffer.wrap("not an index file".getBytes(StandardCharsets.ISO_8859_1)));
+    }
+
+    @Test(expected=ParseException.class)
+    public void testTruncated() throws IOException, ParseException {
+        IndexBuilder builder = new IndexBuilder(2);
+        builder.add("README.md", MODE_FILE, 0);
+        ByteBuffer buffer = builder.build();
+        buffer.limit(40);
+        GitIndex.parse(buffer);
+    }
+
+    @Test(expected=ParseException.class)
+    public void testSplitIndex() throws IOException, ParseException {
+        IndexBuilder builder = new IndexBuilder(2);
+        builder.add("README.md", MODE_FILE, 0);
+        builder.extension("link", new byte[20]);
+        GitIndex.parse(builder.build());
+    }
+
+    @Test
+    public void testOtherExtensionsSkipped() throws IOException, ParseException {
+        IndexBuilder builder = new IndexBuilder(2);
+        builder.add("README.md", MODE_FILE, 0);
+        builder.extension("TREE", new byte[]{'a', 0, '1', ' ', '0', '\n'});
+
+        Assert.assertEquals(Arrays.asList("README.md"), paths(GitIndex.parse(builder.build()).getEntries()));
+    }
+
+    private static List<String> paths(List<GitIndex.Entry> entries) {
+        String[] paths = new String[entries.size()];
+        for(int index = 0; index < paths.length; index++) {
+            paths[index] = entries.get(index).getPath();
+        }
+        return Arrays.asList(paths);
+    }
+
+    /**
+     * Writes an index in the format git does (see GitIndex), also used to build repositories for
+     * GitFileSourceTest
+     */
+    static class IndexBuilder {
+        private int                   version;
+        private int                   count;
+        private ByteArrayOutputStream entries;
+        private ByteArrayOutputStream extensions;
+        private byte[]                previous;
+
+        public IndexBuilder(int version) {
+            this.version = version;
+            entries = new ByteArrayOutputStream();
+            extensions = new ByteArrayOutputStream();
+            previous = new byte[0];
+        }
+
+        public void add(String path, int mode, int extendedFlags) throws IOException {
+            byte[] name = path.getBytes(StandardCharsets.UTF_8);
+            ByteArrayOutputStream entry = new ByteArrayOutputStream();
+            DataOutputStream output = new DataOutputStream(entry);
+            output.writeInt(1);             // ctime
+            output.writeInt(0);
+            output.writeInt(2);             // mtime
+            output.writeInt(0);
+            output.writeInt(0);             // dev
+            output.writeInt(count + 1);     // ino
+            output.writeInt(mode);
+            output.writeInt(0);             // uid
+            output.writeInt(0);             // gid
+            output.writeInt(12);            // size
+            output.write(new byte[20]);     // sha-1
+            output.writeShort((extendedFlags != 0 ? 0x4000 : 0) | Math.min(name.length, 0xfff));
+            if(extendedFlags != 0) {
+                output.writeShort(extendedFlags);
+            }
+
+            if(version == 4) {
+                int common = 0;
+                while(common < name.length && common < previous.length && name[common] == previous[common]) {
+                    common++;
+                }
+                writeOffset(output, previous.length - common);
+                output.write(name, common, name.length - common);
+                output.write(0);
+            } else {
+                output.write(name);
+                int padding = 8 - (entry.size() % 8);
+                output.write(new byte[padding]);
+            }
+            output.flush();
+
+            entries.write(entry.toByteArray());
+            previous = name;
+            count++;
+        }
+
+        public void extension(String signature, byte[] data) throws IOException {
+            DataOutputStream output = new DataOutputStream(extensions);
+            output.write(signature.getBytes(StandardCharsets.ISO_8859_1));
+            output.writeInt(data.length);
+            output.write(data);
+            output.flush();
+        }
+
+        public ByteBuffer build() throws IOException {
+            ByteArrayOutputStream index = new ByteArrayOutputStream();
+            DataOutputStream output = new DataOutputStream(index);
+            output.write("DIRC".getBytes(StandardCharsets.ISO_8859_1));
+            output.writeInt(version);
+            output.writeInt(count);
+            output.write(entries.toByteArray());
+            output.write(extensions.toByteArray());
+            output.write(new byte[20]);     // checksum
+            output.flush();
+            return ByteBuffer.wrap(index.toByteArray());
+        }
+
+        private static void writeOffset(DataOutputStream output, int value) throws IOException {
+            byte[] bytes = new byte[5];
+            int position = bytes.length - 1;
+            bytes[position] = (byte)(value & 0x7f);
+            while((value >>= 7) != 0) {
+                value--;
+                bytes[--position] = (byte)(0x80 | (value & 0x7f));
+            }
+            output.write(bytes, position, bytes.length - position);
+        }
+    }
+}
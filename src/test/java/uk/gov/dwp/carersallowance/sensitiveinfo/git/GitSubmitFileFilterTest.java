@@ -1,5 +1,242 @@
 package uk.gov.dwp.carersallowance.sensitiveinfo.git;
 
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.text.ParseException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import uk.gov.dwp.carersallowance.sensitiveinfo.walk.TreeVisitor;
+import uk.gov.dwp.carersallowance.sensitiveinfo.walk.TreeWalker;
+
 public class GitSubmitFileFilterTest {
+    private static final String[] GIT_IGNORE = {
+        "# comment", "*.log", "!important.log", "build/", "/target", "doc/*.html", "**/generated", "cache/**", "a/**/b",
+        "*.[oa]", "temp?", "\\#hash", "\\!bang", "trailing   ", "foo/bar/", "lib*", "!lib-keep", "[[:digit:]]*.dat", "[!x]y.txt"
+    };
+    private static final String[] SUB_GIT_IGNORE = {"!*.log", "/local", "nested/"};
+    private static final String[] PROJECT_EXCLUDE = {"*.tmp", "!x.orig"};
+    private static final String[] GLOBAL_EXCLUDE = {"*.swp", "*.orig"};
+
+    /**
+     * "I" ignored, "-" not, as given by git check-ignore (git 2.39) for the rules above, directories
+     * end in "/"
+     */
+    private static final String[] EXPECTED = {
+        "I app.log", "- important.log", "- sub/important.log", "- sub/x.log", "- sub/deeper/x.log", "I build/",
+        "I build/out.class", "- src/build", "I target/", "I target/x", "- src/target", "I doc/index.html",
+        "- doc/sub/index.html", "I x/generated/", "I x/generated/a.java", "I generated", "- cache/", "I cache/a/b",
+        "I a/b", "I a/x/b", "I a/x/y/b", "- ab/b", "I x.o", "I x.a", "- x.c", "I temp1", "- temp12", "I #hash", "- hash",
+        "I !bang", "- bang", "I trailing", "I foo/bar/", "I foo/bar/baz", "- x/foo/bar/", "I library.jar", "- lib-keep",
+        "I 1.dat", "- a1.dat", "I ay.txt", "- xy.txt", "I sub/local", "- sub/x/local", "I sub/nested/f", "- nested/f",
+        "I keep.tmp", "I a.tmp", "I sub/a.tmp", "I x.swp", "- x.orig", "I y.orig", "- notignored.txt"
+    };
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private String userHome;
+    private File   repo;
+    private File   globalExclude;
+
+    @Before
+    public void setUp() throws IOException {
+        repo = folder.newFolder("repo");
+        write(new File(repo, ".gitignore"), GIT_IGNORE);
+        write(new File(repo, "sub/.gitignore"), SUB_GIT_IGNORE);
+        write(new File(repo, ".git/info/exclude"), PROJECT_EXCLUDE);
+
+        File home = folder.newFolder("home");
+        globalExclude = new File(home, "global");
+        write(globalExclude, GLOBAL_EXCLUDE);
+        write(new File(home, ".gitconfig"), "[core]", "\texcludesFile = " + globalExclude.getAbsolutePath());
+        userHome = System.getProperty("user.home");
+        System.setProperty("user.home", home.getAbsolutePath());
+
+        for(String expected: EXPECTED) {
+            File file = new File(repo, expected.substring(2));
+            if(expected.endsWith("/")) {
+                Assert.assertTrue(file.mkdirs());
+            } else {
+                FileUtils.writeStringToFile(file, "content", StandardCharsets.UTF_8);
+            }
+        }
+    }
+
+    @After
+    public void tearDown() {
+        System.setProperty("user.home", userHome);
+    }
+
+    @Test
+    public void testMatchesGitCheckIgnore() throws IOException, ParseException {
+        GitSubmitFileFilter filter = new GitSubmitFileFilter(repo);
+        List<String> actual = new ArrayList<>();
+        List<String> expected = new ArrayList<>();
+        for(String path: EXPECTED) {
+            expected.add(path);
+            actual.add((filter.accept(new File(repo, path.substring(2))) ? "- " : "I ") + path.substring(2));
+        }
+        Assert.assertEquals(expected, actual);
+    }
+
+    @Test
+    public void testRelativePaths() throws IOException, ParseException {
+        GitSubmitFileFilter filter = new GitSubmitFileFilter(repo);
+        for(String path: EXPECTED) {
+            String relative = trimSlash(path.substring(2));
+            Assert.assertEquals(relative, path.startsWith("I"), filter.isIgnored(relative, path.endsWith("/")));
+        }
+    }
+
+    @Test
+    public void testSharedBetweenThreads() throws Exception {
+        final GitSubmitFileFilter filter = new GitSubmitFileFilter(repo);
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<List<Object>>> results = new ArrayList<>();
+            for(int thread = 0; thread < 8; thread++) {
+                results.add(executor.submit(new Callable<List<Object>>() {
+                    @Override
+                    public List<Object> call() throws IOException {
+                        List<Object> result = new ArrayList<>();
+                        for(String path: EXPECTED) {
+                            String relative = trimSlash(path.substring(2));
+                            result.add(filter.isIgnored(relative, path.endsWith("/")) ? "I" : "-");
+                            result.add(filter.getFrame(relative.contains("/") ? relative.substring(0, relative.lastIndexOf('/')) : ""));
+                        }
+                        return result;
+                    }
+                }));
+            }
+
+            // the same answers, and the same frames, each directory's read once
+            List<Object> first = results.get(0).get();
+            for(Future<List<Object>> result: results) {
+                List<Object> actual = result.get();
+                for(int index = 0; index < first.size(); index++) {
+                    Assert.assertSame(first.get(index), actual.get(index));
+                }
+            }
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void testWalkPrunesIgnoredDirectories() throws IOException, ParseException {
+        Set<String> expected = new TreeSet<>(Arrays.asList(".gitignore", "sub/.gitignore"));
+        for(String path: EXPECTED) {
+            if(path.startsWith("-") && path.endsWith("/") == false) {
+                expected.add(path.substring(2));
+            }
+        }
+
+        // nothing is tracked, so the ignore rules alone give the same files
+        List<GitFileSource> sources = Arrays.asList(GitFileSource.open(repo), GitFileSource.openIgnoreRules(repo));
+        for(int walk = 0; walk < 4; walk++) {
+            int parallelism = walk % 2 == 0 ? 1 : 4;
+            final Set<String> files = Collections.synchronizedSet(new TreeSet<String>());
+            final Set<String> dirs = Collections.synchronizedSet(new TreeSet<String>());
+            final Path root = repo.toPath();
+            sources.get(walk / 2).walk(new TreeWalker(parallelism), new TreeVisitor<Void>() {
+                @Override
+                public boolean preVisitDirectory(Path dir, BasicFileAttributes attrs, List<Void> results) {
+                    dirs.add(root.relativize(dir).toString());
+                    return true;
+                }
+
+                @Override
+                public void postVisitDirectory(Path dir, List<Void> results) {
+                }
+
+                @Override
+                public void visitFile(Path file, BasicFileAttributes attrs, List<Void> results) {
+                    files.add(root.relativize(file).toString().replace(File.separatorChar, '/'));
+                }
+
+                @Override
+                public void visitFileFailed(Path path, IOException exception, List<Void> results) {
+                }
+            });
+
+            Assert.assertEquals(expected, files);
+            for(String ignored: Arrays.asList("build", "target", "x/generated", "foo/bar", "sub/nested", ".git")) {
+                Assert.assertFalse(ignored, dirs.contains(ignored.replace('/', File.separatorChar)));
+            }
+        }
+    }
+
+    /**
+     * The same paths checked by the git installed here, if there is one
+     */
+    @Test
+    public void testAgainstInstalledGit() throws IOException, InterruptedException, ParseException {
+        Process process;
+        try {
+            // keeps the existing info/exclude
+            Assume.assumeTrue(new ProcessBuilder("git", "init", "-q").directory(repo).inheritIO().start().waitFor() == 0);
+            process = new ProcessBuilder("git", "-c", "core.excludesFile=" + globalExclude.getAbsolutePath(),
+                                         "check-ignore", "--stdin", "--no-index").directory(repo).start();
+        } catch(IOException e) {
+            Assume.assumeNoException(e);
+            return;
+        }
+
+        try(OutputStream input = process.getOutputStream()) {
+            for(String path: EXPECTED) {
+                input.write((trimSlash(path.substring(2)) + "\n").getBytes(StandardCharsets.UTF_8));
+            }
+        }
+        Set<String> ignored = new HashSet<>();
+        try(BufferedReader reader = new BufferedReader(new InputStreamReader(process.getInputStream(), StandardCharsets.UTF_8))) {
+            String line;
+            while((line = reader.readLine()) != null) {
+                ignored.add(line);
+            }
+        }
+        Assume.assumeTrue(process.waitFor() <= 1);    // 1 = nothing ignored
+
+        GitSubmitFileFilter filter = new GitSubmitFileFilter(repo);
+        for(String path: EXPECTED) {
+            String relative = path.substring(2);
+            Assert.assertEquals(relative, ignored.contains(trimSlash(relative)), filter.accept(new File(repo, relative)) == false);
+        }
+    }
+
+    private static String trimSlash(String path) {
+        return path.endsWith("/") ? path.substring(0, path.length() - 1) : path;
+    }
 
+    private static void write(File file, String... lines) throws IOException {
+        StringBuilder content = new StringBuilder();
+        for(String line: lines) {
+            content.append(line).append('\n');
+        }
+        FileUtils.writeStringToFile(file, content.toString(), StandardCharsets.UTF_8);
+    }
 }
@@ -0,0 +1,136 @@
+package uk.gov.dwp.carersallowance.sensitiveinfo.git;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.text.ParseException;
+import java.util.Arrays;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class LayeredGitConfigTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private File system;
+    private File home;
+    private File gitDir;
+
+    @Before
+    public void setUp() throws IOException {
+        system = new File(folder.getRoot(), "etc/gitconfig");
+        home = folder.newFolder("home");
+        gitDir = new File(folder.getRoot(), "work/repo/.git");
+        write(new File(gitDir, "HEAD"), "ref: refs/heads/feature/x");
+    }
+
+    @Test
+    public void testLaterLayersWin() throws IOException, ParseException {
+        write(system, "[core]", "excludesFile = /system", "[user]", "name = system");
+        write(new File(home, ".config/git/config"), "[core]", "excludesFile = /xdg", "[user]", "email = xdg");
+        write(new File(home, ".gitconfig"), "[Core]", "ExcludesFile = ~/global");
+        write(new File(gitDir, "config"), "[user]", "name = repo");
+
+        LayeredGitConfig config = load();
+        Assert.assertEquals(new File(home, "global"), config.getPath("core.excludesFile"));
+        Assert.assertEquals("~/global", config.get("CORE.EXCLUDESFILE"));
+        Assert.assertEquals(Arrays.asList("/system", "/xdg", "~/global"), config.getAll("core.excludesfile"));
+        Assert.assertEquals("repo", config.get("user.name"));
+        Assert.assertEquals("xdg", config.get("user.email"));
+        Assert.assertNull(config.get("user.signingKey"));
+    }
+
+    @Test
+    public void testXdgConfigHome() throws IOException, ParseException {
+        File xdg = folder.newFolder("xdg");
+        write(new File(xdg, "git/config"), "[user]", "name = xdg");
+        write(new File(home, ".config/git/config"), "[user]", "name = ignored", "email = ignored");
+
+        LayeredGitConfig config = LayeredGitConfig.load(gitDir, system, home, xdg.getAbsolutePath());
+        Assert.assertEquals("xdg", config.get("user.name"));
+        Assert.assertFalse(config.containsKey("user.email"));
+    }
+
+    @Test
+    public void testIncludes() throws IOException, ParseException {
+        write(new File(home, ".gitconfig"),
+              "[user]", "name = global",
+              "[include]", "path = more.inc",                       // relative to .gitconfig
+              "[includeIf \"gitdir:~/\"]", "path = ~/home.inc",        // not below home
+              "[includeIf \"gitdir:work/\"]", "path = ~/work.inc",
+              "[includeIf \"gitdir/i:WORK/REPO/.GIT\"]", "path = ~/case.inc",
+              "[includeIf \"onbranch:feature/\"]", "path = ~/branch.inc",
+              "[includeIf \"onbranch:main\"]", "path = ~/main.inc",
+              "[includeIf \"hasconfig:remote.*.url:x\"]", "path = ~/main.inc",
+              "[include]", "path = ~/missing.inc");
+        write(new File(home, "more.inc"), "[user]", "name = more");
+        write(new File(home, "home.inc"), "[user]", "home = true");
+        write(new File(home, "work.inc"), "[user]", "email = work");
+        write(new File(home, "case.inc"), "[user]", "case = true");
+        write(new File(home, "branch.inc"), "[user]", "branch = true");
+        write(new File(home, "main.inc"), "[user]", "main = true");
+
+        LayeredGitConfig config = load();
+        Assert.assertEquals("more", config.get("user.name"));
+        Assert.assertFalse(config.containsKey("user.home"));
+        Assert.assertEquals("work", config.get("user.email"));
+        Assert.assertTrue(config.getBoolean("user.case"));
+        Assert.assertTrue(config.getBoolean("user.branch"));
+        Assert.assertFalse(config.containsKey("user.main"));
+    }
+
+    @Test
+    public void testIncludeLoop() throws IOException {
+        write(new File(home, ".gitconfig"), "[include]", "path = ~/.gitconfig");
+        try {
+            load();
+            Assert.fail("expected ParseException");
+        } catch(ParseException e) {
+            Assert.assertTrue(e.getMessage(), e.getMessage().contains("include depth"));
+        }
+    }
+
+    @Test
+    public void testWorktreeConfig() throws IOException, ParseException {
+        write(new File(gitDir, "config"), "[user]", "name = repo");
+        write(new File(gitDir, "config.worktree"), "[user]", "name = worktree");
+        Assert.assertEquals("repo", load().get("user.name"));
+
+        write(new File(gitDir, "config"), "[user]", "name = repo", "[extensions]", "worktreeConfig");
+        Assert.assertEquals("worktree", load().get("user.name"));
+    }
+
+    @Test
+    public void testLinkedWorktreeUsesCommonConfig() throws IOException, ParseException {
+        write(new File(gitDir, "config"), "[user]", "name = common");
+        File linked = new File(gitDir, "worktrees/other");
+        write(new File(linked, "commondir"), "../..");
+        write(new File(linked, "HEAD"), "ref: refs/heads/other");
+
+        Assert.assertEquals("common", LayeredGitConfig.load(linked, system, home, null).get("user.name"));
+    }
+
+    @Test
+    public void testCanonicalKey() {
+        Assert.assertEquals("core.excludesfile", LayeredGitConfig.canonicalKey("Core.ExcludesFile"));
+        Assert.assertEquals("includeif.gitdir:~/Work/.path", LayeredGitConfig.canonicalKey("includeIf.gitdir:~/Work/.Path"));
+        Assert.assertEquals("key", LayeredGitConfig.canonicalKey("KEY"));
+    }
+
+    private LayeredGitConfig load() throws IOException, ParseException {
+        return LayeredGitConfig.load(gitDir, system, home, null);
+    }
+
+    private static void write(File file, String... lines) throws IOException {
+        StringBuilder content = new StringBuilder();
+        for(String line: lines) {
+            content.append(line).append('\n');
+        }
+        FileUtils.writeStringToFile(file, content.toString(), StandardCharsets.UTF_8);
+    }
+}
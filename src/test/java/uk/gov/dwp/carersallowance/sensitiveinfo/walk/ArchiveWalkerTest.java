@@ -0,0 +1,116 @@
+package uk.gov.dwp.carersallowance.sensitiveinfo.walk;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.zip.CRC32;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class ArchiveWalkerTest {
+    private static final byte[] KEYSTORE = {(byte)0xfe, (byte)0xed, (byte)0xfe, (byte)0xed, 0, 0, 0, 2};
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void testNestedArchives() throws IOException {
+        byte[] innermost = zip(false, "deep/key.jks", KEYSTORE);
+        byte[] inner = zip(false, "inner.jks", KEYSTORE, "innermost.jar", innermost);
+        byte[] deflatedInner = zip(true, "config/app.properties", "a=b".getBytes(StandardCharsets.ISO_8859_1));
+
+        File outer = new File(folder.getRoot(), "app.jar");
+        try(OutputStream outputStream = new FileOutputStream(outer)) {
+            outputStream.write(zip(true,
+                    "BOOT-INF/classes/keystore.jks", KEYSTORE,
+                    "BOOT-INF/lib/inner.jar", inner,
+                    "BOOT-INF/lib/deflated.jar", deflatedInner));
+        }
+
+        String prefix = outer.getAbsolutePath() + "!/";
+
+        Map<String, String> depthTwo = walk(outer, 2);
+        Assert.assertEquals(6, depthTwo.size());
+        Assert.assertEquals("feedfeed", depthTwo.get(prefix + "BOOT-INF/classes/keystore.jks"));
+        Assert.assertEquals("504b0304", depthTwo.get(prefix + "BOOT-INF/lib/inner.jar"));
+        Assert.assertEquals("feedfeed", depthTwo.get(prefix + "BOOT-INF/lib/inner.jar!/inner.jks"));
+        Assert.assertEquals("504b0304", depthTwo.get(prefix + "BOOT-INF/lib/inner.jar!/innermost.jar"));
+        Assert.assertEquals("613d62", depthTwo.get(prefix + "BOOT-INF/lib/deflated.jar!/config/app.properties"));
+        Assert.assertFalse(depthTwo.containsKey(prefix + "BOOT-INF/lib/inner.jar!/innermost.jar!/deep/key.jks"));
+
+        Map<String, String> depthThree = walk(outer, 3);
+        Assert.assertEquals(7, depthThree.size());
+        Assert.assertEquals("feedfeed", depthThree.get(prefix + "BOOT-INF/lib/inner.jar!/innermost.jar!/deep/key.jks"));
+
+        Map<String, String> depthOne = walk(outer, 1);
+        Assert.assertEquals(3, depthOne.size());
+    }
+
+    @Test(expected = IOException.class)
+    public void testNotAnArchive() throws IOException {
+        File file = folder.newFile("broken.jar");
+        try(OutputStream outputStream = new FileOutputStream(file)) {
+            outputStream.write(new byte[]{'P', 'K', 3, 4, 0, 0});
+        }
+        walk(file, 2);
+    }
+
+    /**
+     * @return entry path -> first 4 bytes (hex)
+     */
+    private Map<String, String> walk(File archive, int depth) throws IOException {
+        final Map<String, String> entries = new LinkedHashMap<>();
+        new ArchiveWalker(depth, 4).walk(archive.toPath(), new ArchiveWalker.EntryVisitor() {
+            @Override
+            public void visitEntry(String path, ByteBuffer header) {
+                StringBuilder hex = new StringBuilder();
+                for(int index = 0; index < header.limit(); index++) {
+                    hex.append(String.format("%02x", header.get(index)));
+                }
+                entries.put(path, hex.toString());
+            }
+
+            @Override
+            public void visitEntryFailed(String path, IOException exception) {
+                entries.put(path, "failed");
+            }
+        });
+        return entries;
+    }
+
+    /**
+     * @param namesAndContent alternating entry names (String) and content (byte[])
+     */
+    private static byte[] zip(boolean deflate, Object...namesAndContent) throws IOException {
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        try(ZipOutputStream zipOutputStream = new ZipOutputStream(outputStream)) {
+            for(int index = 0; index < namesAndContent.length; index += 2) {
+                byte[] content = (byte[])namesAndContent[index + 1];
+                ZipEntry entry = new ZipEntry((String)namesAndContent[index]);
+                if(deflate == false) {
+                    CRC32 crc = new CRC32();
+                    crc.update(content);
+                    entry.setMethod(ZipEntry.STORED);
+                    entry.setSize(content.length);
+                    entry.setCompressedSize(content.length);
+                    entry.setCrc(crc.getValue());
+                }
+                zipOutputStream.putNextEntry(entry);
+                zipOutputStream.write(content);
+                zipOutputStream.closeEntry();
+            }
+        }
+        return outputStream.toByteArray();
+    }
+}
@@ -0,0 +1,175 @@
+package uk.gov.dwp.carersallowance.sensitiveinfo.walk;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.Assert;
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class TreeWalkerTest {
+    private static final int[] PARALLELISMS = {1, 4};
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private Path root;
+
+    @Before
+    public void createTree() throws IOException {
+        root = folder.getRoot().toPath();
+        write("top.txt");
+        write("a/one.txt");
+        write("a/two.txt");
+        write("a/sub/three.txt");
+        write("b/four.txt");
+        write("locked/five.txt");
+    }
+
+    @Test
+    public void testVisitOrder() throws IOException {
+        List<String> sequential = new TreeWalker(1).walk(root, new RecordingVisitor(null));
+        for(int parallelism: PARALLELISMS) {
+            List<String> events = new TreeWalker(parallelism).walk(root, new RecordingVisitor(null));
+            Assert.assertEquals("parallelism " + parallelism, sequential, events);
+
+            List<String> sorted = new ArrayList<>(events);
+            Collections.sort(sorted);
+            Assert.assertEquals(Arrays.asList("file a/one.txt", "file a/sub/three.txt", "file a/two.txt", "file b/four.txt",
+                                              "file locked/five.txt", "file top.txt",
+                                              "post ", "post a", "post a/sub", "post b", "post locked",
+                                              "pre ", "pre a", "pre a/sub", "pre b", "pre locked"), sorted);
+
+            // everything in a directory comes between its pre and post visits
+            for(String event: events) {
+                String path = event.substring(event.indexOf(' ') + 1);
+                String parent = path.contains("/") ? path.substring(0, path.lastIndexOf('/')) : "";
+                if(path.isEmpty()) {
+                    continue;
+                }
+                Assert.assertTrue(event, events.indexOf("pre " + parent) < events.indexOf(event));
+                Assert.assertTrue(event, events.indexOf("post " + parent) > events.indexOf(event));
+            }
+        }
+    }
+
+    @Test
+    public void testPruning() throws IOException {
+        for(int parallelism: PARALLELISMS) {
+            List<String> events = new TreeWalker(parallelism).walk(root, new RecordingVisitor("b"));
+            Assert.assertTrue(events.contains("pre b"));
+            Assert.assertFalse(events.contains("file b/four.txt"));
+            Assert.assertFalse(events.contains("post b"));
+            Assert.assertTrue(events.contains("file a/sub/three.txt"));
+        }
+    }
+
+    @Test
+    public void testUnreadableDirectory() throws IOException {
+        File locked = new File(folder.getRoot(), "locked");
+        Assume.assumeTrue(locked.setReadable(false));
+        try {
+            // e.g. running as root
+            Assume.assumeTrue(locked.list() == null);
+
+            for(int parallelism: PARALLELISMS) {
+                List<String> events = new TreeWalker(parallelism).walk(root, new RecordingVisitor(null));
+                int pre = events.indexOf("pre locked");
+                Assert.assertTrue("parallelism " + parallelism + ": " + events, pre >= 0);
+                Assert.assertEquals(Arrays.asList("pre locked", "failed locked", "post locked"), events.subList(pre, pre + 3));
+                Assert.assertFalse(events.contains("file locked/five.txt"));
+
+                // a visitor that turns the directory down hears nothing about it failing
+                events = new TreeWalker(parallelism).walk(root, new RecordingVisitor("locked"));
+                Assert.assertFalse(events.toString(), events.contains("failed locked"));
+                Assert.assertFalse(events.toString(), events.contains("post locked"));
+            }
+        } finally {
+            locked.setReadable(true);
+        }
+    }
+
+    @Test
+    public void testWalksInCurrentPool() throws InterruptedException, ExecutionException {
+        ForkJoinPool pool = new ForkJoinPool(2);
+        try {
+            for(final int parallelism: PARALLELISMS) {
+                final RecordingVisitor visitor = new RecordingVisitor(null);
+                List<String> events = pool.submit(new Callable<List<String>>() {
+                    @Override
+                    public List<String> call() throws IOException {
+                        return new TreeWalker(parallelism).walk(root, visitor);
+                    }
+                }).get();
+
+                Assert.assertEquals(16, events.size());
+                Assert.assertEquals(Collections.singleton(pool), visitor.pools);
+            }
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    private void write(String path) throws IOException {
+        FileUtils.writeStringToFile(new File(folder.getRoot(), path), path, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Records each call as "<event> <path relative to the root>", and the pool it was called from
+     */
+    private class RecordingVisitor implements TreeVisitor<String> {
+        private String            skipDir;
+        private Set<ForkJoinPool> pools = Collections.synchronizedSet(Collections.newSetFromMap(new IdentityHashMap<ForkJoinPool, Boolean>()));
+
+        public RecordingVisitor(String skipDir) {
+            this.skipDir = skipDir;
+        }
+
+        @Override
+        public boolean preVisitDirectory(Path dir, BasicFileAttributes attrs, List<String> results) {
+            record("pre", dir, results);
+            return relative(dir).equals(skipDir) == false;
+        }
+
+        @Override
+        public void postVisitDirectory(Path dir, List<String> results) {
+            record("post", dir, results);
+        }
+
+        @Override
+        public void visitFile(Path file, BasicFileAttributes attrs, List<String> results) {
+            record("file", file, results);
+        }
+
+        @Override
+        public void visitFileFailed(Path path, IOException exception, List<String> results) {
+            record("failed", path, results);
+        }
+
+        private void record(String event, Path path, List<String> results) {
+            results.add(event + " " + relative(path));
+            pools.add(ForkJoinTask.getPool());
+        }
+
+        private String relative(Path path) {
+            return root.relativize(path).toString().replace(File.separatorChar, '/');
+        }
+    }
+}
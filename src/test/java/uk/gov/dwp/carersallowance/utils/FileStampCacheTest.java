@@ -0,0 +1,176 @@
+package uk.gov.dwp.carersallowance.utils;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.text.ParseException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class FileStampCacheTest {
+    private static final long AN_HOUR_AGO = System.currentTimeMillis() - TimeUnit.HOURS.toMillis(1);
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private AtomicInteger loads = new AtomicInteger();
+
+    private FileStampCache.Loader<String> loader = new FileStampCache.Loader<String>() {
+        @Override
+        public String load(File file) throws IOException {
+            loads.incrementAndGet();
+            return file.exists() ? FileUtils.readFileToString(file, StandardCharsets.UTF_8) : null;
+        }
+    };
+
+    @Test
+    public void testReloadedWhenChanged() throws IOException, ParseException {
+        File file = write("config", "one", AN_HOUR_AGO);
+        FileStampCache<String> cache = new FileStampCache<>(10);
+
+        Assert.assertEquals("one", cache.get(file, loader));
+        Assert.assertEquals("one", cache.get(file, loader));
+        Assert.assertEquals(1, loads.get());
+
+        write("config", "two", AN_HOUR_AGO + 1000);
+        Assert.assertEquals("two", cache.get(file, loader));
+        Assert.assertEquals(2, loads.get());
+
+        Assert.assertTrue(file.delete());
+        Assert.assertNull(cache.get(file, loader));
+        Assert.assertNull(cache.get(file, loader));
+        Assert.assertEquals(3, loads.get());
+    }
+
+    @Test
+    public void testRecentlyModifiedNotCached() throws IOException, ParseException {
+        File file = write("config", "one", System.currentTimeMillis());
+        FileStampCache<String> cache = new FileStampCache<>(10);
+
+        cache.get(file, loader);
+        cache.get(file, loader);
+        Assert.assertEquals(2, loads.get());
+        Assert.assertEquals(0, cache.size());
+    }
+
+    @Test
+    public void testLeastRecentlyUsedDropped() throws IOException, ParseException {
+        File first = write("first", "1", AN_HOUR_AGO);
+        File second = write("second", "2", AN_HOUR_AGO);
+        File third = write("third", "3", AN_HOUR_AGO);
+        FileStampCache<String> cache = new FileStampCache<>(2);
+
+        cache.get(first, loader);
+        cache.get(second, loader);
+        cache.get(first, loader);
+        cache.get(third, loader);   // drops second
+        Assert.assertEquals(3, loads.get());
+
+        cache.get(first, loader);
+        cache.get(second, loader);
+        Assert.assertEquals(4, loads.get());
+        Assert.assertEquals(2, cache.size());
+    }
+
+    @Test
+    public void testQuarterDroppedWhenFull() throws IOException, ParseException {
+        FileStampCache<String> cache = new FileStampCache<>(8);
+        List<File> files = new ArrayList<>();
+        for(int index = 0; index < 9; index++) {
+            files.add(write("file" + index, Integer.toString(index), AN_HOUR_AGO));
+        }
+
+        for(int index = 0; index < 8; index++) {
+            cache.get(files.get(index), loader);
+        }
+        cache.get(files.get(0), loader);
+        cache.get(files.get(1), loader);
+        cache.get(files.get(8), loader);     // drops 2, 3 and 4, the least recently used
+        Assert.assertEquals(6, cache.size());
+        Assert.assertEquals(9, loads.get());
+
+        cache.get(files.get(0), loader);
+        cache.get(files.get(5), loader);
+        Assert.assertEquals(9, loads.get());
+        cache.get(files.get(4), loader);
+        Assert.assertEquals(10, loads.get());
+    }
+
+    @Test
+    public void testConcurrentGetsLoadOnce() throws Exception {
+        final File file = write("config", "one", AN_HOUR_AGO);
+        final FileStampCache<String> cache = new FileStampCache<>(10);
+        final CountDownLatch started = new CountDownLatch(1);
+        final FileStampCache.Loader<String> slowLoader = new FileStampCache.Loader<String>() {
+            @Override
+            public String load(File file) throws IOException, ParseException {
+                started.countDown();
+                try {
+                    Thread.sleep(100);
+                } catch(InterruptedException e) {
+                    throw new IOException(e);
+                }
+                return loader.load(file);
+            }
+        };
+
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<String>> results = new ArrayList<>();
+            for(int index = 0; index < 8; index++) {
+                results.add(executor.submit(new Callable<String>() {
+                    @Override
+                    public String call() throws Exception {
+                        return cache.get(file, slowLoader);
+                    }
+                }));
+            }
+            for(Future<String> result: results) {
+                Assert.assertEquals("one", result.get());
+            }
+        } finally {
+            executor.shutdown();
+        }
+        Assert.assertEquals(1, loads.get());
+    }
+
+    @Test
+    public void testFailedLoadRetried() throws IOException, ParseException {
+        File file = write("config", "one", AN_HOUR_AGO);
+        FileStampCache<String> cache = new FileStampCache<>(10);
+        try {
+            cache.get(file, new FileStampCache.Loader<String>() {
+                @Override
+                public String load(File file) throws ParseException {
+                    throw new ParseException("bad", 0);
+                }
+            });
+            Assert.fail("expected ParseException");
+        } catch(ParseException e) {
+            Assert.assertEquals("bad", e.getMessage());
+        }
+
+        Assert.assertEquals("one", cache.get(file, loader));
+        Assert.assertEquals(1, loads.get());
+    }
+
+    private File write(String name, String content, long modified) throws IOException {
+        File file = new File(folder.getRoot(), name);
+        FileUtils.writeStringToFile(file, content, StandardCharsets.UTF_8);
+        Assert.assertTrue(file.setLastModified(modified));
+        return file;
+    }
+}